@@ -0,0 +1,159 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with the GC profiler and records a JSON baseline:
+ * one entry per benchmark and parameter set, with its score and bytes
+ * allocated per operation. Given an earlier baseline, prints how each
+ * entry changed.
+ *
+ *     java calculator.Baseline [--include regex] [--out baseline.json] [--compare old.json]
+ *
+ * The full JMH results are written next to the baseline, as baseline.jmh.json
+ */
+public final class Baseline {
+    private static final String USAGE = "Usage: [--include regex] [--out baseline.json] [--compare old.json]";
+    private static final Pattern ENTRY = Pattern.compile(
+            "\\{\"benchmark\": \"([^\"]*)\", \"params\": \"([^\"]*)\", \"score\": ([^,]*), "
+                    + "\"unit\": \"([^\"]*)\", \"allocated\": ([^}]*)}");
+
+    private Baseline() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = PhaseBenchmark.class.getSimpleName();
+        Path out = Path.of("baseline.json");
+        Path compare = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--include" -> include = value(args, ++i);
+                case "--out" -> out = Path.of(value(args, ++i));
+                case "--compare" -> compare = Path.of(value(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(out.resolveSibling(out.getFileName().toString().replace(".json", "") + ".jmh.json").toString())
+                .build();
+        Map<String, Entry> current = entries(new Runner(options).run());
+        write(current, out);
+
+        if (compare != null)
+            System.out.print(diff(read(compare), current));
+    }
+
+    /**
+     * @return              The value following an option
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(USAGE);
+        return args[i];
+    }
+
+    /**
+     * A benchmark score and its allocation, NaN if the GC profiler did not report one
+     *
+     * @param score         Primary score
+     * @param unit          Unit of the score
+     * @param allocated     Bytes allocated per operation
+     */
+    record Entry(double score, String unit, double allocated) {
+    }
+
+    static Map<String, Entry> entries(Collection<RunResult> results) {
+        Map<String, Entry> entries = new TreeMap<>();
+        for (RunResult run : results) {
+            StringBuilder params = new StringBuilder();
+            for (String key : run.getParams().getParamsKeys()) {
+                if (params.length() > 0)
+                    params.append(',');
+                params.append(key).append('=').append(run.getParams().getParam(key));
+            }
+
+            double allocated = Double.NaN;
+            for (String secondary : run.getSecondaryResults().keySet())
+                if (secondary.endsWith("gc.alloc.rate.norm")) {
+                    Result<?> result = run.getSecondaryResults().get(secondary);
+                    allocated = result.getScore();
+                }
+
+            Result<?> primary = run.getPrimaryResult();
+            entries.put(run.getParams().getBenchmark() + "\t" + params,
+                    new Entry(primary.getScore(), primary.getScoreUnit(), allocated));
+        }
+        return entries;
+    }
+
+    static void write(Map<String, Entry> entries, Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("[");
+        int i = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            String[] key = e.getKey().split("\t", -1);
+            Entry entry = e.getValue();
+            lines.add(String.format("{\"benchmark\": \"%s\", \"params\": \"%s\", \"score\": %s, \"unit\": \"%s\", \"allocated\": %s}%s",
+                    key[0], key[1], json(entry.score()), entry.unit(), json(entry.allocated()),
+                    ++i < entries.size() ? "," : ""));
+        }
+        lines.add("]");
+        Files.write(path, lines);
+    }
+
+    static Map<String, Entry> read(Path path) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        Matcher matcher = ENTRY.matcher(Files.readString(path));
+        while (matcher.find()) {
+            entries.put(matcher.group(1) + "\t" + matcher.group(2), new Entry(
+                    number(matcher.group(3)), matcher.group(4), number(matcher.group(5))));
+        }
+        return entries;
+    }
+
+    static String diff(Map<String, Entry> baseline, Map<String, Entry> current) {
+        StringBuilder out = new StringBuilder(String.format("%-60s %-14s %14s %14s %9s %14s %14s%n",
+                "Benchmark", "Params", "Baseline", "Current", "Change", "Alloc before", "Alloc after"));
+        for (Map.Entry<String, Entry> e : current.entrySet()) {
+            String[] key = e.getKey().split("\t", -1);
+            Entry now = e.getValue();
+            Entry before = baseline.get(e.getKey());
+            String change = before == null ? "new" : String.format("%+.1f%%", (now.score() / before.score() - 1) * 100);
+            out.append(String.format("%-60s %-14s %14.3f %14.3f %9s %14.1f %14.1f %s%n",
+                    key[0], key[1], before == null ? Double.NaN : before.score(), now.score(), change,
+                    before == null ? Double.NaN : before.allocated(), now.allocated(), now.unit()));
+        }
+        return out.toString();
+    }
+
+    private static String json(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static double number(String value) {
+        return value.equals("null") ? Double.NaN : Double.parseDouble(value);
+    }
+}
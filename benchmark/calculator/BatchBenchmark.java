@@ -0,0 +1,67 @@
+package calculator;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expressions per second for evaluateAll as the pool grows. The batch mixes
+ * repeated expressions, which hit the cache, with ones seen only once
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(BatchBenchmark.BATCH)
+public class BatchBenchmark {
+    static final int BATCH = 100_000;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private Calculator calculator;
+    private String[] expressions;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        calculator = new Calculator(Calculator.DEFAULT_CACHE_CAPACITY, pool);
+        expressions = new String[BATCH];
+        out = new double[BATCH];
+
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH; i++) {
+            // Half the batch is drawn from 1000 repeated expressions
+            int seed = i % 2 == 0 ? random.nextInt(1000) : 1000 + i;
+            expressions[i] = "-" + seed + "-34*(-2.36--3.64)--76^3/(32*(-54+" + (seed % 97) + "))+4-7";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BatchResult evaluateAll() {
+        return calculator.evaluateAll(expressions, out);
+    }
+}
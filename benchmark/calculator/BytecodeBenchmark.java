@@ -0,0 +1,71 @@
+package calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One expression evaluated by the interpreter against the same expression
+ * compiled to a hidden class, and promoted to one by the default Tiering
+ * policy. Variables keep the JIT from folding the compiled expression to
+ * a constant
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BytecodeBenchmark {
+
+    @Param({
+            "price*(1+rate)^years",
+            "a*b+c/d-e*2+(a-b)*(c+d)-a/(b+c)*d",
+            "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7"
+    })
+    public String exp;
+
+    private Expression interpreted;
+    private Expression compiled;
+    private Expression tiered;
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        Calculator calculator = new Calculator();
+        tiered = calculator.compile(exp);
+        interpreted = new Calculator(1, ForkJoinPool.commonPool(), null).compile(exp);
+        compiled = calculator.compile(exp);
+        if (!compiled.compileBytecode())
+            throw new IllegalStateException("Not compiled: " + exp);
+        values = new double[interpreted.variables().size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = 1.25 + i;
+    }
+
+    @Benchmark
+    public double interpreter() {
+        return interpreted.evaluate(values);
+    }
+
+    @Benchmark
+    public double bytecode() {
+        return compiled.evaluate(values);
+    }
+
+    @Benchmark
+    public double tiered() {
+        return tiered.evaluate(values);
+    }
+}
@@ -0,0 +1,128 @@
+package calculator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures cold-start-to-ready time: how long a new JVM takes to have a
+ * set of formulas compiled and ready to evaluate, either by parsing them
+ * or by loading them from a ProgramStore. Saves the store once, then
+ * starts a fresh JVM per run of each path, so neither benefits from the
+ * other's class loading or JIT, and prints the median of the runs.
+ *
+ *     java -cp <...> calculator.ColdStart [--formulas 50000] [--runs 5] [--dir /tmp/programs]
+ *
+ * Ready is measured from JVM start, and the time spent making the formulas
+ * ready, excluding the JVM's own startup and generating their text, is
+ * shown beside it
+ */
+public final class ColdStart {
+    private static final int TERMS = 10;
+
+    private ColdStart() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && (args[0].equals("parse") || args[0].equals("preload"))) {
+            ready(args[0], Integer.parseInt(args[1]), Path.of(args[2]));
+            return;
+        }
+
+        int formulas = 50_000;
+        int runs = 5;
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "programs");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--formulas" -> formulas = Integer.parseInt(args[++i]);
+                case "--runs" -> runs = Integer.parseInt(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        Files.createDirectories(dir);
+        Path store = dir.resolve("programs.bin");
+        Calculator calculator = new Calculator(formulas);
+        List<Expression> expressions = new ArrayList<>(formulas);
+        for (int i = 0; i < formulas; i++)
+            expressions.add(calculator.compile(formula(i)));
+        ProgramStore.save(store, expressions, false);
+        System.out.printf("Saved %,d formulas, %,d KB%n", formulas, Files.size(store) >> 10);
+
+        for (String path : new String[] {"parse", "preload"}) {
+            long[] ready = new long[runs];
+            long[] work = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                String[] times = child(path, formulas, store).split(" ");
+                ready[run] = Long.parseLong(times[0]);
+                work[run] = Long.parseLong(times[1]);
+            }
+            Arrays.sort(ready);
+            Arrays.sort(work);
+            System.out.printf("%-8s ready %,6d ms after JVM start, %,6d ms making formulas ready (median of %d)%n",
+                    path, ready[runs / 2], work[runs / 2], runs);
+        }
+    }
+
+    /**
+     * @param i             Index of the formula
+     * @return              A formula of a few variables, reproducible from its index
+     */
+    private static String formula(int i) {
+        return "(" + Expressions.generate(TERMS, i) + ")*price+rate^2-" + i % 97;
+    }
+
+    /**
+     * Runs one path in a new JVM on the same classpath
+     *
+     * @return              The line it prints, milliseconds until ready and spent getting ready
+     */
+    private static String child(String path, int formulas, Path store) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ColdStart.class.getName(), path, Integer.toString(formulas), store.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String line = new String(process.getInputStream().readAllBytes()).trim();
+        if (process.waitFor() != 0)
+            throw new IllegalStateException(path + " run failed");
+        return line;
+    }
+
+    /**
+     * Makes every formula ready to evaluate, then prints the times
+     */
+    private static void ready(String path, int formulas, Path store) throws IOException {
+        // The application has its formulas' text either way, so generating it is not timed
+        String[] text = new String[formulas];
+        for (int i = 0; i < formulas; i++)
+            text[i] = formula(i);
+
+        long start = System.nanoTime();
+        Calculator calculator = new Calculator(formulas);
+        Expression[] expressions = new Expression[formulas];
+        if (path.equals("parse")) {
+            for (int i = 0; i < formulas; i++)
+                expressions[i] = calculator.compile(text[i]);
+        } else {
+            ProgramStore programs = ProgramStore.load(store, calculator);
+            for (int i = 0; i < formulas; i++)
+                expressions[i] = programs.get(text[i]);
+        }
+        long work = (System.nanoTime() - start) / 1_000_000;
+        long ready = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        // Every formula must be ready, and answer the same either way
+        double sum = 0;
+        for (Expression expression : expressions)
+            sum += expression.evaluate(100, 0.05);
+        if (Double.isNaN(sum))
+            throw new IllegalStateException("A formula did not evaluate");
+        System.out.println(ready + " " + work);
+    }
+}
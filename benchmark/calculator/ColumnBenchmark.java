@@ -0,0 +1,66 @@
+package calculator;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rows per second for one expression over a million rows of variables:
+ * the block-wise column interpreter against evaluating one row at a time
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ColumnBenchmark.ROWS)
+public class ColumnBenchmark {
+    static final int ROWS = 1_000_000;
+
+    private Expression expression;
+    private Map<String, double[]> columns;
+    private double[] price;
+    private double[] rate;
+    private double[] years;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        expression = new Calculator().compile("price*(1+rate)^years");
+        price = new double[ROWS];
+        rate = new double[ROWS];
+        years = new double[ROWS];
+        out = new double[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            price[i] = 100 + i % 1000;
+            rate[i] = (i % 100) / 1000.0;
+            years[i] = i % 30;
+        }
+        columns = Map.of("price", price, "rate", rate, "years", years);
+    }
+
+    @Benchmark
+    public double[] columns() {
+        expression.evaluate(columns, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] rows() {
+        for (int i = 0; i < ROWS; i++)
+            out[i] = expression.evaluate(price[i], rate[i], years[i]);
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package calculator;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Evaluates an expression over column files much larger than the heap,
+ * sampling heap use as it goes, to show that it stays flat whatever the
+ * size of the input. Writes two columns of the given total size, 10 GB
+ * by default, into a directory, then prints the heap profile.
+ *
+ *     java -Xmx64m calculator.ColumnFileHeap [--gb 10] [--dir /tmp/columns] [--keep]
+ *
+ * The columns and answers are deleted afterwards unless --keep is given
+ */
+public final class ColumnFileHeap {
+    private static final int SAMPLE_MILLIS = 50;
+
+    private ColumnFileHeap() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double gb = 10;
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "columns");
+        boolean keep = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--gb" -> gb = Double.parseDouble(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                case "--keep" -> keep = true;
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        Files.createDirectories(dir);
+        long rows = (long) (gb * (1L << 30) / 2 / Double.BYTES);
+        Path price = dir.resolve("price.bin");
+        Path rate = dir.resolve("rate.bin");
+        Path out = dir.resolve("answers.bin");
+        System.out.printf("Writing 2 columns of %,d rows (%.1f GB)%n", rows, rows * 2.0 * Double.BYTES / (1L << 30));
+        write(price, rows, 100, 1000);
+        write(rate, rows, 0.01, 0.1);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        long gcs = collections();
+        long[] peak = {before};
+        int[] samples = {0};
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak[0] = Math.max(peak[0], memory.getHeapMemoryUsage().getUsed());
+                samples[0]++;
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long start = System.nanoTime();
+        long evaluated = new ColumnFileEvaluator().evaluate(new Calculator().compile("price*(1+rate)^3-price/2"),
+                Map.of("price", price, "rate", rate), out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+
+        System.out.printf("Evaluated %,d rows in %.1f s (%.0f rows/sec)%n", evaluated, seconds, evaluated / seconds);
+        System.out.printf("Heap used before %,d KB, peak %,d KB over %d samples, max heap %,d KB, %d collections%n",
+                before >> 10, peak[0] >> 10, samples[0], memory.getHeapMemoryUsage().getMax() >> 10, collections() - gcs);
+        if (!keep) {
+            Files.delete(price);
+            Files.delete(rate);
+            Files.delete(out);
+        }
+    }
+
+    /**
+     * Writes a column of little-endian doubles cycling from low upwards
+     */
+    private static void write(Path file, long rows, double low, double high) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (long row = 0; row < rows; row++) {
+                buffer.putDouble(low + (high - low) * (row % 1000) / 1000);
+                if (!buffer.hasRemaining() || row == rows - 1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+}
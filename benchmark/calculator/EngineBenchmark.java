@@ -0,0 +1,75 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An expression seen for the first time, answered by the three-stage
+ * pipeline of normaliseInput, rpn and calculate, by compiling it, and by
+ * the PRATT engine in one pass, then a repeated one answered from the
+ * cache of compiled expressions. Run through Baseline to see the bytes
+ * each allocates
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EngineBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private Calculator calculator;
+    private Calculator pratt;
+    private String expression;
+
+    @Setup
+    public void setup() {
+        calculator = new Calculator();
+        pratt = new Calculator();
+        pratt.setEngine(Calculator.Engine.PRATT);
+        expression = Expressions.generate(Expressions.terms(size), 24);
+        if (pratt.evaluate(expression) != calculator.evaluate(expression))
+            throw new IllegalStateException("The engines disagree on " + expression);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public double threeStage() {
+        ArrayList<String> normalised = new ArrayList<>();
+        calculator.normaliseInput(expression.split(""), normalised, "", 0, false);
+        ArrayList<String> postFix = new ArrayList<>();
+        calculator.rpn(normalised, new Stack<>(), postFix, 0);
+        return calculator.calculate(0, postFix, new Stack<>(), 0);
+    }
+
+    @Benchmark
+    public double compiled() {
+        return calculator.compile(expression).evaluate();
+    }
+
+    @Benchmark
+    public double pratt() {
+        return pratt.evaluate(expression);
+    }
+
+    @Benchmark
+    public double compiledCached() {
+        return calculator.evaluate(expression);
+    }
+}
@@ -0,0 +1,69 @@
+package calculator;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible expressions for the benchmarks. They mix every
+ * operator, brackets and unary minus, and never divide by zero
+ */
+final class Expressions {
+    private Expressions() {
+    }
+
+    /**
+     * Number of terms in the small, medium and huge expressions
+     *
+     * @param size          One of small, medium or huge
+     * @return              Number of terms
+     */
+    static int terms(String size) {
+        return switch (size) {
+            case "small" -> 10;
+            case "medium" -> 1_000;
+            case "huge" -> 100_000;
+            default -> throw new IllegalArgumentException("Unknown size " + size);
+        };
+    }
+
+    /**
+     * @param terms         Number of terms
+     * @param seed          Random seed, the same seed gives the same expression
+     * @return              An expression of roughly the given number of terms
+     */
+    static String generate(int terms, long seed) {
+        Random random = new Random(seed);
+        StringBuilder exp = new StringBuilder(terms * 8);
+        int open = 0;
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) {
+                switch (random.nextInt(6)) {
+                    case 0, 1 -> exp.append('+');
+                    case 2, 3 -> exp.append('-');
+                    case 4 -> exp.append('*');
+                    default -> {
+                        // Divide by a literal, so never by zero
+                        exp.append('/').append(1 + random.nextInt(99));
+                        exp.append(random.nextBoolean() ? '+' : '-');
+                    }
+                }
+            }
+            if (random.nextInt(8) == 0) {
+                exp.append(random.nextBoolean() ? "-(" : "(");
+                open++;
+            }
+            if (random.nextInt(4) == 0)
+                exp.append('-');
+            exp.append(random.nextInt(1000));
+            if (random.nextInt(4) == 0)
+                exp.append('.').append(random.nextInt(100));
+            if (random.nextInt(10) == 0)
+                exp.append(random.nextBoolean() ? "^2" : "^0.5");
+            if (open > 0 && random.nextInt(4) == 0) {
+                exp.append(')');
+                open--;
+            }
+        }
+        exp.append(")".repeat(open));
+        return exp.toString();
+    }
+}
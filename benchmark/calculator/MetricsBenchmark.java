@@ -0,0 +1,59 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluating a cached expression, then compiling a new one each time, with
+ * metrics off and on, to show what recording the phases costs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricsBenchmark {
+    static final String EXPRESSION = "1+2^0.5*3-4/5^2";
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Calculator calculator;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        calculator = new Calculator();
+        calculator.setMetricsEnabled(metrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        calculator.setMetricsEnabled(false);
+    }
+
+    @Benchmark
+    public double cached() {
+        return calculator.evaluate(EXPRESSION);
+    }
+
+    @Benchmark
+    public double compiled() {
+        // Vary a constant so each expression is compiled afresh
+        return calculator.compile(EXPRESSION + "+" + (next++ & 1023)).evaluate();
+    }
+}
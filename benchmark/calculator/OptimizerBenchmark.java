@@ -0,0 +1,48 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A generated-looking formula full of constant subtrees, identities and
+ * negations, interpreted with and without the Optimizer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OptimizerBenchmark {
+    static final String FORMULA = "(2*3.5)^2*x*1 + -(-(y^2)) - (x-0)/(1*1) + z^1*(60*60*24) - -(z/-1) + (x+y)^2/(4^0.5)";
+
+    private Program program;
+    private Program optimized;
+    private double[] values = {1.5, 2.25, 3.125};
+
+    @Setup
+    public void setup() {
+        program = new Parser().parse(new Lexer().tokenize(FORMULA));
+        optimized = new Optimizer().optimize(program);
+    }
+
+    @Benchmark
+    public double unoptimized() {
+        return program.run(values);
+    }
+
+    @Benchmark
+    public double optimized() {
+        return optimized.run(values);
+    }
+}
@@ -0,0 +1,123 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each phase of Calculator on its own, over small, medium and huge inputs.
+ * The expression phases take 10, 1000 and 100000 term expressions; the
+ * numeric phases take inputs that grow the same way, e.g. exponents of
+ * 10, 1000 and 1000000. Run through Baseline to record allocation rates
+ * and compare against an earlier run
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PhaseBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private Calculator calculator;
+    private String expression;
+    private String[] characters;
+    private ArrayList<String> normalised;
+    private ArrayList<String> postFix;
+
+    private double exponent;
+    private double fractionalBase;
+    private double fractionalExponent;
+    private double radicand;
+    private int rootExponent;
+    private double decimal;
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setup() {
+        calculator = new Calculator();
+        expression = Expressions.generate(Expressions.terms(size), 42);
+        characters = expression.split("");
+        normalised = new ArrayList<>();
+        calculator.normaliseInput(characters, normalised, "", 0, false);
+        postFix = new ArrayList<>();
+        calculator.rpn(normalised, new Stack<>(), postFix, 0);
+
+        int scale = switch (size) {
+            case "small" -> 0;
+            case "medium" -> 1;
+            default -> 2;
+        };
+        exponent = new double[]{10, 1_000, 1_000_000}[scale];
+        fractionalBase = new double[]{2, 3.67, 1234.5}[scale];
+        fractionalExponent = new double[]{0.5, 5.675, 7.123456}[scale];
+        radicand = new double[]{2, 1234.5, 987654.321}[scale];
+        rootExponent = new int[]{3, 8, 1000}[scale];
+        decimal = new double[]{0.5, 2.625, 7.12345}[scale];
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return calculator.evaluate(expression);
+    }
+
+    @Benchmark
+    public double evaluateUncached() {
+        return calculator.compile(expression).evaluate();
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public ArrayList<String> normaliseInput() {
+        ArrayList<String> expArr = new ArrayList<>();
+        calculator.normaliseInput(characters, expArr, "", 0, false);
+        return expArr;
+    }
+
+    @Benchmark
+    public ArrayList<String> rpn() {
+        ArrayList<String> out = new ArrayList<>();
+        calculator.rpn(normalised, new Stack<>(), out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public double calculate() {
+        return calculator.calculate(0, postFix, new Stack<>(), 0);
+    }
+
+    @Benchmark
+    public double powInteger() {
+        return calculator.pow(1.0000001, exponent, 1.0000001, false);
+    }
+
+    @Benchmark
+    public double powFractional() {
+        return calculator.pow(fractionalBase, fractionalExponent, fractionalBase, false);
+    }
+
+    @Benchmark
+    public double sqrtA() {
+        return calculator.sqrtA(radicand, 1, rootExponent, 1);
+    }
+
+    @Benchmark
+    public long[] decimalToFraction() {
+        return calculator.decimalToFraction(decimal);
+    }
+}
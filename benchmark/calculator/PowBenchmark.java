@@ -0,0 +1,54 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Integer exponentiation: PowerEngine.pow against the recursive repeated
+ * multiplication Calculator.pow used before. Up to SEQUENTIAL_LIMIT it
+ * multiplies in a loop, so only the recursion is saved, above it it squares.
+ * The old path recurses once per multiplication, so the fork gets a large
+ * thread stack
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PowBenchmark {
+
+    @Param({"10", "1000", "1000000"})
+    public double exponent;
+
+    public double base = 1.0000001;
+
+    @Benchmark
+    public double squaring() {
+        return PowerEngine.pow(base, exponent);
+    }
+
+    @Benchmark
+    public double repeatedMultiplication() {
+        return repeated(base, exponent, base);
+    }
+
+    /**
+     * The integer exponent path of Calculator.pow before repeated squaring
+     */
+    private static double repeated(double x, double y, double base) {
+        return y > 1
+                ? repeated(x * base, y - 1, base)
+                : x;
+    }
+}
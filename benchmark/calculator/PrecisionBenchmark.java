@@ -0,0 +1,56 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A money-style formula evaluated in decimal, answered from double with an
+ * error bound, compared with always running it in BigDecimal
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PrecisionBenchmark {
+    static final String FORMULA = "(19.99*3+4.75*12-0.05*(19.99*3+4.75*12))*1.0825+7.5";
+    private static final MathContext CONTEXT = new MathContext(12);
+    private static final BigDecimal[] NO_VALUES = {};
+
+    private Expression expression;
+    private PrecisionEvaluator precise;
+
+    @Setup
+    public void setup() {
+        expression = new Calculator().compile(FORMULA);
+        precise = expression.precise();
+    }
+
+    @Benchmark
+    public double doubleOnly() {
+        return expression.evaluate();
+    }
+
+    @Benchmark
+    public BigDecimal precise() {
+        return expression.evaluate(CONTEXT);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalOnly() {
+        return precise.evaluate(NO_VALUES, CONTEXT);
+    }
+}
@@ -0,0 +1,71 @@
+package calculator;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Common factors of co-prime values near Long.MAX_VALUE: the binary GCD
+ * Rational reduces with, against the gcf trial division Calculator used
+ * before, which stops looking after 1000, and BigInteger.gcd. Also sums
+ * the harmonic series exactly, which soon outgrows longs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RationalBenchmark {
+
+    // Consecutive values, and two primes, below Long.MAX_VALUE
+    @Param({"9223372036854775807:9223372036854775806", "9223372036854775783:9223372036854775643"})
+    public String pair;
+
+    private long x;
+    private long y;
+    private BigInteger bigX;
+    private BigInteger bigY;
+
+    @Setup
+    public void setup() {
+        x = Long.parseLong(pair.substring(0, pair.indexOf(':')));
+        y = Long.parseLong(pair.substring(pair.indexOf(':') + 1));
+        bigX = BigInteger.valueOf(x);
+        bigY = BigInteger.valueOf(y);
+    }
+
+    @Benchmark
+    public long binaryGcd() {
+        return PowerEngine.gcd(x, y);
+    }
+
+    @Benchmark
+    public long legacyGcf() {
+        return RootBenchmark.Legacy.gcf(x, y, 1, 0);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerGcd() {
+        return bigX.gcd(bigY);
+    }
+
+    @Benchmark
+    public Rational harmonicSum() {
+        Rational sum = Rational.ZERO;
+        for (int i = 1; i <= 40; i++)
+            sum = sum.add(Rational.valueOf(1, i));
+        return sum;
+    }
+}
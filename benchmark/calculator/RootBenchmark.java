@@ -0,0 +1,115 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fractional exponents: PowerEngine against the decimalToFraction, gcf,
+ * sqrtA, sqrtB and bisection chain Calculator.pow used before
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RootBenchmark {
+
+    @Param({"2", "3.67", "1234.5"})
+    public double base;
+
+    @Param({"0.5", "5.675", "7.125"})
+    public double exponent;
+
+    @Benchmark
+    public double powerEngine() {
+        return PowerEngine.fractionalPow(base, exponent, PowerEngine.DEFAULT_TOLERANCE);
+    }
+
+    @Benchmark
+    public double legacy() {
+        return Legacy.pow(base, exponent, base);
+    }
+
+    /**
+     * The fractional exponent path of Calculator.pow before PowerEngine
+     */
+    static final class Legacy {
+        static double pow(double x, double y, double base) {
+            if (y % 1 == 0) {
+                if (y > 1)
+                    return pow(x * base, --y, base);
+                return y == 0 ? 1 : x;
+            }
+            long[] fraction = decimalToFraction(y);
+            double root = sqrtA(x, 1.0, (int) fraction[2], 1);
+            return pow(x, fraction[0], x) * pow(root, fraction[1], root);
+        }
+
+        static long gcf(long x, long y, long i, long gCommonFactor) {
+            if (i > 1000) return gCommonFactor;
+            if (i <= x && i <= y) {
+                if (x % i == 0 && y % i == 0)
+                    gCommonFactor = i;
+                return gcf(x, y, ++i, gCommonFactor);
+            }
+            return gCommonFactor;
+        }
+
+        static long[] decimalToFraction(double decimal) {
+            long whole = 0;
+            long decimalCheck = new BigDecimal(String.valueOf(decimal)).stripTrailingZeros().round(new MathContext(5)).scale();
+            long fractionTimes = (long) pow(10, decimalCheck, 10);
+            int numerator = (int) (decimal * fractionTimes);
+            int denominator = (int) fractionTimes;
+            int gCommonFactor = (int) gcf(numerator, denominator, 1, 0);
+            numerator /= gCommonFactor;
+            denominator /= gCommonFactor;
+            if (numerator > denominator) {
+                whole = numerator / denominator;
+                numerator -= (int) (denominator * whole);
+            }
+            return new long[]{whole, numerator, denominator};
+        }
+
+        static double sqrtA(double radicand, double root, int pow, int i) {
+            if (i <= pow + 1) {
+                root = bisection(1, i, pow, 0);
+                if (root == radicand)
+                    return i;
+                return root > radicand
+                        ? sqrtB(radicand, i - 1, i, pow)
+                        : sqrtA(radicand, root, pow, ++i);
+            }
+            return root;
+        }
+
+        static double sqrtB(double radicand, double low, double high, int pow) {
+            double mid = (low + high) / 2;
+            double root = bisection(1, mid, pow, 0);
+            if (Math.abs(radicand - root) < 0.00001)
+                return mid;
+            return root < radicand
+                    ? sqrtB(radicand, mid, high, pow)
+                    : sqrtB(radicand, low, mid, pow);
+        }
+
+        static double bisection(double root, double mid, double pow, int i) {
+            return i < pow
+                    ? bisection(root * mid, mid, pow, ++i)
+                    : root;
+        }
+    }
+}
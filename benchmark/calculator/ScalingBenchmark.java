@@ -0,0 +1,93 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expressions per second from one Calculator shared by a growing number of
+ * threads. Most expressions repeat and hit the cache, a few are new and
+ * compile, so both the lock-free lookups and the per-thread scratch are
+ * exercised. Throughput should grow close to linearly up to the core count
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ScalingBenchmark.OPERATIONS)
+public class ScalingBenchmark {
+    static final int OPERATIONS = 100_000;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private ExecutorService executor;
+    private Calculator calculator;
+    private String[][] work;
+    private int round;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(threads);
+        calculator = new Calculator();
+        work = new String[threads][OPERATIONS / threads];
+        Random random = new Random(19);
+        for (String[] slice : work) {
+            for (int i = 0; i < slice.length; i++) {
+                // One in a hundred is new each round, the rest are drawn from 1000 repeated expressions
+                int seed = random.nextInt(100) == 0 ? -1 : random.nextInt(1000);
+                slice[i] = seed < 0 ? null : "-" + seed + "-34*(-2.36--3.64)--76^3/(32*(-54+" + (seed % 53) + "))+4-7";
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public double shared() throws Exception {
+        int round = this.round++;
+        List<Callable<Double>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            String[] slice = work[t];
+            int thread = t;
+            tasks.add(() -> {
+                double sum = 0;
+                for (int i = 0; i < slice.length; i++) {
+                    String exp = slice[i];
+                    sum += exp != null
+                            ? calculator.evaluate(exp)
+                            : calculator.evaluate(round + "*" + thread + "+" + i);
+                }
+                return sum;
+            });
+        }
+        double sum = 0;
+        for (Future<Double> future : executor.invokeAll(tasks))
+            sum += future.get();
+        return sum;
+    }
+}
@@ -0,0 +1,61 @@
+package calculator;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A generated-looking formula that repeats the same parenthesised
+ * subexpression many times, interpreted with and without common
+ * subexpression elimination
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SubexpressionBenchmark {
+    static final String REPEATED = "((x*y+z/3)^2-(x-y)*(z+1))";
+
+    @Param({"4", "40"})
+    public int copies;
+
+    private Program program;
+    private Program eliminated;
+    private double[] values = {1.5, 2.25, 3.125};
+
+    @Setup
+    public void setup() {
+        StringJoiner formula = new StringJoiner("+");
+        for (int i = 1; i <= copies; i++)
+            formula.add(REPEATED + "*" + i + "/(" + REPEATED + "+x)");
+        program = new Optimizer().optimize(new Parser().parse(new Lexer().tokenize(formula.toString())));
+
+        CommonSubexpressions eliminator = new CommonSubexpressions();
+        eliminated = eliminator.eliminate(program);
+        System.out.printf("%n%d instructions, %d after elimination, ratio %.2f%n",
+                program.size(), eliminated.size(), eliminator.ratio());
+    }
+
+    @Benchmark
+    public double original() {
+        return program.run(values);
+    }
+
+    @Benchmark
+    public double eliminated() {
+        return eliminated.run(values);
+    }
+}
@@ -0,0 +1,73 @@
+package calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One expression of about a million nodes, run serially as a program and
+ * evaluated as an ExpressionTree on pools of 1 to 8 threads. The speedup
+ * at n threads is serial divided by tree at n, up to the number of cores
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TreeBenchmark {
+    // Terms giving about a million nodes once unary minus is rewritten
+    private static final int TERMS = 400_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ExpressionTree tree;
+    private Program program;
+    private double[] stack;
+
+    @Setup
+    public void setup() {
+        Calculator calculator = new Calculator();
+        String expression = Expressions.generate(TERMS, 25);
+        tree = calculator.tree(expression);
+        Scratch scratch = Scratch.acquire();
+        try {
+            program = scratch.parser.parse(scratch.lexer.tokenize(expression));
+        } finally {
+            scratch.release();
+        }
+        stack = new double[program.maxStack()];
+        pool = new ForkJoinPool(threads);
+        if (tree.evaluate(pool) != program.run(new double[0], stack))
+            throw new IllegalStateException("Tree and program disagree");
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public double serial() {
+        return program.run(new double[0], stack);
+    }
+
+    @Benchmark
+    public double tree() {
+        return tree.evaluate(pool);
+    }
+}
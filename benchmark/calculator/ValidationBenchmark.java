@@ -0,0 +1,87 @@
+package calculator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A corpus where about 15% of the expressions are malformed or divide by
+ * zero, evaluated catching exceptions and evaluated as Results, and the
+ * malformed ones on their own through validate and through compile
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ValidationBenchmark.CORPUS)
+public class ValidationBenchmark {
+    static final int CORPUS = 1000;
+    private static final String[] MISTAKES = {")", "(", "#", "..", "+", "/0"};
+
+    private Calculator calculator;
+    private String[] corpus;
+
+    @Setup
+    public void setup() {
+        calculator = new Calculator();
+        corpus = new String[CORPUS];
+        Random random = new Random(18);
+        for (int i = 0; i < CORPUS; i++) {
+            String exp = Expressions.generate(10, i);
+            if (random.nextInt(100) < 15) {
+                // Insert a mistake somewhere in the expression
+                int at = random.nextInt(exp.length() + 1);
+                exp = exp.substring(0, at) + MISTAKES[random.nextInt(MISTAKES.length)] + exp.substring(at);
+            }
+            corpus[i] = exp;
+        }
+    }
+
+    @Benchmark
+    public void evaluateCatching(Blackhole blackhole) {
+        for (String exp : corpus) {
+            try {
+                blackhole.consume(calculator.evaluate(exp));
+            } catch (RuntimeException e) {
+                blackhole.consume(e.getMessage());
+            }
+        }
+    }
+
+    @Benchmark
+    public void tryEvaluate(Blackhole blackhole) {
+        for (String exp : corpus)
+            blackhole.consume(calculator.tryEvaluate(exp));
+    }
+
+    @Benchmark
+    public void compileCatching(Blackhole blackhole) {
+        for (String exp : corpus) {
+            try {
+                blackhole.consume(calculator.compile(exp));
+            } catch (RuntimeException e) {
+                blackhole.consume(e.getMessage());
+            }
+        }
+    }
+
+    @Benchmark
+    public void validate(Blackhole blackhole) {
+        for (String exp : corpus)
+            blackhole.consume(calculator.validate(exp));
+    }
+}
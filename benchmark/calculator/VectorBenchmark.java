@@ -0,0 +1,64 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rows per second for the column interpreter with the scalar block loops
+ * and with the Vector API kernels, on an expression of plain arithmetic.
+ * The fork adds jdk.incubator.vector, and the vector module's output must
+ * be on the classpath; the best kernels are scalar otherwise. They use the
+ * widest vectors the CPU prefers. To compare AVX2 with AVX-512 on one
+ * machine, run again with -jvmArgsAppend -XX:UseAVX=2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(VectorBenchmark.ROWS)
+public class VectorBenchmark {
+    static final int ROWS = 1_000_000;
+
+    @Param({"scalar", "best"})
+    public String kernels;
+
+    private Program program;
+    private BlockKernels blockKernels;
+    private double[][] columns;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        program = new Calculator().compile("price*(1+rate)-fee/qty+price*rate*-qty").program();
+        blockKernels = kernels.equals("scalar")
+                ? BlockKernels.SCALAR
+                : BlockKernels.best();
+        System.out.println("Kernels: " + blockKernels.name());
+
+        columns = new double[program.variables().size()][ROWS];
+        for (int slot = 0; slot < columns.length; slot++)
+            for (int i = 0; i < ROWS; i++)
+                columns[slot][i] = 1 + (i * 31 + slot * 7) % 1000 / 10.0;
+        out = new double[ROWS];
+    }
+
+    @Benchmark
+    public double[] columns() {
+        program.run(columns, out, ROWS, blockKernels);
+        return out;
+    }
+}
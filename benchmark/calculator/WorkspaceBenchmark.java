@@ -0,0 +1,56 @@
+package calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Changing one input of a 100k cell workspace and recalculating. The
+ * workspace is split into independent components of the given size, each
+ * fed by one input, so the cells recomputed per update is the component
+ * size. Time should grow with it, not with the size of the workspace
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WorkspaceBenchmark {
+    static final int CELLS = 100_000;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int affected;
+
+    private Workspace workspace;
+    private double value;
+
+    @Setup
+    public void setup() {
+        workspace = new Workspace();
+        for (int component = 0; component < CELLS / affected; component++) {
+            String prefix = "c" + component + "_";
+            workspace.set(prefix + 0, 1);
+            // Each cell uses two earlier ones, so levels are a few cells deep and many wide
+            for (int i = 1; i < affected; i++)
+                workspace.define(prefix + i, prefix + (i - 1) / 2 + "*0.5+" + prefix + (i - 1) / 3 + "*0.25+1");
+        }
+        workspace.recalculate();
+    }
+
+    @Benchmark
+    public int update() {
+        workspace.set("c0_0", value++);
+        return workspace.recalculate();
+    }
+}
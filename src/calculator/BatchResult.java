@@ -0,0 +1,65 @@
+package calculator;
+
+/**
+ * Results of evaluating a batch of expressions, in the order they were given.
+ * An expression that failed has NaN as its value and keeps the exception
+ * it failed with, so one bad expression does not abort the batch
+ */
+public class BatchResult {
+    private final double[] values;
+    private final RuntimeException[] errors;
+
+    BatchResult(double[] values, RuntimeException[] errors) {
+        this.values = values;
+        this.errors = errors;
+    }
+
+    /**
+     * @return              Number of expressions in the batch
+     */
+    public int size() {
+        return errors.length;
+    }
+
+    /**
+     * @param i             Index of the expression in the batch
+     * @return              The answer, or NaN if the expression failed
+     */
+    public double value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i             Index of the expression in the batch
+     * @return              The exception the expression failed with, or null if it succeeded
+     */
+    public RuntimeException error(int i) {
+        return errors[i];
+    }
+
+    /**
+     * @param i             Index of the expression in the batch
+     * @return              Returns true if the expression failed
+     */
+    public boolean failed(int i) {
+        return errors[i] != null;
+    }
+
+    /**
+     * @return              Number of expressions that failed
+     */
+    public int errorCount() {
+        int count = 0;
+        for (RuntimeException error : errors)
+            if (error != null)
+                count++;
+        return count;
+    }
+
+    /**
+     * @return              The answers, NaN where an expression failed. Backed by the result
+     */
+    public double[] values() {
+        return values;
+    }
+}
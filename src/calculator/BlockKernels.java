@@ -0,0 +1,79 @@
+package calculator;
+
+/**
+ * Element-wise operations Program's column interpreter applies to a block
+ * of rows. The scalar loops are always available. When the vector module
+ * and jdk.incubator.vector are both present, best() gives kernels that
+ * work a full SIMD register of lanes at a time instead. Either way the
+ * answers are bit-identical, and division by zero throws like divide
+ */
+interface BlockKernels {
+    /**
+     * Plain loops, one row at a time
+     */
+    BlockKernels SCALAR = new ScalarKernels();
+
+    /**
+     * x[i] = x[i] + y[i] for i below length
+     */
+    void add(double[] x, double[] y, int length);
+
+    /**
+     * x[i] = x[i] - y[i] for i below length
+     */
+    void subtract(double[] x, double[] y, int length);
+
+    /**
+     * x[i] = x[i] * y[i] for i below length
+     */
+    void multiply(double[] x, double[] y, int length);
+
+    /**
+     * x[i] = x[i] / y[i] for i below length
+     *
+     * @throws ArithmeticException if any y[i] is zero
+     */
+    void divide(double[] x, double[] y, int length);
+
+    /**
+     * x[i] = -x[i] for i below length
+     */
+    void negate(double[] x, int length);
+
+    /**
+     * @return              What the kernels run on, e.g. "scalar" or "Vector API, 256-bit"
+     */
+    String name();
+
+    /**
+     * @return              The fastest kernels this JVM can run
+     */
+    static BlockKernels best() {
+        return Loader.BEST;
+    }
+
+    /**
+     * Loads the vector kernels once, falling back to SCALAR
+     */
+    final class Loader {
+        private static final BlockKernels BEST = load();
+
+        private Loader() {
+        }
+
+        private static BlockKernels load() {
+            if (!Boolean.parseBoolean(System.getProperty("calculator.vector", "true")))
+                return SCALAR;
+            try {
+                BlockKernels vector = (BlockKernels) Class.forName("calculator.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+                // The class can load without its module, so only trust it once it has run
+                double[] x = {1, 2};
+                vector.add(x, x, x.length);
+                return vector;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return SCALAR;
+            }
+        }
+    }
+}
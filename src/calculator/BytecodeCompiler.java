@@ -0,0 +1,320 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates a Program into a hidden class implementing CompiledProgram,
+ * so that the JIT compiles the expression like hand-written Java.
+ *
+ * Each instruction becomes the matching bytecode: CONST an ldc2_w, VARIABLE
+ * a load from the vars array, ADD, SUBTRACT and MULTIPLY dadd, dsub and
+ * dmul, NEGATE dneg, DUPLICATE dup2, and TEE and LOAD a dstore and dload
+ * of a local. DIVIDE and POWER call Program.divide and Program.power, so
+ * answers and the ArithmeticException on division by zero match the
+ * interpreter exactly. The method has no branches, so the class needs no
+ * stack map frames.
+ *
+ * The class is defined without ClassOption.STRONG, so it is unloaded once
+ * the CompiledProgram, and so the Expression holding it, is unreachable,
+ * e.g. after being evicted from the expression cache
+ */
+final class BytecodeCompiler {
+    /**
+     * Largest method the JIT will compile by default (-XX:HugeMethodLimit).
+     * Longer programs would run slower as bytecode than in the interpreter
+     */
+    static final int MAX_CODE_LENGTH = 8000;
+
+    private static final int CLASS_FILE_VERSION = 61; // Java 17
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    // Constant pool tags
+    private static final int UTF8 = 1;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    // Instructions
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DNEG = 0x77;
+    private static final int DUP2 = 0x5c;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int WIDE = 0xc4;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    // Locals 0 and 1 are this and vars, each temporary then takes two
+    private static final int FIRST_TEMPORARY = 2;
+
+    private static final String PROGRAM = "calculator/Program";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Compiles a program into a hidden class
+     *
+     * @param program       Program to compile
+     * @return              The compiled program, or null if its bytecode would be too long to JIT compile
+     */
+    static CompiledProgram compile(Program program) {
+        byte[] bytes = classFile(program);
+        if (bytes == null)
+            return null;
+        try {
+            Class<?> type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledProgram) type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define compiled program", e);
+        }
+    }
+
+    /**
+     * @param program       Program to compile
+     * @return              The class file, or null if the method would be longer than MAX_CODE_LENGTH
+     */
+    static byte[] classFile(Program program) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.type("calculator/CompiledExpression");
+        int superClass = pool.type("java/lang/Object");
+        int evaluator = pool.type("calculator/CompiledProgram");
+        int objectInit = pool.method(superClass, "<init>", "()V");
+        int divide = pool.method(pool.type(PROGRAM), "divide", "(DD)D");
+        int power = pool.method(pool.type(PROGRAM), "power", "(DD)D");
+        int code = pool.utf8("Code");
+        int init = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int eval = pool.utf8("eval");
+        int evalType = pool.utf8("([D)D");
+
+        Bytes body = new Bytes();
+        for (int i = 0; i < program.size(); i++) {
+            switch (program.opcode(i)) {
+                case Program.CONST -> {
+                    double value = program.constant(program.operand(i));
+                    if (Double.doubleToRawLongBits(value) == 0) {
+                        body.u1(DCONST_0);
+                    } else if (value == 1) {
+                        body.u1(DCONST_1);
+                    } else {
+                        body.u1(LDC2_W);
+                        body.u2(pool.constant(value));
+                    }
+                }
+                case Program.VARIABLE -> {
+                    body.u1(ALOAD_1);
+                    int slot = program.operand(i);
+                    if (slot <= 5) {
+                        body.u1(ICONST_0 + slot);
+                    } else if (slot <= Byte.MAX_VALUE) {
+                        body.u1(BIPUSH);
+                        body.u1(slot);
+                    } else {
+                        body.u1(SIPUSH);
+                        body.u2(slot);
+                    }
+                    body.u1(DALOAD);
+                }
+                case Program.ADD -> body.u1(DADD);
+                case Program.SUBTRACT -> body.u1(DSUB);
+                case Program.MULTIPLY -> body.u1(DMUL);
+                case Program.NEGATE -> body.u1(DNEG);
+                case Program.DUPLICATE -> body.u1(DUP2);
+                case Program.TEE -> {
+                    body.u1(DUP2);
+                    local(body, DSTORE, program.operand(i));
+                }
+                case Program.LOAD -> local(body, DLOAD, program.operand(i));
+                case Program.DIVIDE -> {
+                    body.u1(INVOKESTATIC);
+                    body.u2(divide);
+                }
+                case Program.POWER -> {
+                    body.u1(INVOKESTATIC);
+                    body.u2(power);
+                }
+                default -> throw new IllegalStateException("Unexpected value: " + program.opcode(i));
+            }
+            if (body.size() > MAX_CODE_LENGTH)
+                return null;
+        }
+        if (program.size() == 0)
+            body.u1(DCONST_0);
+        body.u1(DRETURN);
+        int locals = FIRST_TEMPORARY + program.temporaries() * 2;
+        if (pool.count > 0xffff || locals > 0xffff)
+            return null;
+
+        Bytes out = new Bytes();
+        out.u4(0xcafebabe);
+        out.u2(0);
+        out.u2(CLASS_FILE_VERSION);
+        out.u2(pool.count);
+        out.bytes(pool.bytes);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(1);
+        out.u2(evaluator);
+        out.u2(0); // Fields
+        out.u2(2); // Methods
+
+        // public <init>() { super(); }
+        out.u2(ACC_PUBLIC);
+        out.u2(init);
+        out.u2(initType);
+        out.u2(1);
+        out.u2(code);
+        out.u4(12 + 5);
+        out.u2(1); // Max stack
+        out.u2(1); // Max locals
+        out.u4(5);
+        out.u1(ALOAD_0);
+        out.u1(INVOKESPECIAL);
+        out.u2(objectInit);
+        out.u1(RETURN);
+        out.u2(0); // Exception table
+        out.u2(0); // Attributes
+
+        // public double eval(double[] vars)
+        out.u2(ACC_PUBLIC | ACC_FINAL);
+        out.u2(eval);
+        out.u2(evalType);
+        out.u2(1);
+        out.u2(code);
+        out.u4(12 + body.size());
+        // Each operand is a double taking two slots, plus the array and index while loading a variable
+        out.u2(Math.max(2, program.maxStack() * 2 + 2));
+        out.u2(locals); // this, vars and the temporaries
+        out.u4(body.size());
+        out.bytes(body);
+        out.u2(0); // Exception table
+        out.u2(0); // Attributes
+
+        out.u2(0); // Class attributes
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes an instruction on the local holding a temporary, widened if the local needs two bytes
+     */
+    private static void local(Bytes body, int opcode, int temporary) {
+        int local = FIRST_TEMPORARY + temporary * 2;
+        if (local <= 0xff) {
+            body.u1(opcode);
+            body.u1(local);
+        } else {
+            body.u1(WIDE);
+            body.u1(opcode);
+            body.u2(local);
+        }
+    }
+
+    /**
+     * Growable big-endian byte buffer
+     */
+    private static final class Bytes extends ByteArrayOutputStream {
+        void u1(int value) {
+            write(value);
+        }
+
+        void u2(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void bytes(Bytes other) {
+            write(other.buf, 0, other.count);
+        }
+    }
+
+    /**
+     * Constant pool of the class being written, with each entry added once
+     */
+    private static final class ConstantPool {
+        private final Bytes bytes = new Bytes();
+        private final Map<Object, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get(value);
+            if (index != null)
+                return index;
+            bytes.u1(UTF8);
+            bytes.u2(value.length());
+            for (int i = 0; i < value.length(); i++)
+                bytes.u1(value.charAt(i)); // Names here are all ASCII
+            return add(value, 1);
+        }
+
+        int type(String name) {
+            String key = "class " + name;
+            Integer index = entries.get(key);
+            if (index != null)
+                return index;
+            int utf8 = utf8(name);
+            bytes.u1(CLASS);
+            bytes.u2(utf8);
+            return add(key, 1);
+        }
+
+        int method(int owner, String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            bytes.u1(NAME_AND_TYPE);
+            bytes.u2(nameIndex);
+            bytes.u2(descriptorIndex);
+            int nameAndType = count++;
+            bytes.u1(METHOD_REF);
+            bytes.u2(owner);
+            bytes.u2(nameAndType);
+            return count++;
+        }
+
+        int constant(double value) {
+            // Keyed by bits, so -0.0 and NaN payloads are kept distinct
+            Long key = Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index != null)
+                return index;
+            bytes.u1(DOUBLE);
+            bytes.u4((int) (key >>> 32));
+            bytes.u4(key.intValue());
+            return add(key, 2); // Doubles take two entries
+        }
+
+        private int add(Object key, int size) {
+            int index = count;
+            entries.put(key, index);
+            count += size;
+            return index;
+        }
+    }
+}
@@ -3,39 +3,483 @@ package calculator;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Program to calculate user expression
+ * Program to calculate user expression.
+ *
+ * One Calculator can be shared by any number of threads, and there is no
+ * need for one per request:
+ * - evaluate, tryEvaluate, validate, compile and evaluateAll may be called
+ *   concurrently. Each thread lexes, parses and runs expressions in
+ *   buffers confined to it, so calls neither lock nor see each other's state
+ * - Compiled expressions are cached in an ExpressionCache whose lookups
+ *   never lock. Two threads missing on the same expression may both
+ *   compile it, and either copy gives the same answers
+ * - setFastMath, setEngine and setMetricsEnabled may be called at any time
+ *   and apply to expressions compiled, or evaluations started, afterwards
+ * - The legacy normaliseInput, rpn and calculate methods keep no state of
+ *   their own, only that of the lists and stacks they are passed, so they
+ *   are safe as long as those are not shared between threads
  *
  * @author Kyle
  * @version 1.1
  */
 public class Calculator implements ICalculator {
     /**
-     * Evaluates user inputted expression
+     * How evaluate answers an expression
+     */
+    public enum Engine {
+        /** Lex, parse and optimize into a Program, cached for the next evaluation */
+        COMPILED,
+        /**
+         * Parse and evaluate in one pass by precedence climbing, allocating
+         * nothing and caching nothing. ^ is right-associative, so 2^3^2 is
+         * 512 rather than 64. Expressions it cannot answer, including every
+         * malformed one, are left to COMPILED, so errors are reported the same
+         */
+        PRATT
+    }
+
+    /**
+     * Number of compiled expressions kept by default
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    // Batches are split until each task evaluates at most this many expressions
+    private static final int MIN_BATCH_SLICE = 64;
+    private static final BigDecimal[] NO_DECIMALS = {};
+    private static final Rational[] NO_RATIONALS = {};
+
+    private final ExpressionCache cache;
+    private final ForkJoinPool pool;
+    private final Tiering tiering;
+    private final LongAdder optimizedAway = new LongAdder();
+    private final LongAdder preciseEvaluations = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private volatile boolean fastMath;
+    private volatile Engine engine = Engine.COMPILED;
+    private volatile CalculatorMetrics metrics;
+
+    /**
+     * Creates a calculator with the default expression cache capacity
+     */
+    public Calculator() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Creates a calculator whose batches run on the common ForkJoinPool
+     *
+     * @param cacheCapacity     Maximum number of compiled expressions kept for reuse by evaluate
+     */
+    public Calculator(int cacheCapacity) {
+        this(cacheCapacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a calculator that compiles expressions to bytecode after
+     * Tiering.DEFAULT_THRESHOLD evaluations
+     *
+     * @param cacheCapacity     Maximum number of compiled expressions kept for reuse by evaluate
+     * @param pool              Pool evaluateAll splits batches across
+     */
+    public Calculator(int cacheCapacity, ForkJoinPool pool) {
+        this(cacheCapacity, pool, new Tiering(Tiering.DEFAULT_THRESHOLD));
+    }
+
+    /**
+     * Creates a calculator
+     *
+     * @param cacheCapacity     Maximum number of compiled expressions kept for reuse by evaluate
+     * @param pool              Pool evaluateAll splits batches across
+     * @param tiering           Policy promoting hot expressions to bytecode, or null to always interpret
+     */
+    public Calculator(int cacheCapacity, ForkJoinPool pool, Tiering tiering) {
+        if (pool == null)
+            throw new IllegalArgumentException("Pool must not be null");
+        this.cache = new ExpressionCache(cacheCapacity);
+        this.pool = pool;
+        this.tiering = tiering;
+    }
+
+    /**
+     * Evaluates user inputted expression. Compiled expressions are cached,
+     * so repeated expressions skip normalisation and parsing
      *
      * @param exp           User expression
      * @return              Returns answer
      */
     public double evaluate(String exp) {
-        // Checks and removes whitespace
-        if (exp.contains(" "))
-            exp = exp.replaceAll(" ","");
+        CalculatorMetrics metrics = this.metrics;
+        boolean pratt = engine == Engine.PRATT;
+        if (metrics == null)
+            return pratt ? evaluateInOnePass(exp) : cached(exp).evaluate();
+
+        try {
+            return pratt ? metrics.run(this, exp) : metrics.run(cached(exp));
+        } catch (RuntimeException e) {
+            metrics.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates user inputted expression in decimal at the given precision,
+     * reading numbers as written, so 0.1+0.2 is exactly 0.3. Most expressions
+     * are answered in double, tracking how far the answer can be from the
+     * exact one. Only those whose error bound straddles a rounding boundary,
+     * or which overflow or take inexact powers, are evaluated again in BigDecimal
+     *
+     * @param exp           User expression
+     * @param context       Precision and rounding of the answer
+     * @return              Returns answer, without trailing zeros
+     */
+    public BigDecimal evaluate(String exp, MathContext context) {
+        PrecisionEvaluator precise = cached(exp).precise();
+        BigDecimal answer = precise.estimate(NO_DECIMALS, context);
+        preciseEvaluations.increment();
+        if (answer == null) {
+            escalations.increment();
+            answer = precise.evaluate(NO_DECIMALS, context);
+        }
+        return answer;
+    }
+
+    /**
+     * Evaluates user inputted expression exactly, as a fraction, reading
+     * numbers as written, so 0.1+0.2 is 3/10 and 1/3*3 is 1. No step goes
+     * through floating point. Fractional powers are answered only when
+     * rational, e.g. 8^(1/3) is 2
+     *
+     * @param exp           User expression
+     * @return              Returns answer
+     */
+    public Rational evaluateExact(String exp) {
+        return cached(exp).evaluate(NO_RATIONALS);
+    }
+
+    /**
+     * Evaluates user inputted expression without throwing. A malformed
+     * expression, or one that divides by zero, gives a failed Result with
+     * an ErrorCode and the position where it went wrong, and no exception
+     * is created along the way
+     *
+     * @param exp           User expression
+     * @return              Returns the answer, or why there is none
+     */
+    public Result tryEvaluate(String exp) {
+        CalculatorMetrics metrics = this.metrics;
+        String stripped = stripWhitespace(exp);
+        Expression expression = cache.get(stripped);
+        if (expression == null) {
+            Result invalid = Validator.validate(stripped);
+            if (invalid.failed())
+                return failed(exp, invalid, metrics);
+            expression = cached(stripped);
+        }
+
+        // Without variables, anything left after constant folding is there because it throws
+        Program program = expression.program();
+        if (program.size() > 1 || !program.variables().isEmpty()) {
+            Result failure = Validator.failure(stripped);
+            if (failure.failed())
+                return failed(exp, failure, metrics);
+        }
+        return Result.of(metrics == null
+                ? expression.evaluate()
+                : metrics.run(expression));
+    }
+
+    /**
+     * Checks that user inputted expression compiles, without compiling it.
+     * Much cheaper than compiling, and creates no exception when it does not
+     *
+     * @param exp           User expression
+     * @return              Returns a successful Result without a value, or where the expression first goes wrong
+     */
+    public Result validate(String exp) {
+        String stripped = stripWhitespace(exp);
+        Result result = Validator.validate(stripped);
+        return result.failed() && stripped != exp
+                ? Validator.unstrip(exp, result)
+                : result;
+    }
+
+    /**
+     * @param exp           User expression, before stripping whitespace
+     * @param failure       Why the stripped expression failed
+     * @param metrics       Where to count the error, or null
+     * @return              The failure, positioned in exp
+     */
+    private static Result failed(String exp, Result failure, CalculatorMetrics metrics) {
+        if (metrics != null)
+            metrics.error(failure.error());
+        return Validator.unstrip(exp, failure);
+    }
+
+    /**
+     * Evaluates user expression with the PRATT engine, falling back to the
+     * compiled engine for anything it leaves, which then gives the answer or
+     * throws
+     *
+     * @param exp           User expression
+     * @return              Returns answer
+     */
+    double evaluateInOnePass(String exp) {
+        Scratch scratch = Scratch.acquire();
+        try {
+            if (scratch.pratt.evaluate(exp))
+                return scratch.pratt.value();
+        } finally {
+            scratch.release();
+        }
+        return cached(exp).evaluate();
+    }
+
+    /**
+     * Looks a user expression up in the cache, compiling it on a miss
+     *
+     * @param exp           User expression
+     * @return              Returns the compiled expression
+     */
+    private Expression cached(String exp) {
+        exp = stripWhitespace(exp);
+
+        Expression expression = cache.get(exp);
+        if (expression == null) {
+            expression = compile(exp);
+            cache.put(exp, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * Evaluates a batch of expressions in parallel, keeping their order.
+     * An expression that fails is recorded in the result rather than
+     * aborting the batch
+     *
+     * @param expressions   User expressions
+     * @return              Returns the answers and any errors, in the order given
+     */
+    public BatchResult evaluateAll(List<String> expressions) {
+        return evaluateAll(expressions.toArray(new String[0]), new double[expressions.size()]);
+    }
+
+    /**
+     * Evaluates a batch of expressions in parallel, keeping their order.
+     * An expression that fails is recorded in the result, and NaN is
+     * written in its place, rather than aborting the batch
+     *
+     * @param expressions   User expressions
+     * @param out           Destination parameter, takes in the answer to each expression
+     * @return              Returns the answers, backed by out, and any errors
+     */
+    public BatchResult evaluateAll(String[] expressions, double[] out) {
+        if (out.length < expressions.length)
+            throw new IllegalArgumentException("Output holds " + out.length + " answers, batch has " + expressions.length);
+
+        RuntimeException[] errors = new RuntimeException[expressions.length];
+        // Several slices per worker, so that slow expressions can be balanced by work stealing
+        int slice = Math.max(MIN_BATCH_SLICE, expressions.length / (pool.getParallelism() * 8));
+        pool.invoke(new BatchTask(this, expressions, out, errors, 0, expressions.length, slice));
+        return new BatchResult(out, errors);
+    }
+
+    /**
+     * Compiles user inputted expression into a reusable form
+     *
+     * @param exp           User expression
+     * @return              Returns the compiled expression
+     */
+    public Expression compile(String exp) {
+        exp = stripWhitespace(exp);
+
+        CalculatorMetrics metrics = this.metrics;
+        if (metrics == null)
+            return compile(exp, null);
 
-        // Set-up to normalise the expression inputted
-        String[] arr = exp.split("");
-        ArrayList<String> normalised = new ArrayList<>();
-        normaliseInput(arr, normalised, "", 0, false);
+        CalculatorMetrics.Stripe stripe = metrics.stripe();
+        CalculatorMetrics.Stripe previous = stripe.enter();
+        try {
+            return compile(exp, stripe);
+        } finally {
+            stripe.exit(previous);
+        }
+    }
 
-        // Set-up to create the reverse polish notation
-        Stack<String> stack = new Stack<>();
-        ArrayList<String> postFix = new ArrayList<>();
-        rpn(normalised, stack, postFix, 0);
+    /**
+     * Parses user inputted expression into a tree, for evaluating a huge
+     * expression across threads. Constants are not folded, which would take
+     * a serial pass over the whole expression, so the tree keeps every
+     * operator and operand in the order rpn gives them
+     *
+     * @param exp           User expression
+     * @return              Returns the expression as a tree
+     */
+    public ExpressionTree tree(String exp) {
+        return tree(exp, ExpressionTree.DEFAULT_THRESHOLD);
+    }
 
-        // Set-up to calculate RPN expression
-        Stack<Double> calcStack = new Stack<>();
-        return calculate(0, postFix, calcStack, 0);
+    /**
+     * @param exp           User expression
+     * @param threshold     Nodes below which a subtree is evaluated on one thread
+     * @return              Returns the expression as a tree
+     */
+    ExpressionTree tree(String exp, int threshold) {
+        Scratch scratch = Scratch.acquire();
+        try {
+            return new ExpressionTree(scratch.parser.parse(scratch.lexer.tokenize(stripWhitespace(exp))), threshold);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * @param exp           Expression without whitespace
+     * @param stripe        Where to record the time of each phase, or null
+     * @return              Returns the compiled expression
+     */
+    private Expression compile(String exp, CalculatorMetrics.Stripe stripe) {
+        long time = stripe == null ? 0 : System.nanoTime();
+
+        // Tokenize, order the tokens into an RPN program, simplify it, then share repeated subexpressions
+        Program program;
+        Scratch scratch = Scratch.acquire();
+        try {
+            Lexer lexer = scratch.lexer.tokenize(exp);
+            if (stripe != null) {
+                time = stripe.lap(CalculatorMetrics.Phase.LEX, time);
+                stripe.tokens(lexer.size());
+            }
+            program = scratch.parser.parse(lexer);
+            if (stripe != null)
+                time = stripe.lap(CalculatorMetrics.Phase.PARSE, time);
+        } finally {
+            scratch.release();
+        }
+        program = optimize(program);
+        CommonSubexpressions subexpressions = new CommonSubexpressions();
+        program = subexpressions.eliminate(program);
+        if (stripe != null)
+            stripe.lap(CalculatorMetrics.Phase.OPTIMIZE, time);
+
+        return new Expression(exp, program, tiering, subexpressions.ratio());
+    }
+
+    /**
+     * @return              The pool evaluateAll splits batches across
+     */
+    ForkJoinPool pool() {
+        return pool;
+    }
+
+    /**
+     * @return              The cache of compiled expressions used by evaluate
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Allows the optimizer to apply identities that do not hold for signed
+     * zeros, NaN or infinity, such as x+0 = x and x*0 = 0. Clears the cache,
+     * so every expression is compiled again with the new setting
+     *
+     * @param fastMath      Whether to apply them
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+        cache.clear();
+    }
+
+    /**
+     * @return              Returns true if the optimizer may ignore signed zeros, NaN and infinity
+     */
+    public boolean isFastMath() {
+        return fastMath;
+    }
+
+    /**
+     * Chooses how evaluate answers expressions. Only evaluate(String), and
+     * so evaluateAll, is affected; compiling, validating and decimal or
+     * exact evaluation always use the compiled engine
+     *
+     * @param engine        Engine to use, COMPILED by default
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return              The engine evaluate uses
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return              Number of instructions the optimizer has removed from compiled expressions
+     */
+    public long getOptimizedAway() {
+        return optimizedAway.sum();
+    }
+
+    /**
+     * @return              Number of decimal evaluations, answered either way
+     */
+    public long getPreciseEvaluations() {
+        return preciseEvaluations.sum();
+    }
+
+    /**
+     * @return              Number of decimal evaluations that double could not answer, so ran in BigDecimal
+     */
+    public long getEscalations() {
+        return escalations.sum();
+    }
+
+    /**
+     * @return              Fraction of decimal evaluations run in BigDecimal, 0 before the first
+     */
+    public double getEscalationRate() {
+        long evaluations = preciseEvaluations.sum();
+        return evaluations == 0
+                ? 0
+                : (double) escalations.sum() / evaluations;
+    }
+
+    /**
+     * Switches latency metrics on or off. Switching them off discards what
+     * was recorded and unregisters it from JMX. Off by default
+     *
+     * @param enabled       Whether to record metrics
+     */
+    public synchronized void setMetricsEnabled(boolean enabled) {
+        if (enabled && metrics == null) {
+            metrics = new CalculatorMetrics();
+        } else if (!enabled && metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+    }
+
+    /**
+     * @return              Latency of each phase, tokens and errors, or null if metrics are off
+     */
+    public CalculatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return              The policy promoting hot expressions to bytecode, or null if there is none
+     */
+    public Tiering getTiering() {
+        return tiering;
     }
 
     /**
@@ -44,58 +488,25 @@ public class Calculator implements ICalculator {
      *
      * @param arr           An array of the user input e.g. 1+23 -> [1,+,2,3]
      * @param expArr        Destination parameter, takes in the normalised input
-     * @param temp          Holding parameter
-     * @param i             Iterator
-     * @param negCheck      Check to ensure negative numbers are properly parsed
+     * @param temp          Holding parameter, prepended to the input
+     * @param i             Iterator, index in arr to start from
+     * @param negCheck      Unused, kept for compatibility
+     * @deprecated          Use {@link Lexer}, which produces the same tokens in a single pass
      */
+    @Deprecated
     public void normaliseInput(String[] arr, ArrayList<String> expArr, String temp, int i, boolean negCheck) {
-        if (i < arr.length) {
-            if (isNumeric(arr[i]) || arr[i].equals(".")) {
-                temp += arr[i];
-                negCheck = false;
-            } else if (negCheck || (i == 0 && arr[i].equals("-")) || i == 1 && arr[i-1].equals("-")) { // Negative handling
-                if (arr[i].equals("-")) {
-                    if (isNumeric(arr[i + 1]))
-                        temp += arr[i];
-                    else
-                        temp = addTempToArray(arr, temp, expArr, i);
-                } else if (arr[i].equals("(") && arr[i-1].equals("-")) {
-                    if (i == 1) {
-                        expArr.remove(0);
-                        expArr.add(0, "-1");
-                        expArr.add(1, "*");
-                    } else if (i >= 3 && arr[i-1].equals("-")) {
-                        // Deals with num op - (
-                        String op = expArr.get(expArr.size() - 2);
-                        if (!op.equals(")")) {
-                            switch (op) {
-                                case "+" -> expArr.remove(expArr.size() - 2); // + -  -> -
-                                case "-" -> { // - - -> +
-                                    expArr.remove(expArr.size() - 1);
-                                    expArr.remove(expArr.size() - 1);
-                                    expArr.add(expArr.size(), "+");
-                                }
-                                case "*", "/" -> {
-                                    String s = expArr.get(expArr.size() - 1)+expArr.get(expArr.size() - 3);
-                                    expArr.remove(expArr.size() - 1);
-                                    expArr.remove(expArr.size() - 2);
-                                    expArr.add(expArr.size() - 1, s);
-                                }
-                                default -> throw new IllegalStateException("Unexpected value: " + op + " at position " + i);
-                            }
-                        }
-                    }
-                    temp = addTempToArray(arr, temp, expArr, i);
-                } else {
-                    temp = addTempToArray(arr, temp, expArr, i);
-                }
-            } else {
-                negCheck = !arr[i].equals(")"); // Avoids ..)-6 becoming [...,),-6] and instead is [...,),-,6]
-                temp = addTempToArray(arr, temp, expArr, i);
-            }
-            normaliseInput(arr, expArr, temp, ++i, negCheck);
-        } else if (temp.length() != 0) { // For adding numbers if they are the last in the expression
-            expArr.add(temp);
+        CalculatorMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        StringBuilder exp = new StringBuilder(temp);
+        for (; i < arr.length; i++)
+            exp.append(arr[i]);
+
+        Lexer lexer = new Lexer().tokenize(exp);
+        for (int token = 0; token < lexer.size(); token++)
+            expArr.add(lexer.text(token));
+        if (metrics != null) {
+            metrics.stripe().lap(CalculatorMetrics.Phase.LEX, start);
+            metrics.stripe().tokens(lexer.size());
         }
     }
 
@@ -105,74 +516,63 @@ public class Calculator implements ICalculator {
      * @param exp           Normalised expression
      * @param stack         Holding parameter. Takes in each value in the expression for parsing
      * @param postFix       Final array in RPN format
-     * @param i             Iterator
+     * @param i             Iterator, index in exp to start from
      */
     public void rpn(ArrayList<String> exp, Stack<String> stack, ArrayList<String> postFix, int i) {
-        if (i < exp.size()) { // TO-DO COMMENT
+        CalculatorMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        for (; i < exp.size(); i++) {
             String str = exp.get(i);
             // Check if string is an operator
             if (precedence(str) > 0) {
                 precedenceCheck(str, postFix, stack);
                 stack.push(str);
-            } else if (str.equals(")")) { // TO-DO COMMENT
+            } else if (str.equals(")")) { // Unwind to the matching opening bracket
+                if (stack.isEmpty())
+                    throw new RuntimeException("Extra closing bracket");
                 String temp = stack.pop();
                 bracketCheck(temp, postFix, stack);
-            } else if (str.equals("(")) { // TO-DO COMMENT
+            } else if (str.equals("(")) {
                 stack.push(str);
             } else {
                 // str is neither not an operator, hence it will be a number
                 postFix.add(str);
             }
-            rpn(exp, stack, postFix, ++i);
         }
 
         // Adds remaining operators in the stack
-        if (!stack.isEmpty())
+        while (!stack.isEmpty())
             postFix.add(stack.pop());
+        if (metrics != null)
+            metrics.stripe().lap(CalculatorMetrics.Phase.PARSE, start);
     }
 
     /**
-     * Calculates the RPN expression
+     * Calculates the RPN expression by compiling it into an optimized Program,
+     * with repeated subexpressions calculated once, and running that
      *
-     * @param answer        Incremental answer value. Will eventually contain the final answer
+     * @param answer        Unused, kept for compatibility
      * @param exp           RPN expression
-     * @param stack         Holding parameter. Takes in a value from the array
-     * @param i             Iterator
+     * @param stack         Unused, kept for compatibility. Operands are held in a double[]
+     * @param i             Iterator, index in exp to start from
      * @return              Returns answer
      */
     public double calculate(double answer, ArrayList<String> exp, Stack<Double> stack, int i) {
-        // TO-DO COMMENT
-        if (i < exp.size()) {
-            if (!exp.get(i).equals("+") // TO-DO COMMENT
-                    && !exp.get(i).equals("-")
-                    && !exp.get(i).equals("*")
-                    && !exp.get(i).equals("/")
-                    && !exp.get(i).equals("^")) {
-                if (!isNumeric(exp.get(i)))
-                    throw new RuntimeException("Extra opening bracket");
-                stack.push(Double.parseDouble(exp.get(i)));
-            } else { // TO-DO COMMENT
-                if (stack.size() == 1)
-                    throw new RuntimeException("Extra operator somewhere");
-                double y = stack.pop();
-                double x = stack.pop();
-                switch (exp.get(i)) { // TO-DO COMMENT
-                    case "+" -> answer = add(x, y);
-                    case "-" -> answer = subtract(x, y);
-                    case "*" -> answer = multiply(x, y);
-                    case "/" -> answer = divide(x, y);
-                    case "^" -> answer = y < 0
-                            ? pow(x, multiply(-1, y), x, true)
-                            : pow(x, y, x, false);
-                    default -> throw new IllegalStateException("Unexpected value: " + exp.get(i));
-                }
-                stack.push(answer);
-            }
-            return calculate(answer, exp, stack, ++i);
-        }
+        CalculatorMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        answer = new CommonSubexpressions().eliminate(optimize(Program.compile(exp, i))).run();
+        if (metrics != null)
+            metrics.stripe().lap(CalculatorMetrics.Phase.RUN, start);
         return answer;
     }
 
+    private Program optimize(Program program) {
+        Optimizer optimizer = new Optimizer(fastMath);
+        program = optimizer.optimize(program);
+        optimizedAway.add(optimizer.removed());
+        return program;
+    }
+
     /**
      * Takes in two parameters and adds them
      *
@@ -220,71 +620,49 @@ public class Calculator implements ICalculator {
     }
 
     /**
-     * Takes in two parameters and performs an exponent calculation
+     * Takes in two parameters and performs an exponent calculation.
+     * Integer exponents are multiplied out by PowerEngine.pow, by repeated squaring
+     * above PowerEngine.SEQUENTIAL_LIMIT, fractional ones by PowerEngine
      *
-     * @param x     First value
-     * @param y     Second Value (iterator)
-     * @return      Returns x ^ y
+     * @param x         First value
+     * @param y         Second Value, the absolute value of the exponent
+     * @param base      Base of the exponent, normally equal to x
+     * @param negCheck  Whether the exponent is negative, giving 1 / x^y
+     * @return          Returns x ^ y
      */
     public double pow(double x, double y, double base, boolean negCheck) {
-        boolean xNegative = false;
+        CalculatorMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
         if (y % 1 == 0) { // Integer exponents
-            if (y > 1) {
-                x = multiply(x, base);
-                return pow(x, --y, base, negCheck);
-            }
+            if (y > 1)
+                x = multiply(x, PowerEngine.pow(base, y - 1));
             if (y == 0) // x^0
                 x = 1;
         } else {
-            // Extracts each element from the fraction[] array
-            long[] fraction = decimalToFraction(y);
-            long whole = fraction[0];
-            long numerator = fraction[1];
-            int denominator = (int) fraction[2];
-
-            // Ensures that calculations use abs values
-            if (x < 0) {
-                x = multiply(x, -1);
-                xNegative = true;
-            }
-
-            /*
-             If the decimal/fraction was 2.625
-             2.625 -> 21/8 -> 2 5/8
-             Therefore the calculation is as follows
-             (x^2) * (x^(5/8))
-            */
-            double root = sqrtA(x, 1.0, denominator, 1);
-            double fractionalExponent = pow(root, numerator, root, false);
-            double exponent = pow(x, whole, x, false);
-
-            x = multiply(exponent, fractionalExponent);
-
-            // Converts the answer back to a negative if began as one
-            if (xNegative)
-                x = multiply(x, -1);
+            // Ensures that calculations use abs values, converting the answer back to a negative if began as one
+            x = x < 0
+                    ? multiply(PowerEngine.fractionalPow(multiply(x, -1), y, PowerEngine.DEFAULT_TOLERANCE), -1)
+                    : PowerEngine.fractionalPow(x, y, PowerEngine.DEFAULT_TOLERANCE);
         }
 
         // To calculate negative exponents take the abs value of the exponent then do 1/x^y
-        return negCheck
-                ? divide(1, x)
-                : x;
+        if (negCheck)
+            x = divide(1, x);
+        if (metrics != null)
+            metrics.stripe().lap(CalculatorMetrics.Phase.POWER, start);
+        return x;
     }
 
     /**
-     * Add the temporary holding value to the array, then clears it
+     * Checks and removes whitespace
      *
-     * @param arr       Array which contains values
-     * @param temp      Holding value
-     * @param expArr    Array which the temp value is added to (and the arr[i] value if temp is empty)
-     * @param i         Iterator
-     * @return          Returns a blank string to clear the temp string
+     * @param exp       User expression
+     * @return          The expression without spaces
      */
-    private String addTempToArray (String[] arr, String temp, ArrayList<String> expArr, int i) {
-        if (!temp.isEmpty())
-            expArr.add(temp);
-        expArr.add(arr[i]);
-        return "";
+    static String stripWhitespace(String exp) {
+        return exp.contains(" ")
+                ? exp.replaceAll(" ","")
+                : exp;
     }
 
     /**
@@ -294,6 +672,15 @@ public class Calculator implements ICalculator {
      * @return          Returns a boolean if str is numeric
      */
     public boolean isNumeric(String str) {
+        // Rejects what cannot start a double, such as an operator, before paying for an exception
+        int i = 0;
+        while (i < str.length() && str.charAt(i) <= ' ')
+            i++;
+        if (i < str.length() && (str.charAt(i) == '+' || str.charAt(i) == '-'))
+            i++;
+        if (i == str.length() || !startsNumber(str.charAt(i)))
+            return false;
+
         try {
             Double.parseDouble(str);
             return true;
@@ -302,6 +689,13 @@ public class Calculator implements ICalculator {
         }
     }
 
+    /**
+     * @return          Returns true if c can begin a double after its sign, e.g. 5, ., NaN or Infinity
+     */
+    private static boolean startsNumber(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'N' || c == 'I';
+    }
+
     /**
      * Defines the precedence of an operator. BODMAS
      *
@@ -326,10 +720,8 @@ public class Calculator implements ICalculator {
      * @param stack         Contain the operators for precedence checking
      */
     private void precedenceCheck(String operator, ArrayList<String> output, Stack<String> stack) {
-        if (!stack.isEmpty() && precedence(stack.peek()) >= precedence(operator)) {
+        while (!stack.isEmpty() && precedence(stack.peek()) >= precedence(operator))
             output.add(stack.pop());
-            precedenceCheck(operator, output, stack);
-        }
     }
 
     /**
@@ -342,35 +734,14 @@ public class Calculator implements ICalculator {
      * @param stack         Contain the operators for precedence checking
      */
     private void bracketCheck(String operator, ArrayList<String> output, Stack<String> stack) {
-        if (!operator.equals("(")) {
+        while (!operator.equals("(")) {
             output.add(operator);
             if (stack.empty())
                 throw new RuntimeException("Extra closing bracket");
             operator = stack.pop();
-            bracketCheck(operator, output, stack);
         }
     }
 
-    /**
-     * Calculates the greatest common factor
-     *
-     * @param x                 First value
-     * @param y                 Second value
-     * @param i                 Iterator & the common factor
-     * @param gCommonFactor     Holds the common factors, will eventually hold the greatest common factor
-     * @return                  The greatest common factor
-     */
-    private long gcf(long x, long y, long i, long gCommonFactor) {
-        if (i > 1000) return gCommonFactor; // Ensure that it doesn't infinitely loop for fractions that do not have a common factor
-        if (i <= x && i <= y) {
-            if (x % i == 0 && y % i == 0)
-                gCommonFactor = i;
-            return gcf(x, y, ++i, gCommonFactor);
-        }
-        return gCommonFactor;
-    }
-
-
     /**
      * Converts a decimal to fraction
      *
@@ -379,105 +750,89 @@ public class Calculator implements ICalculator {
      */
     public long[] decimalToFraction(double decimal) {
         long whole = 0;
-        int numerator;
-        int denominator;
-        int gCommonFactor;
 
         /*
          Converts the decimal to BigDecimal
          Has to initially be converted to string to maintain parity
          Otherwise BigDecimal can convert 2.1 to 2.100000000000000088817841970012523233890533447265625
-         Strip trailing zeros removes any extra zeros, and scale returns the number of decimal places
         */
 
         MathContext m = new MathContext(5);
 
-        long decimalCheck = new BigDecimal(String.valueOf(decimal)).stripTrailingZeros().round(m).scale();
-        long fractionTimes = (long) pow(10, decimalCheck, 10, false);
-
-        numerator = (int) multiply(decimal, fractionTimes);
-        denominator = (int) multiply(1, fractionTimes);
-        gCommonFactor = (int) gcf(numerator, denominator, 1, 0);
-
-        numerator = (int) divide(numerator, gCommonFactor);
-        denominator = (int) divide(denominator, gCommonFactor);
+        // Reduced exactly, rather than by scaling the double and truncating, which turned 0.29 into 28/100
+        Rational fraction = Rational.valueOf(new BigDecimal(String.valueOf(decimal)).round(m));
+        long numerator = fraction.longNumerator();
+        long denominator = fraction.longDenominator();
 
         if (numerator > denominator) {
-            whole = (long) divide(numerator, denominator);
-            numerator = (int) subtract(numerator, multiply(denominator, whole));
+            whole = numerator / denominator;
+            numerator -= denominator * whole;
         }
 
         return new long[]{whole, numerator, denominator};
     }
 
     /**
-     * Finds the root of a number
+     * Finds the root of a number with Newton's method
      *
      * @param radicand      Number whose root is being found
-     * @param root          Holding parameter, stores root values
+     * @param root          Returned unchanged when pow is below 1
      * @param pow           The exponent of the root
-     * @param i             Iterator
+     * @param i             Unused, kept for compatibility
      * @return              Root of the radicand
      */
     public double sqrtA(double radicand, double root, int pow, int i) {
-        if (i <= pow+1) {
-            root = bisection(1, i, pow, 0);
-
-            if (root == radicand)
-                return i;
-
-            return root > radicand
-                    ? sqrtB(radicand, i - 1, i, pow)
-                    : sqrtA(radicand, root, pow, ++i);
-        }
+        if (pow < 1)
+            return root;
+        CalculatorMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        root = PowerEngine.root(radicand, pow, PowerEngine.DEFAULT_TOLERANCE);
+        if (metrics != null)
+            metrics.stripe().lap(CalculatorMetrics.Phase.POWER, start);
         return root;
     }
 
     /**
-     * Finds the root of a number that is a non-perfect square
-     *
-     * @param radicand      Number whose root is being found
-     * @param low           Low estimate
-     * @param high          High estimate
-     * @param pow           The exponent of the root
-     * @return              Closest root to the radicand
+     * Evaluates a slice of a batch, halving it until it is small enough to run directly
      */
-    private double sqrtB(double radicand, double low, double high, int pow) {
-        double root = 1;
-        double mid = (low + high) / 2;
-
-//        BigDecimal bd = BigDecimal.valueOf(pow);
-//        MathContext m = new MathContext(5);
-//        pow = bd.round(m).intValue();
-
-        root = bisection(root, mid, pow, 0);
-
-        if (Math.abs(radicand - root) < 0.00001)
-            return mid;
-
-        if (root == 0)
-            throw new RuntimeException("Root error. Root became 0");
-        if (radicand < 0)
-            throw new RuntimeException("Imaginary number");
+    @SuppressWarnings("serial")
+    private static final class BatchTask extends RecursiveAction {
+        private final Calculator calculator;
+        private final String[] expressions;
+        private final double[] out;
+        private final RuntimeException[] errors;
+        private final int from;
+        private final int to;
+        private final int slice;
+
+        BatchTask(Calculator calculator, String[] expressions, double[] out, RuntimeException[] errors,
+                  int from, int to, int slice) {
+            this.calculator = calculator;
+            this.expressions = expressions;
+            this.out = out;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+        }
 
-        return root < radicand
-                ? sqrtB(radicand, mid, high, pow)
-                : sqrtB(radicand, low, mid, pow);
-    }
+        @Override
+        protected void compute() {
+            if (to - from > slice) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchTask(calculator, expressions, out, errors, from, mid, slice),
+                        new BatchTask(calculator, expressions, out, errors, mid, to, slice));
+                return;
+            }
 
-    /**
-     * Performs the bisection method.
-     * Finds the solution by halving the search area each iteration
-     *
-     * @param root      Holding parameter, stores root values
-     * @param mid       Middle of the low and high values
-     * @param pow       The exponent of the root
-     * @param i         Iterator
-     * @return          Value of the bisection
-     */
-    private double bisection(double root, double mid, double pow, int i) {
-        return i < pow
-                ? bisection(root * mid, mid, pow, ++i)
-                : root;
+            for (int i = from; i < to; i++) {
+                try {
+                    out[i] = calculator.evaluate(expressions[i]);
+                } catch (RuntimeException e) {
+                    out[i] = Double.NaN;
+                    errors[i] = e;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
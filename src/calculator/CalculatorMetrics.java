@@ -0,0 +1,349 @@
+package calculator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency of each phase of a Calculator, tokens processed and errors by
+ * exception type, or by ErrorCode for tryEvaluate, published through JMX as a CalculatorMetricsMBean.
+ *
+ * Each thread records into one of a fixed set of stripes of
+ * LatencyHistograms, picked by a hash of the thread, with about two stripes
+ * per CPU, so threads rarely share one and recording seldom contends. The
+ * set does not grow with the number of threads that ever recorded, so
+ * threads coming and going cost nothing. Stripes are created on first use.
+ * Reading merges the stripes, and may lag a moment behind threads that are
+ * still recording. Phases nest: RUN
+ * includes any POWER within it, as does OPTIMIZE when it folds constants.
+ *
+ * Metrics are off unless Calculator.setMetricsEnabled(true) is called.
+ * A calculator without metrics only checks a null field per evaluation
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMBean {
+    /**
+     * The phases of evaluating an expression
+     */
+    public enum Phase {
+        /** Tokenizing, as normaliseInput did */
+        LEX,
+        /** Ordering the tokens into a program, as rpn did */
+        PARSE,
+        /** Optimizing the program and sharing repeated subexpressions */
+        OPTIMIZE,
+        /** Running a compiled expression, as calculate did */
+        RUN,
+        /** Powers and the root finding behind fractional exponents, as in pow and sqrtA */
+        POWER
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final AtomicInteger ENABLED = new AtomicInteger();
+    private static final AtomicInteger IDS = new AtomicInteger();
+    // A power of two, two to four times the number of CPUs
+    static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+    // The stripe of whichever enabled calculator is compiling or running an expression on this thread
+    private static final ThreadLocal<Stripe> RUNNING = new ThreadLocal<>();
+
+    // Read by Program.power on every power, so powers are only timed while some calculator has metrics
+    static volatile boolean timingPowers;
+
+    private final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private ObjectName name;
+
+    CalculatorMetrics() {
+        timingPowers = ENABLED.incrementAndGet() > 0;
+    }
+
+    /**
+     * Stops timing powers for this calculator and unregisters it from JMX
+     */
+    synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        timingPowers = ENABLED.decrementAndGet() > 0;
+        unregister();
+    }
+
+    /**
+     * @return              The calling thread's stripe
+     */
+    Stripe stripe() {
+        long id = Thread.currentThread().getId();
+        int index = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new Stripe());
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    /**
+     * @return              Number of stripes created so far, at most STRIPES
+     */
+    int stripeCount() {
+        int count = 0;
+        for (int i = 0; i < STRIPES; i++)
+            if (stripes.get(i) != null)
+                count++;
+        return count;
+    }
+
+    /**
+     * Runs an expression, timing it and any powers within it
+     *
+     * @param expression    Expression without variables
+     * @return              Returns answer
+     */
+    double run(Expression expression) {
+        Stripe stripe = stripe();
+        Stripe previous = stripe.enter();
+        long start = System.nanoTime();
+        try {
+            return expression.evaluate();
+        } finally {
+            stripe.lap(Phase.RUN, start);
+            stripe.exit(previous);
+        }
+    }
+
+    /**
+     * Parses and evaluates an expression in one pass, timed as RUN along
+     * with any powers within it
+     *
+     * @param calculator    Calculator using the PRATT engine
+     * @param exp           User expression
+     * @return              Returns answer
+     */
+    double run(Calculator calculator, String exp) {
+        Stripe stripe = stripe();
+        Stripe previous = stripe.enter();
+        long start = System.nanoTime();
+        try {
+            return calculator.evaluateInOnePass(exp);
+        } finally {
+            stripe.lap(Phase.RUN, start);
+            stripe.exit(previous);
+        }
+    }
+
+    /**
+     * Raises x to y like the ^ operator, timed if an enabled calculator is
+     * running an expression on this thread, or folding constants in one
+     */
+    static double power(double x, double y) {
+        Stripe stripe = RUNNING.get();
+        if (stripe == null)
+            return PowerEngine.power(x, y, PowerEngine.DEFAULT_TOLERANCE);
+        long start = System.nanoTime();
+        try {
+            return PowerEngine.power(x, y, PowerEngine.DEFAULT_TOLERANCE);
+        } finally {
+            stripe.lap(Phase.POWER, start);
+        }
+    }
+
+    /**
+     * Counts an error by its exception type
+     *
+     * @param e             Exception thrown to the caller
+     */
+    void error(RuntimeException e) {
+        errors.computeIfAbsent(e.getClass().getName(), type -> new LongAdder()).increment();
+    }
+
+    /**
+     * Counts an error reported by a Result, by its ErrorCode
+     *
+     * @param error         Why there was no answer
+     */
+    void error(ErrorCode error) {
+        errors.computeIfAbsent(error.name(), type -> new LongAdder()).increment();
+    }
+
+    /**
+     * Registers with the platform MBean server, under calculator:type=CalculatorMetrics,id=n
+     *
+     * @return              The name registered
+     */
+    public synchronized ObjectName register() {
+        if (name != null)
+            return name;
+        try {
+            ObjectName name = new ObjectName("calculator:type=CalculatorMetrics,id=" + IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            this.name = name;
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics", e);
+        }
+    }
+
+    /**
+     * Unregisters from the platform MBean server, if registered
+     */
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister metrics", e);
+        }
+        name = null;
+    }
+
+    /**
+     * @param phase         The phase
+     * @return              Latencies of every thread merged into one histogram
+     */
+    LatencyHistogram histogram(Phase phase) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int i = 0; i < STRIPES; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null)
+                merged.add(stripe.phases[phase.ordinal()]);
+        }
+        return merged;
+    }
+
+    /**
+     * @param phase         Name of a Phase
+     * @param percentile    Percentage of latencies at or below the result
+     * @return              The latency in nanoseconds, to within about 3%
+     */
+    @Override
+    public long percentile(String phase, double percentile) {
+        return histogram(Phase.valueOf(phase)).percentile(percentile);
+    }
+
+    @Override
+    public String[] getPhases() {
+        String[] names = new String[PHASES.length];
+        for (Phase phase : PHASES)
+            names[phase.ordinal()] = phase.name();
+        return names;
+    }
+
+    @Override
+    public long count(String phase) {
+        return histogram(Phase.valueOf(phase)).count();
+    }
+
+    @Override
+    public long p50(String phase) {
+        return percentile(phase, 50);
+    }
+
+    @Override
+    public long p99(String phase) {
+        return percentile(phase, 99);
+    }
+
+    @Override
+    public long p999(String phase) {
+        return percentile(phase, 99.9);
+    }
+
+    @Override
+    public long getEvaluations() {
+        return histogram(Phase.RUN).count();
+    }
+
+    @Override
+    public long getTokensProcessed() {
+        long tokens = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null)
+                tokens += stripe.tokens.get();
+        }
+        return tokens;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Forgets everything recorded. Values recorded while resetting may survive it
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe == null)
+                continue;
+            for (LatencyHistogram histogram : stripe.phases)
+                histogram.clear();
+            stripe.tokens.set(0);
+        }
+        errors.clear();
+    }
+
+    /**
+     * The histograms of the threads hashed to one stripe
+     */
+    static final class Stripe {
+        private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+        private final AtomicLong tokens = new AtomicLong();
+
+        private Stripe() {
+            for (int i = 0; i < phases.length; i++)
+                phases[i] = new LatencyHistogram();
+        }
+
+        /**
+         * Records the time since start against a phase
+         *
+         * @param phase         The phase
+         * @param start         System.nanoTime() when it began
+         * @return              System.nanoTime() now, the start of the next phase
+         */
+        long lap(Phase phase, long start) {
+            long now = System.nanoTime();
+            phases[phase.ordinal()].record(now - start);
+            return now;
+        }
+
+        /**
+         * Times powers on this thread against this stripe, until exit
+         *
+         * @return              The stripe powers were timed against before, to pass to exit
+         */
+        Stripe enter() {
+            Stripe previous = RUNNING.get();
+            RUNNING.set(this);
+            return previous;
+        }
+
+        /**
+         * @param previous      The stripe returned by enter
+         */
+        void exit(Stripe previous) {
+            RUNNING.set(previous);
+        }
+
+        /**
+         * @param tokens        Number of tokens lexed
+         */
+        void tokens(int tokens) {
+            this.tokens.addAndGet(tokens);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package calculator;
+
+import java.util.Map;
+
+/**
+ * Management interface of CalculatorMetrics. Latencies are in nanoseconds
+ */
+public interface CalculatorMetricsMBean {
+
+	String[] getPhases();
+
+	long count(String phase);
+
+	long percentile(String phase, double percentile);
+
+	long p50(String phase);
+
+	long p99(String phase);
+
+	long p999(String phase);
+
+	long getEvaluations();
+
+	long getTokensProcessed();
+
+	Map<String, Long> getErrors();
+
+	void reset();
+
+}
@@ -0,0 +1,111 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression once per row over columns stored as files of
+ * little-endian doubles, one file per variable, and writes the answers to
+ * a file in the same format.
+ *
+ * Every file is memory-mapped a window at a time, and rows move between
+ * the mappings and the column interpreter a block at a time, so neither
+ * the columns nor the answers are ever held on the heap, and memory use
+ * does not grow with the size of the files, which may exceed 2 GB.
+ *
+ * An evaluator is not thread-safe
+ */
+public final class ColumnFileEvaluator {
+    /**
+     * Bytes of each file mapped at a time by default
+     */
+    public static final int DEFAULT_WINDOW = 64 << 20;
+
+    private final int windowRows;
+
+    /**
+     * Creates an evaluator mapping DEFAULT_WINDOW bytes of each file at a time
+     */
+    public ColumnFileEvaluator() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates an evaluator
+     *
+     * @param window        Bytes of each file mapped at a time, at least Program.BLOCK_SIZE doubles
+     */
+    public ColumnFileEvaluator(int window) {
+        if (window < Program.BLOCK_SIZE * Double.BYTES)
+            throw new IllegalArgumentException("Window must hold at least " + Program.BLOCK_SIZE + " doubles: " + window);
+        // Whole blocks, so only the last block of a file is short
+        this.windowRows = window / Double.BYTES / Program.BLOCK_SIZE * Program.BLOCK_SIZE;
+    }
+
+    /**
+     * Evaluates an expression for every row of its columns
+     *
+     * @param expression    Compiled expression
+     * @param columns       File of values of each variable by name, all the same length
+     * @param out           File the answers are written to, replacing any contents
+     * @return              Returns the number of rows evaluated
+     * @throws IOException  If a column cannot be read or the answers cannot be written
+     */
+    public long evaluate(Expression expression, Map<String, Path> columns, Path out) throws IOException {
+        List<String> variables = expression.variables();
+        FileChannel[] channels = new FileChannel[variables.size()];
+        try {
+            // Every column is checked before the output is opened, as opening it truncates it
+            long rows = -1;
+            for (int slot = 0; slot < channels.length; slot++) {
+                Path column = columns.get(variables.get(slot));
+                if (column == null)
+                    throw new IllegalArgumentException("No column for variable " + variables.get(slot));
+                channels[slot] = FileChannel.open(column, StandardOpenOption.READ);
+                long size = channels[slot].size();
+                if (size % Double.BYTES != 0)
+                    throw new IllegalArgumentException("Column " + variables.get(slot) + " is not a whole number of doubles");
+                if (rows >= 0 && size / Double.BYTES != rows)
+                    throw new IllegalArgumentException("Column " + variables.get(slot) + " has " + size / Double.BYTES + " rows, expected " + rows);
+                if (Files.exists(out) && Files.isSameFile(column, out))
+                    throw new IllegalArgumentException("Column " + variables.get(slot) + " is also the output");
+                rows = size / Double.BYTES;
+            }
+            if (rows < 0)
+                throw new IllegalArgumentException("An expression without variables has no rows");
+
+            try (FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return evaluate(expression.program(), channels, output, rows);
+            }
+        } finally {
+            for (FileChannel channel : channels)
+                if (channel != null)
+                    channel.close();
+        }
+    }
+
+    private long evaluate(Program program, FileChannel[] channels, FileChannel output, long rows) throws IOException {
+        BlockKernels kernels = BlockKernels.best();
+        DoubleBuffer[] windows = new DoubleBuffer[channels.length];
+        for (long row = 0; row < rows; row += windowRows) {
+            int length = (int) Math.min(windowRows, rows - row);
+            long position = row * Double.BYTES;
+            long bytes = (long) length * Double.BYTES;
+            for (int slot = 0; slot < channels.length; slot++)
+                windows[slot] = channels[slot].map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            DoubleBuffer answers = output.map(FileChannel.MapMode.READ_WRITE, position, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            program.run(windows, answers, length, kernels);
+        }
+        return rows;
+    }
+}
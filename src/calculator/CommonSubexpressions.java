@@ -0,0 +1,228 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds subexpressions that appear more than once in a Program and
+ * rewrites it so that each is calculated once per evaluation.
+ *
+ * The program is first hash-consed into a DAG: every subexpression becomes
+ * a node keyed by its operator, operand and child nodes, so identical
+ * subtrees share one node. The DAG is then written back out in the original
+ * order, except that a shared node is followed by TEE the first time it is
+ * calculated and replaced by LOAD every time after. Constants and variables
+ * are cheaper to push again than to load, so they are never shared, and
+ * x op x keeps using DUPLICATE. As each shared value is first calculated
+ * where it first appeared, any exception is thrown at the same point.
+ *
+ * Both passes are iterative. A program is best optimized before, so that
+ * subexpressions that only differ by folding are recognised as identical.
+ * An instance is not thread-safe, but can be reused for any number of programs
+ */
+public final class CommonSubexpressions {
+    private static final int NONE = -1;
+
+    // Nodes of the DAG
+    private int[] ops = new int[16];
+    private long[] operands = new long[16];
+    private int[] lefts = new int[16];
+    private int[] rights = new int[16];
+    private int[] references = new int[16];
+    private int[] temporaries = new int[16];
+    private int nodes;
+
+    // Open addressing table of node ids, keyed by op, operand and children
+    private int[] table = new int[32];
+
+    private int[] stack = new int[16];
+    private double ratio = 1;
+    // First constant written with each text, when the program keeps literals
+    private final Map<String, Integer> literals = new HashMap<>();
+
+    /**
+     * Rewrites a program so that repeated subexpressions are calculated once
+     *
+     * @param program       Program to rewrite, without TEE or LOAD instructions
+     * @return              An equivalent program, or the same program if nothing is repeated
+     */
+    public Program eliminate(Program program) {
+        if (program.size() == 0) {
+            ratio = 1;
+            return program;
+        }
+        int root = build(program);
+        ratio = (double) program.size() / nodes;
+
+        for (int node = 0; node < nodes; node++) {
+            if (references[node] > 1 && !isLeaf(node))
+                return emit(program, root);
+            if (lefts[node] != NONE && lefts[node] == rights[node] && !isLeaf(lefts[node]))
+                return emit(program, root);
+        }
+        return program;
+    }
+
+    /**
+     * @return              Subexpressions in the last program divided by distinct subexpressions, at least 1
+     */
+    public double ratio() {
+        return ratio;
+    }
+
+    /**
+     * Hash-conses the program into nodes
+     *
+     * @return              The root node
+     */
+    private int build(Program program) {
+        nodes = 0;
+        int capacity = Integer.highestOneBit(Math.max(16, program.size()) * 2) * 2;
+        if (table.length < capacity)
+            table = new int[capacity];
+        Arrays.fill(table, NONE);
+        literals.clear();
+
+        int top = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            if (top + 1 >= stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            switch (opcode) {
+                case Program.CONST -> stack[top++] = node(opcode, constantKey(program, program.operand(i)), NONE, NONE);
+                case Program.VARIABLE -> stack[top++] = node(opcode, program.operand(i), NONE, NONE);
+                case Program.DUPLICATE -> {
+                    stack[top] = stack[top - 1];
+                    top++;
+                }
+                case Program.NEGATE -> stack[top - 1] = node(opcode, 0, stack[top - 1], NONE);
+                case Program.TEE, Program.LOAD ->
+                        throw new IllegalArgumentException("Common subexpressions have already been eliminated");
+                default -> {
+                    top--;
+                    stack[top - 1] = node(opcode, 0, stack[top - 1], stack[top]);
+                }
+            }
+        }
+
+        // Count parents in the DAG, rather than occurrences in the tree
+        Arrays.fill(references, 0, nodes, 0);
+        for (int node = 0; node < nodes; node++) {
+            if (lefts[node] != NONE)
+                references[lefts[node]]++;
+            if (rights[node] != NONE && rights[node] != lefts[node])
+                references[rights[node]]++;
+        }
+        return stack[0];
+    }
+
+    /**
+     * @return              The bits of a constant's value, or in a program keeping
+     *                      literals the index of the first constant written with its text
+     */
+    private long constantKey(Program program, int constant) {
+        if (program.literals == null)
+            return Double.doubleToRawLongBits(program.constant(constant));
+        String literal = program.literals[constant];
+        return literal == null
+                ? constant
+                : literals.computeIfAbsent(literal, text -> constant);
+    }
+
+    /**
+     * Finds the node for a subexpression, adding it if it is new
+     */
+    private int node(int op, long operand, int left, int right) {
+        int mask = table.length - 1;
+        int slot = hash(op, operand, left, right) & mask;
+        for (int node = table[slot]; node != NONE; node = table[slot = (slot + 1) & mask]) {
+            if (ops[node] == op && operands[node] == operand && lefts[node] == left && rights[node] == right)
+                return node;
+        }
+
+        if (nodes == ops.length) {
+            int length = nodes * 2;
+            ops = Arrays.copyOf(ops, length);
+            operands = Arrays.copyOf(operands, length);
+            lefts = Arrays.copyOf(lefts, length);
+            rights = Arrays.copyOf(rights, length);
+            references = Arrays.copyOf(references, length);
+            temporaries = Arrays.copyOf(temporaries, length);
+        }
+        int node = nodes++;
+        ops[node] = op;
+        operands[node] = operand;
+        lefts[node] = left;
+        rights[node] = right;
+        temporaries[node] = NONE;
+        table[slot] = node;
+        return node;
+    }
+
+    private static int hash(int op, long operand, int left, int right) {
+        long h = op * 0x9E3779B97F4A7C15L + operand;
+        h = h * 0x9E3779B97F4A7C15L + left;
+        h = h * 0x9E3779B97F4A7C15L + right;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private boolean isLeaf(int node) {
+        return ops[node] == Program.CONST || ops[node] == Program.VARIABLE;
+    }
+
+    /**
+     * Writes the DAG back out in post-order, calculating each shared node once
+     */
+    private Program emit(Program program, int root) {
+        Program.Builder builder = new Program.Builder(program.size(), program.variables);
+        int temporaryCount = 0;
+
+        // Each entry is a node, shifted left, with the low bit set once its children are written
+        int top = 0;
+        stack[top++] = root << 1;
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry >>> 1;
+            if (temporaries[node] != NONE) {
+                builder.load(temporaries[node]);
+                continue;
+            }
+
+            int left = lefts[node];
+            int right = rights[node];
+            if ((entry & 1) == 0 && left != NONE) {
+                if (top + 3 >= stack.length)
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = entry | 1;
+                if (right != NONE && right != left)
+                    stack[top++] = right << 1;
+                stack[top++] = left << 1;
+                continue;
+            }
+
+            switch (ops[node]) {
+                case Program.CONST -> {
+                    if (program.literals == null) {
+                        builder.constant(Double.longBitsToDouble(operands[node]));
+                    } else {
+                        int constant = (int) operands[node];
+                        builder.constant(program.constant(constant), program.literals[constant]);
+                    }
+                }
+                case Program.VARIABLE -> builder.variable(program.variables[(int) operands[node]]);
+                case Program.NEGATE -> builder.negate();
+                default -> {
+                    if (right == left)
+                        builder.duplicate();
+                    builder.operator(ops[node]);
+                }
+            }
+            if (references[node] > 1 && !isLeaf(node)) {
+                temporaries[node] = temporaryCount++;
+                builder.tee(temporaries[node]);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,12 @@
+package calculator;
+
+/**
+ * A Program translated into JVM bytecode by BytecodeCompiler
+ */
+interface CompiledProgram {
+    /**
+     * @param vars          Value of each variable, indexed by slot
+     * @return              Returns answer
+     */
+    double eval(double[] vars);
+}
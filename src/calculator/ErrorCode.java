@@ -0,0 +1,36 @@
+package calculator;
+
+/**
+ * Why an expression could not be evaluated, as reported by a Result
+ */
+public enum ErrorCode {
+    /** A character that is not a number, variable, operator or bracket */
+    UNEXPECTED_CHARACTER("unexpected character"),
+    /** A number with two decimal points, or none of its digits */
+    MALFORMED_NUMBER("malformed number"),
+    /** An opening bracket that is never closed */
+    EXTRA_OPENING_BRACKET("extra opening bracket"),
+    /** A closing bracket without an opening bracket */
+    EXTRA_CLOSING_BRACKET("extra closing bracket"),
+    /** An operator missing one of its operands */
+    EXTRA_OPERATOR("extra operator"),
+    /** An operand without an operator joining it to the rest */
+    EXTRA_OPERAND("extra operand"),
+    /** A variable in an expression evaluated without values */
+    NO_VALUE_FOR_VARIABLE("no value for variable"),
+    /** Dividing by zero, or raising zero to a negative power */
+    DIVISION_BY_ZERO("division by 0");
+
+    private final String description;
+
+    ErrorCode(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return              What went wrong, e.g. "extra closing bracket"
+     */
+    public String description() {
+        return description;
+    }
+}
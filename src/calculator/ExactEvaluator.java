@@ -0,0 +1,119 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Evaluates a Program in exact rational arithmetic, reading each number as
+ * written, e.g. 0.1 is 1/10 and 9007199254740993 is not rounded to a double.
+ * Constants without a literal are read as the shortest decimal that gives
+ * their double.
+ *
+ * Powers follow the ^ operator: negative exponents give 1 / x^|y| and a
+ * negative base with a fractional exponent gives -(|x|^y). A fractional
+ * power is answered only when it is rational, e.g. 8^(1/3) is 2, as the
+ * exponent is an exact fraction here. Otherwise there is no exact answer
+ * and an ArithmeticException is thrown
+ */
+final class ExactEvaluator {
+    private final Program program;
+    private final Rational[] constants;
+
+    /**
+     * @param program       Program to evaluate, without constant folding, which would round in double.
+     *                      Its literals are read as written, if it keeps them
+     */
+    ExactEvaluator(Program program) {
+        this.program = program;
+        constants = new Rational[program.constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            String literal = program.literals == null ? null : program.literals[i];
+            constants[i] = literal == null
+                    ? Rational.valueOf(program.constants[i])
+                    : Rational.valueOf(new BigDecimal(literal));
+        }
+    }
+
+    /**
+     * @param values        Value of each variable, indexed by slot
+     * @return              Returns answer
+     */
+    Rational evaluate(Rational[] values) {
+        if (values.length < program.variables.length)
+            throw new IllegalArgumentException("No value for variable " + program.variables[values.length]);
+
+        Rational[] stack = new Rational[program.maxStack + program.temporaries];
+        int temps = program.maxStack;
+        int sp = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int operand = program.operand(i);
+            switch (program.opcode(i)) {
+                case Program.CONST -> stack[sp++] = constants[operand];
+                case Program.VARIABLE -> stack[sp++] = values[operand];
+                case Program.ADD -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].add(stack[sp]);
+                }
+                case Program.SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].subtract(stack[sp]);
+                }
+                case Program.MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].multiply(stack[sp]);
+                }
+                case Program.DIVIDE -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].divide(stack[sp]);
+                }
+                case Program.POWER -> {
+                    sp--;
+                    stack[sp - 1] = power(stack[sp - 1], stack[sp]);
+                }
+                case Program.NEGATE -> stack[sp - 1] = stack[sp - 1].negate();
+                case Program.DUPLICATE -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case Program.TEE -> stack[temps + operand] = stack[sp - 1];
+                case Program.LOAD -> stack[sp++] = stack[temps + operand];
+                default -> throw new IllegalStateException("Unexpected value: " + program.opcode(i));
+            }
+        }
+        return sp == 0
+                ? Rational.ZERO
+                : stack[0];
+    }
+
+    /**
+     * Raises x to y like the ^ operator
+     */
+    static Rational power(Rational x, Rational y) {
+        if (y.signum() < 0) {
+            if (x.signum() == 0)
+                throw new ArithmeticException("Division by 0");
+            return power(x, y.negate()).reciprocal();
+        }
+        if (y.isInteger())
+            return x.pow(toInt(y.numerator(), y));
+        if (x.signum() < 0)
+            return power(x.negate(), y).negate();
+
+        // x^(p/q) is rational only when x is a perfect q-th power
+        Rational root = x.root(toInt(y.denominator(), y));
+        if (root == null)
+            throw new ArithmeticException(x + "^" + y + " has no exact answer");
+        return root.pow(toInt(y.numerator(), y));
+    }
+
+    /**
+     * @param part          Non-negative part of the exponent
+     * @param exponent      The whole exponent, for the message
+     * @return              The part as an int
+     */
+    private static int toInt(BigInteger part, Rational exponent) {
+        if (part.bitLength() >= Integer.SIZE)
+            throw new ArithmeticException("Exponent " + exponent + " is too large for an exact answer");
+        return part.intValue();
+    }
+}
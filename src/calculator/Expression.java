@@ -0,0 +1,256 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled expression. Holds the expression already converted into
+ * a Program so it can be evaluated repeatedly without being normalised
+ * and parsed again. Frequently used expressions can additionally be
+ * compiled to JVM bytecode, either on request or, under a Tiering policy,
+ * once they have been evaluated often enough. Instances are safe to share
+ */
+public final class Expression {
+    /**
+     * How an expression is being evaluated
+     */
+    public enum Tier {
+        /** Run by the Program interpreter */
+        INTERPRETED,
+        /** Interpreted while waiting for the background compiler */
+        QUEUED,
+        /** Run as bytecode */
+        COMPILED,
+        /** Too long to benefit from bytecode, so interpreted for good */
+        NOT_COMPILABLE
+    }
+
+    private static final double[] NO_VALUES = {};
+
+    private final String expression;
+    private final Program program;
+    private final Tiering tiering;
+    private final double deduplicationRatio;
+    private volatile CompiledProgram compiled;
+    private volatile Tier tier = Tier.INTERPRETED;
+    private volatile Program unfolded;
+    private volatile PrecisionEvaluator precise;
+    private volatile ExactEvaluator exact;
+
+    // Interpreted evaluations. Not atomic, as a few lost counts only delay promotion
+    private int invocations;
+
+    /**
+     * @param expression    Normalised expression text
+     * @param program       Compiled form of the expression
+     * @param tiering       Policy promoting the expression to bytecode, or null to stay interpreted
+     * @param deduplicationRatio    Subexpressions divided by distinct subexpressions
+     */
+    Expression(String expression, Program program, Tiering tiering, double deduplicationRatio) {
+        this.expression = expression;
+        this.program = program;
+        this.tiering = tiering;
+        this.deduplicationRatio = deduplicationRatio;
+    }
+
+    /**
+     * Evaluates the compiled expression
+     *
+     * @return              Returns answer
+     */
+    public double evaluate() {
+        return evaluate(NO_VALUES);
+    }
+
+    /**
+     * Evaluates the compiled expression with values for its variables
+     *
+     * @param values        Value of each variable, in the order given by variables()
+     * @return              Returns answer
+     */
+    public double evaluate(double... values) {
+        CompiledProgram compiled = this.compiled;
+        // Missing values are left to the interpreter, which reports them by name
+        if (compiled != null && values.length >= program.variables.length)
+            return compiled.eval(values);
+
+        if (tiering != null && tier == Tier.INTERPRETED && ++invocations >= tiering.threshold())
+            tiering.promote(this);
+        return program.run(values);
+    }
+
+    /**
+     * Evaluates the compiled expression once per row of a set of columns,
+     * e.g. price*(1+rate)^years over columns price, rate and years.
+     * The program runs once per block of rows rather than once per row
+     *
+     * @param columns       Values of each variable by name, each at least out.length long
+     * @param out           Destination of the answers, one per row
+     */
+    public void evaluate(Map<String, double[]> columns, double[] out) {
+        List<String> variables = program.variables();
+        double[][] slots = new double[variables.size()][];
+        for (int slot = 0; slot < slots.length; slot++) {
+            slots[slot] = columns.get(variables.get(slot));
+            if (slots[slot] == null)
+                throw new IllegalArgumentException("No column for variable " + variables.get(slot));
+        }
+        program.run(slots, out, out.length);
+    }
+
+    /**
+     * Evaluates the expression in decimal at the given precision, reading
+     * constants as written, so 0.1+0.2 is exactly 0.3. The answer is found
+     * in double where its error bound allows, and in BigDecimal otherwise
+     *
+     * @param context       Precision and rounding of the answer
+     * @param values        Value of each variable, in the order given by variables()
+     * @return              Returns answer, without trailing zeros
+     */
+    public BigDecimal evaluate(MathContext context, BigDecimal... values) {
+        PrecisionEvaluator precise = precise();
+        BigDecimal answer = precise.estimate(values, context);
+        return answer != null
+                ? answer
+                : precise.evaluate(values, context);
+    }
+
+    /**
+     * Evaluates the expression exactly, as a fraction, reading constants as
+     * written. No step goes through floating point
+     *
+     * @param values        Value of each variable, in the order given by variables()
+     * @return              Returns answer
+     */
+    public Rational evaluate(Rational... values) {
+        ExactEvaluator exact = this.exact;
+        if (exact == null) {
+            exact = new ExactEvaluator(unfolded());
+            this.exact = exact;
+        }
+        return exact.evaluate(values);
+    }
+
+    /**
+     * @return              The evaluator for decimal answers
+     */
+    PrecisionEvaluator precise() {
+        PrecisionEvaluator precise = this.precise;
+        if (precise == null) {
+            precise = new PrecisionEvaluator(unfolded());
+            this.precise = precise;
+        }
+        return precise;
+    }
+
+    /**
+     * The optimized program folds constants in double, so decimal and exact
+     * evaluation parse the expression again the first time either is needed,
+     * keeping the text of each number so it can be read as written
+     *
+     * @return              The program without constant folding, with literals
+     */
+    private Program unfolded() {
+        Program unfolded = this.unfolded;
+        if (unfolded == null) {
+            Scratch scratch = Scratch.acquire();
+            try {
+                unfolded = scratch.parser.parseLiterals(scratch.lexer.tokenize(expression));
+            } finally {
+                scratch.release();
+            }
+            unfolded = new CommonSubexpressions().eliminate(unfolded);
+            this.unfolded = unfolded;
+        }
+        return unfolded;
+    }
+
+    /**
+     * Compiles the expression to a hidden class, which evaluate uses from
+     * then on. Answers are identical to the interpreter's. The class is
+     * unloaded along with the expression
+     *
+     * @return              Returns true if the expression is compiled, false if it is too long to benefit
+     */
+    public synchronized boolean compileBytecode() {
+        if (tier != Tier.COMPILED && tier != Tier.NOT_COMPILABLE) {
+            compiled = BytecodeCompiler.compile(program);
+            tier = compiled == null
+                    ? Tier.NOT_COMPILABLE
+                    : Tier.COMPILED;
+        }
+        return compiled != null;
+    }
+
+    /**
+     * Marks the expression as interpreted for good, after the compiler failed on it
+     */
+    synchronized void reject() {
+        if (tier != Tier.COMPILED)
+            tier = Tier.NOT_COMPILABLE;
+    }
+
+    /**
+     * Marks the expression as waiting for the background compiler
+     *
+     * @return              Returns true if it was interpreted, false if it is already queued or compiled
+     */
+    synchronized boolean queue() {
+        if (tier != Tier.INTERPRETED)
+            return false;
+        tier = Tier.QUEUED;
+        return true;
+    }
+
+    /**
+     * @return              Returns true if evaluate runs compiled bytecode
+     */
+    public boolean isBytecodeCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * @return              How the expression is currently evaluated
+     */
+    public Tier tier() {
+        return tier;
+    }
+
+    /**
+     * @return              Number of evaluations run by the interpreter, approximate under concurrent use
+     */
+    public int invocations() {
+        return invocations;
+    }
+
+    /**
+     * @return              Variable names, in the order their values are passed to evaluate
+     */
+    public List<String> variables() {
+        return program.variables();
+    }
+
+    /**
+     * @return              Subexpressions in the expression divided by distinct ones, 1 if nothing repeats
+     */
+    public double deduplicationRatio() {
+        return deduplicationRatio;
+    }
+
+    /**
+     * @return              The compiled program
+     */
+    public Program program() {
+        return program;
+    }
+
+    /**
+     * @return              The normalised expression text
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,145 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache of compiled expressions keyed by their normalised
+ * text. Safe for concurrent use.
+ *
+ * Lookups never lock: they read a ConcurrentHashMap and mark the entry as
+ * used. Adding an expression locks to queue it and, once the cache is
+ * full, to evict one. Eviction gives each used entry a second chance, in
+ * the order entries were added, which keeps recently used expressions like
+ * a least recently used cache without reordering anything on a hit
+ */
+public class ExpressionCache {
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> entries;
+    // Keys in the order the eviction hand visits them, guarded by itself
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache holding at most capacity expressions
+     *
+     * @param capacity      Maximum number of cached expressions
+     */
+    public ExpressionCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+    }
+
+    /**
+     * Looks up a compiled expression, counting the hit or miss
+     *
+     * @param key           Normalised expression text
+     * @return              The cached expression, or null if it is not cached
+     */
+    public Expression get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Only written when it changes, so hot entries are not written on every hit
+        if (!entry.used)
+            entry.used = true;
+        return entry.expression;
+    }
+
+    /**
+     * Adds a compiled expression, evicting one that has not been used
+     * recently if the cache is full. If another thread has just added the
+     * same expression, that one is kept
+     *
+     * @param key           Normalised expression text
+     * @param expression    Compiled expression
+     */
+    public void put(String key, Expression expression) {
+        if (entries.putIfAbsent(key, new Entry(expression)) != null)
+            return;
+        synchronized (queue) {
+            queue.add(key);
+            // Each entry in the queue gets at most one second chance per eviction
+            for (int chances = queue.size(); entries.size() > capacity && !queue.isEmpty(); ) {
+                String eldest = queue.poll();
+                Entry entry = entries.get(eldest);
+                if (entry != null && entry.used && chances-- > 0) {
+                    entry.used = false;
+                    queue.add(eldest);
+                } else {
+                    entries.remove(eldest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every cached expression. Hit and miss counts are kept
+     */
+    public void clear() {
+        synchronized (queue) {
+            entries.clear();
+            queue.clear();
+        }
+    }
+
+    /**
+     * @return              A snapshot of the cached expressions, in no particular order
+     */
+    List<Expression> expressions() {
+        List<Expression> expressions = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values())
+            expressions.add(entry.expression);
+        return expressions;
+    }
+
+    /**
+     * @return              Number of expressions currently cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return              Maximum number of expressions the cache holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return              Number of lookups that found a compiled expression
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return              Number of lookups that had to compile the expression
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached expression and whether it has been used since the eviction hand last passed it
+     */
+    private static final class Entry {
+        final Expression expression;
+        // Racy by design: a lost write only costs an entry its second chance
+        volatile boolean used;
+
+        Entry(Expression expression) {
+            this.expression = expression;
+        }
+    }
+}
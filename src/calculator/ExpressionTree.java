@@ -0,0 +1,371 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An expression as a tree over its RPN program, for evaluating a single
+ * huge expression across threads.
+ *
+ * The program is the parser's, without constant folding, so every node is
+ * an operator or operand as written and associates left to right as
+ * rpn always has. A node's subtree is the run of instructions ending at
+ * it, so the tree is just the size of each subtree: a binary node's right
+ * operand is the instruction before it, and its left operand the one
+ * before that subtree.
+ *
+ * A subtree of at most threshold nodes is run on a stack like any program.
+ * A larger one is split along its heavy path, the chain of nodes that
+ * each continue into their larger operand, as a long chain of + and -
+ * does. The operands hanging off that path are independent of it and of
+ * each other, so they are evaluated in parallel, in groups of about
+ * threshold nodes, and each one larger than threshold is split again.
+ * The path is then folded in order from the bottom. Each node applies the
+ * same operator to the same values as a serial run, so the answer is
+ * identical, and any error is the one a serial run would throw first
+ */
+public final class ExpressionTree {
+    /**
+     * Nodes below which a subtree is evaluated on one thread by default
+     */
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private final Program program;
+    private final int[] sizes;
+    private final int threshold;
+
+    /**
+     * @param program       Program without DUPLICATE, TEE or LOAD, such as the parser's
+     * @param threshold     Nodes below which a subtree is evaluated on one thread
+     */
+    ExpressionTree(Program program, int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        this.program = program;
+        this.threshold = threshold;
+        sizes = new int[program.size()];
+        int roots = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            switch (program.opcode(i)) {
+                case Program.CONST, Program.VARIABLE -> {
+                    sizes[i] = 1;
+                    roots++;
+                }
+                case Program.NEGATE -> {
+                    if (roots < 1)
+                        throw new IllegalArgumentException("Program is not a tree");
+                    sizes[i] = 1 + sizes[i - 1];
+                }
+                case Program.ADD, Program.SUBTRACT, Program.MULTIPLY, Program.DIVIDE, Program.POWER -> {
+                    if (roots < 2)
+                        throw new IllegalArgumentException("Program is not a tree");
+                    int right = i - 1;
+                    sizes[i] = 1 + sizes[right] + sizes[right - sizes[right]];
+                    roots--;
+                }
+                default -> throw new IllegalArgumentException("Program shares subexpressions, so is not a tree");
+            }
+        }
+        if (roots != 1)
+            throw new IllegalArgumentException("Program is not a tree");
+    }
+
+    /**
+     * Evaluates the expression on the common pool
+     *
+     * @param values        Value of each variable, indexed by slot
+     * @return              Returns answer
+     */
+    public double evaluate(double... values) {
+        return evaluate(ForkJoinPool.commonPool(), values);
+    }
+
+    /**
+     * Evaluates the expression, splitting subtrees larger than the threshold across a pool
+     *
+     * @param pool          Pool to evaluate subtrees on
+     * @param values        Value of each variable, indexed by slot
+     * @return              Returns answer
+     */
+    public double evaluate(ForkJoinPool pool, double... values) {
+        if (values.length < program.variables.length)
+            throw new IllegalArgumentException("No value for variable " + program.variables[values.length]);
+
+        Evaluation evaluation = new Evaluation(values);
+        int root = sizes.length - 1;
+        double[] answer = new double[1];
+        if (sizes[root] <= threshold)
+            answer[0] = evaluation.run(root, new double[program.maxStack]);
+        else
+            pool.invoke(new SubtreeTask(evaluation, root, answer, 0));
+        if (evaluation.error != null)
+            throw evaluation.error;
+        return answer[0];
+    }
+
+    /**
+     * @return              Number of nodes
+     */
+    public int size() {
+        return sizes.length;
+    }
+
+    /**
+     * @return              Variable names, indexed by slot
+     */
+    public List<String> variables() {
+        return program.variables();
+    }
+
+    /**
+     * @param node          Index of a binary node
+     * @return              Index of its left operand
+     */
+    private int left(int node) {
+        return node - 1 - sizes[node - 1];
+    }
+
+    /**
+     * The variables of one evaluation and the first error it hit
+     */
+    private final class Evaluation {
+        private final double[] values;
+        private RuntimeException error;
+        // Node that threw the error, so the earliest in program order is kept, as a serial run would throw
+        private int errorNode = Integer.MAX_VALUE;
+
+        Evaluation(double[] values) {
+            this.values = values;
+        }
+
+        /**
+         * Runs a subtree on a stack, as Program runs a whole program
+         *
+         * @param node          Root of the subtree
+         * @param stack         Stack at least maxStack long
+         * @return              Value of the subtree, or NaN if it failed
+         */
+        double run(int node, double[] stack) {
+            double[] constants = program.constants;
+            int sp = 0;
+            int i = node - sizes[node] + 1;
+            try {
+                for (; i <= node; i++) {
+                    switch (program.opcode(i)) {
+                        case Program.CONST -> stack[sp++] = constants[program.operand(i)];
+                        case Program.VARIABLE -> stack[sp++] = values[program.operand(i)];
+                        case Program.ADD -> {
+                            sp--;
+                            stack[sp - 1] = stack[sp - 1] + stack[sp];
+                        }
+                        case Program.SUBTRACT -> {
+                            sp--;
+                            stack[sp - 1] = stack[sp - 1] - stack[sp];
+                        }
+                        case Program.MULTIPLY -> {
+                            sp--;
+                            stack[sp - 1] = stack[sp - 1] * stack[sp];
+                        }
+                        case Program.DIVIDE -> {
+                            sp--;
+                            stack[sp - 1] = Program.divide(stack[sp - 1], stack[sp]);
+                        }
+                        case Program.POWER -> {
+                            sp--;
+                            stack[sp - 1] = Program.power(stack[sp - 1], stack[sp]);
+                        }
+                        case Program.NEGATE -> stack[sp - 1] = -stack[sp - 1];
+                        default -> throw new IllegalStateException("Unexpected value: " + program.opcode(i));
+                    }
+                }
+            } catch (RuntimeException e) {
+                fail(e, i);
+                return Double.NaN;
+            }
+            return stack[0];
+        }
+
+        /**
+         * Evaluates a subtree larger than the threshold, splitting it along its heavy path
+         *
+         * @param node          Root of the subtree
+         * @return              Value of the subtree, or NaN if it failed
+         */
+        double split(int node) {
+            // Follow the larger operand down until the rest is small, noting the operand off the path at each node
+            int[] path = new int[16];
+            int[] lights = new int[16];
+            int length = 0;
+            int bottom = node;
+            while (sizes[bottom] > threshold && program.opcode(bottom) != Program.CONST
+                    && program.opcode(bottom) != Program.VARIABLE) {
+                if (length == path.length) {
+                    path = Arrays.copyOf(path, length * 2);
+                    lights = Arrays.copyOf(lights, length * 2);
+                }
+                path[length] = bottom;
+                if (program.opcode(bottom) == Program.NEGATE) {
+                    lights[length] = -1;
+                    bottom--;
+                } else {
+                    int right = bottom - 1;
+                    int left = left(bottom);
+                    boolean heavyLeft = sizes[left] >= sizes[right];
+                    lights[length] = heavyLeft ? right : left;
+                    bottom = heavyLeft ? left : right;
+                }
+                length++;
+            }
+
+            // The operands off the path, evaluated in parallel with the bottom of the path
+            double[] others = new double[length];
+            double[] bottomValue = new double[1];
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            tasks.add(new SubtreeTask(this, bottom, bottomValue, 0));
+            int from = 0;
+            int nodes = 0;
+            for (int k = 0; k < length; k++) {
+                int light = lights[k];
+                if (light < 0)
+                    continue;
+                if (sizes[light] > threshold) {
+                    tasks.add(new SubtreeTask(this, light, others, k));
+                } else {
+                    nodes += sizes[light];
+                    if (nodes >= threshold) {
+                        tasks.add(new GroupTask(this, lights, others, from, k + 1));
+                        from = k + 1;
+                        nodes = 0;
+                    }
+                }
+            }
+            if (from < length)
+                tasks.add(new GroupTask(this, lights, others, from, length));
+            ForkJoinTask.invokeAll(tasks);
+            if (failedAtOrBefore(node))
+                return Double.NaN;
+
+            // Fold the path from the bottom, applying each operator in its original order
+            double value = bottomValue[0];
+            for (int k = length - 1; k >= 0; k--) {
+                int at = path[k];
+                int opcode = program.opcode(at);
+                if (opcode == Program.NEGATE) {
+                    value = -value;
+                    continue;
+                }
+                try {
+                    value = lights[k] == at - 1
+                            ? apply(opcode, value, others[k])
+                            : apply(opcode, others[k], value);
+                } catch (RuntimeException e) {
+                    fail(e, at);
+                    return Double.NaN;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Evaluates a small subtree, reading a lone constant or variable without running it
+         *
+         * @param node          Root of the subtree
+         * @param stack         Stack at least maxStack long
+         * @return              Value of the subtree, or NaN if it failed
+         */
+        double small(int node, double[] stack) {
+            return switch (program.opcode(node)) {
+                case Program.CONST -> program.constants[program.operand(node)];
+                case Program.VARIABLE -> values[program.operand(node)];
+                default -> run(node, stack);
+            };
+        }
+
+        /**
+         * @return              Whether a node at or before this one failed. Errors after it cannot affect it
+         */
+        synchronized boolean failedAtOrBefore(int node) {
+            return errorNode <= node;
+        }
+
+        /**
+         * Keeps the error of the earliest node, as a serial run would throw it first
+         */
+        synchronized void fail(RuntimeException e, int node) {
+            if (node < errorNode) {
+                error = e;
+                errorNode = node;
+            }
+        }
+    }
+
+    private static double apply(int opcode, double x, double y) {
+        return switch (opcode) {
+            case Program.ADD -> x + y;
+            case Program.SUBTRACT -> x - y;
+            case Program.MULTIPLY -> x * y;
+            case Program.DIVIDE -> Program.divide(x, y);
+            case Program.POWER -> Program.power(x, y);
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        };
+    }
+
+    /**
+     * Evaluates one subtree into a slot, splitting it if it is larger than the threshold
+     */
+    @SuppressWarnings("serial")
+    private final class SubtreeTask extends RecursiveAction {
+        private final Evaluation evaluation;
+        private final int node;
+        private final double[] out;
+        private final int slot;
+
+        SubtreeTask(Evaluation evaluation, int node, double[] out, int slot) {
+            this.evaluation = evaluation;
+            this.node = node;
+            this.out = out;
+            this.slot = slot;
+        }
+
+        @Override
+        protected void compute() {
+            out[slot] = sizes[node] > threshold
+                    ? evaluation.split(node)
+                    : evaluation.run(node, new double[program.maxStack]);
+        }
+    }
+
+    /**
+     * Evaluates the small operands off a run of the path, one after another
+     */
+    @SuppressWarnings("serial")
+    private final class GroupTask extends RecursiveAction {
+        private final Evaluation evaluation;
+        private final int[] lights;
+        private final double[] others;
+        private final int from;
+        private final int to;
+
+        GroupTask(Evaluation evaluation, int[] lights, double[] others, int from, int to) {
+            this.evaluation = evaluation;
+            this.lights = lights;
+            this.others = others;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            double[] stack = new double[program.maxStack];
+            for (int k = from; k < to; k++) {
+                int light = lights[k];
+                if (light >= 0 && sizes[light] <= threshold)
+                    others[k] = evaluation.small(light, stack);
+            }
+        }
+    }
+}
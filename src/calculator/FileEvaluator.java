@@ -0,0 +1,189 @@
+package calculator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Evaluates a file of newline delimited expressions, one answer per line.
+ *
+ * The file is memory-mapped a window at a time and each line is lexed
+ * straight from the mapped ASCII bytes, so no String is decoded per line
+ * and memory use does not grow with the size of the file. Answers go to a
+ * channel through a fixed size buffer, either as text or as big-endian
+ * binary doubles. A line that fails is reported with its line number and
+ * its answer is NaN, so answers stay aligned with the input lines.
+ *
+ * An evaluator is not thread-safe
+ */
+public final class FileEvaluator {
+    /**
+     * Bytes of the file mapped at a time by default. A line may not be longer than a window
+     */
+    public static final int DEFAULT_WINDOW = 64 << 20;
+
+    private static final int OUTPUT_BUFFER = 64 << 10;
+
+    private final Lexer lexer = new Lexer();
+    private final Parser parser = new Parser();
+    private final AsciiLine line = new AsciiLine();
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER);
+    private final boolean binary;
+    private final int window;
+
+    /**
+     * Creates an evaluator
+     *
+     * @param binary        Write answers as 8 byte doubles rather than one line of text each
+     * @param window        Bytes of the file mapped at a time
+     */
+    public FileEvaluator(boolean binary, int window) {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        this.binary = binary;
+        this.window = window;
+    }
+
+    /**
+     * Evaluates every line of a file
+     *
+     * @param input         File of newline delimited expressions, in ASCII
+     * @param out           Destination for the answers
+     * @param errors        Destination for failed lines, each prefixed by its line number
+     * @return              Returns the number of lines, failures and time taken
+     * @throws IOException  If the file cannot be read or the answers cannot be written
+     */
+    public Summary evaluate(Path input, WritableByteChannel out, PrintStream errors) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
+        long failed = 0;
+        output.clear();
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(window, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+
+                // Only whole lines are evaluated, the next window starts after the last newline
+                int end = length;
+                if (!last) {
+                    while (end > 0 && buffer.get(end - 1) != '\n')
+                        end--;
+                    if (end == 0)
+                        throw new IllegalStateException("Line " + (lines + 1) + " is longer than " + window + " bytes");
+                }
+
+                int from = 0;
+                while (from < end) {
+                    int to = from;
+                    while (to < end && buffer.get(to) != '\n')
+                        to++;
+                    lines++;
+                    line.wrap(buffer, from, to);
+                    double answer;
+                    try {
+                        answer = parser.parse(lexer.tokenize(line)).run();
+                    } catch (RuntimeException e) {
+                        answer = Double.NaN;
+                        failed++;
+                        errors.println("Line " + lines + ": " + e.getMessage());
+                    }
+                    write(answer, out);
+                    from = to + 1;
+                }
+                position += end;
+            }
+        }
+
+        output.flip();
+        while (output.hasRemaining())
+            out.write(output);
+        return new Summary(lines, failed, System.nanoTime() - start);
+    }
+
+    private void write(double answer, WritableByteChannel out) throws IOException {
+        if (output.remaining() < 32) {
+            output.flip();
+            while (output.hasRemaining())
+                out.write(output);
+            output.clear();
+        }
+
+        if (binary) {
+            output.putDouble(answer);
+        } else {
+            String text = Double.toString(answer);
+            for (int i = 0; i < text.length(); i++)
+                output.put((byte) text.charAt(i));
+            output.put((byte) '\n');
+        }
+    }
+
+    /**
+     * Totals for one evaluated file
+     *
+     * @param lines         Number of lines evaluated
+     * @param failed        Number of lines that failed
+     * @param nanos         Time taken in nanoseconds
+     */
+    public record Summary(long lines, long failed, long nanos) {
+        /**
+         * @return          Lines evaluated per second
+         */
+        public double linesPerSecond() {
+            return nanos == 0 ? 0 : lines * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines, %d failed, in %.3f s (%.0f lines/sec)",
+                    lines, failed, nanos / 1e9, linesPerSecond());
+        }
+    }
+
+    /**
+     * A line of the mapped file read as ASCII characters, without copying it
+     */
+    private static final class AsciiLine implements CharSequence {
+        private ByteBuffer buffer;
+        private int from;
+        private int to;
+
+        void wrap(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(from + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(from + start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
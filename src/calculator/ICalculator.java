@@ -1,7 +1,25 @@
 package calculator;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
 public interface ICalculator {
 
 	double evaluate(String expression);
-	
+
+	BigDecimal evaluate(String expression, MathContext context);
+
+	Rational evaluateExact(String expression);
+
+	Result tryEvaluate(String expression);
+
+	Result validate(String expression);
+
+	Expression compile(String expression);
+
+	BatchResult evaluateAll(List<String> expressions);
+
+	BatchResult evaluateAll(String[] expressions, double[] out);
+
 }
@@ -0,0 +1,103 @@
+package calculator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds, in the style of HdrHistogram:
+ * buckets are exact below 32, and above that each power of two is split
+ * into 32 linear sub-buckets, so any recorded value is reported to within
+ * about 3% while the histogram stays a fixed 15 KB whatever the range.
+ *
+ * Recording is a single atomic array increment, so a histogram may be
+ * shared by the few threads of a stripe without losing counts. Readers
+ * merge histograms into a new one, and may see counts a moment out of date
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get a bucket each, then 32 per power of two up to 2^63
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * @param nanos         Latency to record, negative values count as 0
+     */
+    void record(long nanos) {
+        COUNTS.getAndAdd(counts, bucket(Math.max(nanos, 0)), 1L);
+    }
+
+    /**
+     * Adds another histogram's counts to this one
+     *
+     * @param other         Histogram to add
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * @return              Number of values recorded
+     */
+    long count() {
+        long count = 0;
+        for (long c : counts)
+            count += c;
+        return count;
+    }
+
+    /**
+     * @param percentile    Percentage of values at or below the result, from 0 to 100
+     * @return              The highest value in the bucket holding that percentile, or 0 if nothing is recorded
+     */
+    long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        long count = count();
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return highest(i);
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /**
+     * @return              Index of the bucket holding a non-negative value
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return              The highest value that falls in a bucket
+     */
+    static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,419 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Splits a user expression into typed tokens in a single left to right pass.
+ * Numbers are parsed straight from the characters of the expression, so no
+ * String is created per character or per number.
+ *
+ * Unary minus follows the same rules normaliseInput has always applied:
+ * -5         is a negative number
+ * -(...)     at the start or after ( becomes -1 * (...)
+ * + -(...)   becomes - (...)
+ * - -(...)   becomes + (...)
+ * 5 * -(...) moves the sign onto the number, -5 * (...)
+ * ^ -(...)   becomes ^ (-1 * (...))
+ * A variable name such as rate is negated the same way as a bracket.
+ *
+ * Malformed input is either thrown by tokenize, or recorded by scan as an
+ * ErrorCode and position, without creating an exception.
+ *
+ * A lexer is not thread-safe, but can be reused for any number of expressions
+ */
+public final class Lexer {
+    public static final int NUMBER = 0;
+    public static final int PLUS = 1;
+    public static final int MINUS = 2;
+    public static final int MULTIPLY = 3;
+    public static final int DIVIDE = 4;
+    public static final int POWER = 5;
+    public static final int OPEN = 6;
+    public static final int CLOSE = 7;
+    public static final int VARIABLE = 8;
+
+    // Exactly representable powers of ten, used for the fast number parsing path
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private CharSequence source;
+    private int size;
+    private int[] kinds = new int[16];
+    private double[] values = new double[16];
+    private int[] positions = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] negated = new boolean[16];
+
+    // Depths at which a ^ -( rewrite is waiting for its closing bracket
+    private int[] pendingCloses = new int[4];
+    private int pending;
+
+    private ErrorCode error;
+    private int errorPosition;
+
+    /**
+     * Tokenizes an expression, replacing the tokens of any previous expression
+     *
+     * @param source        User expression. Whitespace is skipped
+     * @return              This lexer, holding the tokens
+     */
+    public Lexer tokenize(CharSequence source) {
+        if (!scan(source)) {
+            throw new IllegalArgumentException(error == ErrorCode.UNEXPECTED_CHARACTER
+                    ? "Unexpected character '" + source.charAt(errorPosition) + "' at position " + errorPosition
+                    : "Malformed number at position " + errorPosition);
+        }
+        return this;
+    }
+
+    /**
+     * Tokenizes an expression like tokenize, but records malformed input
+     * rather than throwing
+     *
+     * @param source        User expression. Whitespace is skipped
+     * @return              Returns true if the expression was tokenized, otherwise see error and errorPosition
+     */
+    boolean scan(CharSequence source) {
+        this.source = source;
+        size = 0;
+        pending = 0;
+        error = null;
+        int depth = 0;
+        int length = source.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (isNumberChar(c)) {
+                i = number(i, i, false);
+                if (i < 0)
+                    return false;
+            } else if (isIdentifierStart(c)) {
+                i = variable(i);
+            } else if (c == '-' && unaryPosition()) {
+                int next = skipWhitespace(i + 1);
+                char n = next < length ? source.charAt(next) : 0;
+                if (isNumberChar(n)) {
+                    i = number(i, next, true);
+                    if (i < 0)
+                        return false;
+                } else if (isIdentifierStart(n)) {
+                    boolean wrapped = negate(i, depth, false);
+                    i = variable(next);
+                    if (wrapped)
+                        add(CLOSE, 0, i, i);
+                } else {
+                    if (n == '(')
+                        negate(i, depth, true);
+                    else
+                        add(MINUS, 0, i, i + 1); // Left for the parser to reject, as before
+                    i = next;
+                }
+            } else {
+                int kind = kind(c);
+                if (kind < 0)
+                    return fail(ErrorCode.UNEXPECTED_CHARACTER, i);
+                add(kind, 0, i, i + 1);
+                if (kind == OPEN) {
+                    depth++;
+                } else if (kind == CLOSE) {
+                    depth--;
+                    if (pending > 0 && pendingCloses[pending - 1] == depth) {
+                        pending--;
+                        add(CLOSE, 0, i, i + 1);
+                    }
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private boolean fail(ErrorCode error, int position) {
+        this.error = error;
+        errorPosition = position;
+        return false;
+    }
+
+    /**
+     * @return              Why the last scan failed, or null if it succeeded
+     */
+    ErrorCode error() {
+        return error;
+    }
+
+    /**
+     * @return              Position in the expression where the last scan failed
+     */
+    int errorPosition() {
+        return errorPosition;
+    }
+
+    /**
+     * @return              Number of tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i             Token index
+     * @return              Kind of the token, one of the constants in this class
+     */
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * @param i             Token index
+     * @return              Value of a NUMBER token
+     */
+    public double value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i             Token index
+     * @return              Position in the expression the token came from
+     */
+    public int position(int i) {
+        return positions[i];
+    }
+
+    /**
+     * @param i             Token index
+     * @return              Name of a VARIABLE token
+     */
+    public String name(int i) {
+        return source.subSequence(positions[i], ends[i]).toString();
+    }
+
+    /**
+     * Renders a token the way normaliseInput always has, e.g. "-2.36" or "*".
+     * Allocates, so it is meant for diagnostics rather than evaluation
+     *
+     * @param i             Token index
+     * @return              Text of the token
+     */
+    public String text(int i) {
+        if (kinds[i] == VARIABLE)
+            return name(i);
+        if (kinds[i] != NUMBER)
+            return String.valueOf(symbol(kinds[i]));
+        if (ends[i] < 0)
+            return "-1";
+        String literal = source.subSequence(positions[i], ends[i]).toString();
+        return negated[i]
+                ? "-" + literal
+                : literal;
+    }
+
+    /**
+     * @param kind          Kind of an operator or bracket token
+     * @return              The character the token is written as
+     */
+    public static char symbol(int kind) {
+        return switch (kind) {
+            case PLUS -> '+';
+            case MINUS -> '-';
+            case MULTIPLY -> '*';
+            case DIVIDE -> '/';
+            case POWER -> '^';
+            case OPEN -> '(';
+            case CLOSE -> ')';
+            default -> throw new IllegalStateException("Unexpected value: " + kind);
+        };
+    }
+
+    /**
+     * Scans a number literal and adds it as a token
+     *
+     * @param sign          Position of the minus sign, or of the first digit for positive numbers
+     * @param start         Position of the first digit
+     * @param negative      Whether the number is negative
+     * @return              Position after the number, or -1 if it is malformed
+     */
+    private int number(int sign, int start, boolean negative) {
+        int length = source.length();
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean digits = false;
+        boolean exact = true;
+        int i = start;
+
+        for (; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                if (point) {
+                    fail(ErrorCode.MALFORMED_NUMBER, sign);
+                    return -1;
+                }
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (point)
+                        fractionDigits++;
+                } else {
+                    exact = false;
+                }
+            } else {
+                break;
+            }
+        }
+        if (!digits) {
+            fail(ErrorCode.MALFORMED_NUMBER, sign);
+            return -1;
+        }
+
+        /*
+         A mantissa below 2^53 and a power of ten up to 10^22 are both exact doubles,
+         so a single division is correctly rounded and matches Double.parseDouble.
+         Anything longer falls back to parsing the literal
+        */
+        double value = exact && mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length
+                ? mantissa / POWERS_OF_TEN[fractionDigits]
+                : Double.parseDouble(source.subSequence(start, i).toString());
+
+        add(NUMBER, negative ? -value : value, start, i);
+        negated[size - 1] = negative;
+        return i;
+    }
+
+    /**
+     * Scans a variable name and adds it as a token
+     *
+     * @param start         Position of the first character
+     * @return              Position after the name
+     */
+    private int variable(int start) {
+        int i = start + 1;
+        while (i < source.length() && isIdentifierPart(source.charAt(i)))
+            i++;
+        add(VARIABLE, 0, start, i);
+        return i;
+    }
+
+    /**
+     * Rewrites a unary minus in front of an opening bracket or a variable using the token before it
+     *
+     * @param i             Position of the minus sign
+     * @param depth         Number of brackets currently open
+     * @param bracket       Whether an opening bracket follows, rather than a variable
+     * @return              Whether a bracket was opened that the caller must close after a variable
+     */
+    private boolean negate(int i, int depth, boolean bracket) {
+        int last = size == 0 ? OPEN : kinds[size - 1];
+        switch (last) {
+            case OPEN -> { // -( -> -1 * (
+                addNegativeOne(i);
+                add(MULTIPLY, 0, i, i + 1);
+            }
+            case PLUS -> kinds[size - 1] = MINUS; // + - -> -
+            case MINUS -> kinds[size - 1] = PLUS; // - - -> +
+            case MULTIPLY, DIVIDE -> {
+                int operand = size - 2;
+                if (operand >= 0 && kinds[operand] == NUMBER && (operand == 0 || kinds[operand - 1] != POWER)) {
+                    // 5 * -( -> -5 * (
+                    values[operand] = -values[operand];
+                    negated[operand] = !negated[operand];
+                } else {
+                    // (...) * -( -> (...) * -1 * (
+                    int position = positions[--size];
+                    add(MULTIPLY, 0, i, i + 1);
+                    addNegativeOne(i);
+                    add(last, 0, position, position + 1);
+                }
+            }
+            case POWER -> { // ^ -( -> ^ (-1 * (...))
+                add(OPEN, 0, i, i + 1);
+                addNegativeOne(i);
+                add(MULTIPLY, 0, i, i + 1);
+                if (!bracket)
+                    return true;
+                if (pending == pendingCloses.length)
+                    pendingCloses = Arrays.copyOf(pendingCloses, pending * 2);
+                pendingCloses[pending++] = depth;
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + symbol(last) + " at position " + i);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the -1 used to rewrite a negated bracket or variable
+     *
+     * @param i             Position of the minus sign
+     */
+    private void addNegativeOne(int i) {
+        add(NUMBER, -1, i, -1);
+    }
+
+    /**
+     * Appends a token, growing the token arrays if needed
+     */
+    private void add(int kind, double value, int position, int end) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            negated = Arrays.copyOf(negated, capacity);
+        }
+        kinds[size] = kind;
+        values[size] = value;
+        positions[size] = position;
+        ends[size] = end;
+        negated[size] = false;
+        size++;
+    }
+
+    /**
+     * A minus is unary at the start of the expression, after an operator or after (
+     */
+    private boolean unaryPosition() {
+        if (size == 0)
+            return true;
+        int last = kinds[size - 1];
+        return last != NUMBER && last != VARIABLE && last != CLOSE;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < source.length() && Character.isWhitespace(source.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static int kind(char c) {
+        return switch (c) {
+            case '+' -> PLUS;
+            case '-' -> MINUS;
+            case '*' -> MULTIPLY;
+            case '/' -> DIVIDE;
+            case '^' -> POWER;
+            case '(' -> OPEN;
+            case ')' -> CLOSE;
+            default -> -1;
+        };
+    }
+}
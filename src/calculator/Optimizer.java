@@ -0,0 +1,280 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies a Program before it is evaluated, in a single pass over its
+ * instructions that keeps a stack of the subexpressions built so far.
+ *
+ * Constant subexpressions are folded, e.g. (2*3.5)^2 becomes 49, unless
+ * evaluating them would throw, such as dividing by zero, so that the error
+ * still happens when the expression is evaluated. Identities that hold for
+ * every IEEE-754 value are removed:
+ * x*1, 1*x, x/1, x^1, x+(-0), x-0 become x
+ * x*-1, -1*x, x/-1, -0-x become -x, and a double negation cancels out
+ * x+-y becomes x-y and x--y becomes x+y
+ * x^2 becomes x*x and x^0 becomes 1, if x cannot throw
+ *
+ * With fast-math, identities that only fail for signed zeros, NaN or
+ * infinity are applied too: x+0, 0+x and 0-x, and x*0 and 0*x become 0
+ * if x cannot throw.
+ *
+ * An optimizer is not thread-safe, but can be reused for any number of programs
+ */
+public final class Optimizer {
+    // Marks an instruction removed after it was emitted
+    private static final int DEAD = -1;
+
+    private final boolean fastMath;
+    private int removed;
+
+    // Instructions emitted so far, with the constant or variable slot of each
+    private int[] ops = new int[16];
+    private double[] operands = new double[16];
+    private int size;
+
+    // Subexpressions on the stack: where each starts and whether it can throw
+    private int[] starts = new int[16];
+    private boolean[] throwing = new boolean[16];
+    private int top;
+
+    /**
+     * Creates an optimizer that keeps IEEE-754 semantics
+     */
+    public Optimizer() {
+        this(false);
+    }
+
+    /**
+     * Creates an optimizer
+     *
+     * @param fastMath      Also apply identities that do not hold for signed zeros, NaN or infinity
+     */
+    public Optimizer(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
+    /**
+     * Optimizes a program. Variables keep their slots, even if they are no longer used
+     *
+     * @param program       Program to optimize
+     * @return              An equivalent program with at most as many instructions
+     */
+    public Program optimize(Program program) {
+        size = 0;
+        top = 0;
+
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            switch (opcode) {
+                case Program.CONST -> {
+                    push(size, false);
+                    emit(Program.CONST, program.constant(program.operand(i)));
+                }
+                case Program.VARIABLE -> {
+                    push(size, false);
+                    emit(Program.VARIABLE, program.operand(i));
+                }
+                case Program.NEGATE -> negate();
+                case Program.DUPLICATE -> { // Only emitted by an earlier pass, so re-optimizing is harmless
+                    push(size, throwing[top - 1]);
+                    emit(Program.DUPLICATE, 0);
+                }
+                case Program.TEE, Program.LOAD ->
+                        throw new IllegalArgumentException("Programs must be optimized before common subexpressions are eliminated");
+                default -> binary(opcode);
+            }
+        }
+
+        Program.Builder builder = new Program.Builder(size, program.variables);
+        for (int i = 0; i < size; i++) {
+            switch (ops[i]) {
+                case DEAD -> {
+                }
+                case Program.CONST -> builder.constant(operands[i]);
+                case Program.VARIABLE -> builder.variable(program.variables[(int) operands[i]]);
+                case Program.NEGATE -> builder.negate();
+                case Program.DUPLICATE -> builder.duplicate();
+                default -> builder.operator(ops[i]);
+            }
+        }
+        Program optimized = builder.build();
+        removed = program.size() - optimized.size();
+        return optimized;
+    }
+
+    /**
+     * @return              Number of instructions the last optimize call removed
+     */
+    public int removed() {
+        return removed;
+    }
+
+    /**
+     * Simplifies a binary operator applied to the two subexpressions on top of the stack
+     */
+    private void binary(int opcode) {
+        int ys = starts[top - 1];
+        int xs = starts[top - 2];
+        boolean xThrows = throwing[top - 2];
+        boolean yThrows = throwing[top - 1];
+        boolean xConst = ops[ys - 1] == Program.CONST;
+        boolean yConst = ops[size - 1] == Program.CONST;
+        double x = operands[ys - 1];
+        double y = operands[size - 1];
+        // y starting with DUPLICATE copies x, so x cannot be removed
+        boolean duplicates = ops[ys] == Program.DUPLICATE;
+        top -= 2;
+
+        if (xConst && yConst) {
+            try {
+                double value = apply(opcode, x, y);
+                size = xs;
+                push(xs, false);
+                emit(Program.CONST, value);
+                return;
+            } catch (RuntimeException e) {
+                // Left for evaluation to throw
+            }
+        }
+
+        // Subexpression left once an identity removes the constant operand on the right or left
+        boolean keepX = false;
+        boolean keepY = false;
+        boolean negate = false;
+        switch (opcode) {
+            case Program.MULTIPLY -> {
+                if (yConst && (y == 1 || y == -1)) {
+                    keepX = true;
+                    negate = y == -1;
+                } else if (xConst && (x == 1 || x == -1) && !duplicates) {
+                    keepY = true;
+                    negate = x == -1;
+                } else if (fastMath && ((yConst && y == 0 && !xThrows) || (xConst && x == 0 && !yThrows))) {
+                    replace(xs, 0);
+                    return;
+                }
+            }
+            case Program.DIVIDE -> {
+                if (yConst && (y == 1 || y == -1)) {
+                    keepX = true;
+                    negate = y == -1;
+                }
+            }
+            case Program.ADD -> {
+                if (yConst && (isNegativeZero(y) || (fastMath && y == 0))) {
+                    keepX = true;
+                } else if (xConst && (isNegativeZero(x) || (fastMath && x == 0)) && !duplicates) {
+                    keepY = true;
+                } else if (ops[size - 1] == Program.NEGATE) { // x + -y
+                    size--;
+                    push(xs, xThrows || yThrows);
+                    emit(Program.SUBTRACT, 0);
+                    return;
+                }
+            }
+            case Program.SUBTRACT -> {
+                if (yConst && (isPositiveZero(y) || (fastMath && y == 0))) {
+                    keepX = true;
+                } else if (xConst && (isNegativeZero(x) || (fastMath && x == 0)) && !duplicates) {
+                    keepY = true;
+                    negate = true;
+                } else if (ops[size - 1] == Program.NEGATE) { // x - -y
+                    size--;
+                    push(xs, xThrows || yThrows);
+                    emit(Program.ADD, 0);
+                    return;
+                }
+            }
+            case Program.POWER -> {
+                if (yConst && y == 1) {
+                    keepX = true;
+                } else if (yConst && y == 0 && !xThrows) {
+                    replace(xs, 1);
+                    return;
+                } else if (yConst && y == 2) {
+                    // x^2 is calculated as x * x, so this gives exactly the same answer
+                    size--;
+                    push(xs, xThrows);
+                    emit(Program.DUPLICATE, 0);
+                    emit(Program.MULTIPLY, 0);
+                    return;
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        }
+
+        if (keepX) {
+            size--; // The constant y is the last instruction
+            push(xs, xThrows);
+        } else if (keepY) {
+            for (int i = xs; i < ys; i++)
+                ops[i] = DEAD;
+            push(xs, yThrows);
+        } else {
+            push(xs, xThrows || yThrows || opcode == Program.DIVIDE || opcode == Program.POWER);
+            emit(opcode, 0);
+            return;
+        }
+        if (negate)
+            negate();
+    }
+
+    /**
+     * Negates the subexpression on top of the stack, folding it into a
+     * constant or cancelling a negation already there
+     */
+    private void negate() {
+        switch (ops[size - 1]) {
+            case Program.CONST -> operands[size - 1] = -operands[size - 1];
+            case Program.NEGATE -> size--;
+            default -> emit(Program.NEGATE, 0);
+        }
+    }
+
+    /**
+     * Replaces everything from start onwards with a constant
+     */
+    private void replace(int start, double value) {
+        size = start;
+        push(start, false);
+        emit(Program.CONST, value);
+    }
+
+    private static double apply(int opcode, double x, double y) {
+        return switch (opcode) {
+            case Program.ADD -> x + y;
+            case Program.SUBTRACT -> x - y;
+            case Program.MULTIPLY -> x * y;
+            case Program.DIVIDE -> Program.divide(x, y);
+            case Program.POWER -> Program.power(x, y);
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        };
+    }
+
+    private static boolean isNegativeZero(double value) {
+        return Double.doubleToRawLongBits(value) == Long.MIN_VALUE;
+    }
+
+    private static boolean isPositiveZero(double value) {
+        return Double.doubleToRawLongBits(value) == 0;
+    }
+
+    private void push(int start, boolean throwing) {
+        if (top == starts.length) {
+            starts = Arrays.copyOf(starts, top * 2);
+            this.throwing = Arrays.copyOf(this.throwing, top * 2);
+        }
+        starts[top] = start;
+        this.throwing[top++] = throwing;
+    }
+
+    private void emit(int opcode, double operand) {
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        ops[size] = opcode;
+        operands[size++] = operand;
+    }
+}
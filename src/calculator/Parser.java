@@ -0,0 +1,208 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Converts the tokens of a Lexer straight into a Program using the
+ * shunting-yard algorithm, the same way Calculator.rpn orders a normalised
+ * expression. Operators wait on an int stack, so no String is created.
+ * check runs the same algorithm counting operands instead of building a
+ * program, so malformed input is found without allocating.
+ *
+ * A parser is not thread-safe, but can be reused for any number of expressions
+ */
+public final class Parser {
+    private int[] operators = new int[16];
+    // Token each waiting operator came from
+    private int[] origins = new int[16];
+    private int top;
+    // Operands the program would hold on its stack so far
+    private int depth;
+    // The token that last pushed an operand
+    private int lastOperand;
+
+    private ErrorCode error;
+    private int errorPosition;
+
+    /**
+     * Parses tokenized expression into a program
+     *
+     * @param lexer         Lexer holding the tokens of the expression
+     * @return              The compiled program
+     */
+    public Program parse(Lexer lexer) {
+        return parse(lexer, null);
+    }
+
+    /**
+     * Parses tokenized expression into a program, noting where each instruction came from
+     *
+     * @param lexer         Lexer holding the tokens of the expression
+     * @param positions     Destination parameter, at least lexer.size() long, takes in the
+     *                      position in the expression of each instruction's token
+     * @return              The compiled program
+     */
+    Program parse(Lexer lexer, int[] positions) {
+        return parse(lexer, positions, false);
+    }
+
+    /**
+     * Parses tokenized expression into a program that keeps the text of each
+     * number literal, for evaluators that read numbers exactly as written
+     *
+     * @param lexer         Lexer holding the tokens of the expression
+     * @return              The compiled program, with literals
+     */
+    Program parseLiterals(Lexer lexer) {
+        return parse(lexer, null, true);
+    }
+
+    private Program parse(Lexer lexer, int[] positions, boolean literals) {
+        Program.Builder builder = new Program.Builder(lexer.size());
+        if (!order(lexer, builder, positions, literals)) {
+            throw new RuntimeException(switch (error) {
+                case EXTRA_OPENING_BRACKET -> "Extra opening bracket";
+                case EXTRA_CLOSING_BRACKET -> "Extra closing bracket";
+                case EXTRA_OPERATOR -> "Extra operator somewhere";
+                case EXTRA_OPERAND -> "Extra operand somewhere";
+                default -> throw new IllegalStateException("Unexpected value: " + error);
+            });
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks that tokenized expression parses, without building a program
+     *
+     * @param lexer         Lexer holding the tokens of the expression
+     * @return              Returns true if it parses, otherwise see error and errorPosition
+     */
+    boolean check(Lexer lexer) {
+        return order(lexer, null, null, false);
+    }
+
+    /**
+     * @return              Why the last parse or check failed, or null if it succeeded
+     */
+    ErrorCode error() {
+        return error;
+    }
+
+    /**
+     * @return              Position in the expression where the last parse or check failed
+     */
+    int errorPosition() {
+        return errorPosition;
+    }
+
+    /**
+     * Orders the tokens into RPN, adding each to the builder if there is one
+     */
+    private boolean order(Lexer lexer, Program.Builder builder, int[] positions, boolean literals) {
+        top = 0;
+        depth = 0;
+        lastOperand = -1;
+        error = null;
+
+        for (int i = 0; i < lexer.size(); i++) {
+            int kind = lexer.kind(i);
+            switch (kind) {
+                case Lexer.NUMBER, Lexer.VARIABLE -> {
+                    if (builder != null) {
+                        if (positions != null)
+                            positions[builder.size()] = lexer.position(i);
+                        if (kind == Lexer.NUMBER)
+                            builder.constant(lexer.value(i), literals ? lexer.text(i) : null);
+                        else
+                            builder.variable(lexer.name(i));
+                    }
+                    depth++;
+                    lastOperand = i;
+                }
+                case Lexer.OPEN -> push(kind, i);
+                case Lexer.CLOSE -> { // Unwind to the matching opening bracket
+                    while (top > 0 && operators[top - 1] != Lexer.OPEN)
+                        if (!pop(lexer, builder, positions))
+                            return false;
+                    if (top == 0)
+                        return fail(ErrorCode.EXTRA_CLOSING_BRACKET, lexer.position(i));
+                    top--;
+                }
+                default -> { // Operator, output anything of equal or higher precedence first
+                    while (top > 0 && precedence(operators[top - 1]) >= precedence(kind))
+                        if (!pop(lexer, builder, positions))
+                            return false;
+                    push(kind, i);
+                }
+            }
+        }
+
+        // Adds remaining operators in the stack
+        while (top > 0) {
+            if (operators[top - 1] == Lexer.OPEN)
+                return fail(ErrorCode.EXTRA_OPENING_BRACKET, lexer.position(origins[top - 1]));
+            if (!pop(lexer, builder, positions))
+                return false;
+        }
+        if (depth > 1)
+            return fail(ErrorCode.EXTRA_OPERAND, lexer.position(lastOperand));
+        return true;
+    }
+
+    /**
+     * Outputs the operator on top of the stack
+     */
+    private boolean pop(Lexer lexer, Program.Builder builder, int[] positions) {
+        int origin = origins[--top];
+        if (depth < 2)
+            return fail(ErrorCode.EXTRA_OPERATOR, lexer.position(origin));
+        depth--;
+        if (builder != null) {
+            if (positions != null)
+                positions[builder.size()] = lexer.position(origin);
+            builder.operator(opcode(operators[top]));
+        }
+        return true;
+    }
+
+    private void push(int kind, int origin) {
+        if (top == operators.length) {
+            operators = Arrays.copyOf(operators, top * 2);
+            origins = Arrays.copyOf(origins, top * 2);
+        }
+        operators[top] = kind;
+        origins[top++] = origin;
+    }
+
+    private boolean fail(ErrorCode error, int position) {
+        this.error = error;
+        errorPosition = position;
+        return false;
+    }
+
+    /**
+     * Defines the precedence of an operator. BODMAS
+     *
+     * @param kind          Token kind
+     * @return              Return a value based on the precedence of the operator, -1 for brackets
+     */
+    private static int precedence(int kind) {
+        return switch (kind) {
+            case Lexer.PLUS, Lexer.MINUS -> 1;
+            case Lexer.MULTIPLY, Lexer.DIVIDE -> 2;
+            case Lexer.POWER -> 3;
+            default -> -1;
+        };
+    }
+
+    private static int opcode(int kind) {
+        return switch (kind) {
+            case Lexer.PLUS -> Program.ADD;
+            case Lexer.MINUS -> Program.SUBTRACT;
+            case Lexer.MULTIPLY -> Program.MULTIPLY;
+            case Lexer.DIVIDE -> Program.DIVIDE;
+            case Lexer.POWER -> Program.POWER;
+            default -> throw new IllegalStateException("Unexpected value: " + kind);
+        };
+    }
+}
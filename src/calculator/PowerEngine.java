@@ -0,0 +1,242 @@
+package calculator;
+
+/**
+ * Exponentiation and root finding shared by Calculator and compiled programs.
+ *
+ * Integer exponents are multiplied out left to right, as ^ always has,
+ * up to SEQUENTIAL_LIMIT, and use repeated squaring above it. Fractional exponents use the
+ * exact square or cube root where the exponent allows it, otherwise the
+ * exponent is read as a decimal fraction whole + p/q and x^(p/q) is found
+ * by Newton's method on the q-th root. Exponents with no short decimal
+ * form fall back to Math.pow
+ */
+public final class PowerEngine {
+    /**
+     * Relative tolerance the Newton iteration stops at by default, a few ulps
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-15;
+
+    /**
+     * Largest exponent multiplied out one factor at a time. Up to it, integer
+     * powers are bit-identical to the repeated multiplication ^ has always
+     * done, e.g. compound growth like 1.1^50. Above it repeated squaring takes
+     * O(log n) multiplications, and may differ from it in the last bits
+     */
+    public static final int SEQUENTIAL_LIMIT = 4096;
+
+    // Fractional exponents with more decimal places than this use Math.pow
+    private static final int MAX_DECIMAL_PLACES = 6;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6};
+    private static final int MAX_ITERATIONS = 100;
+
+    // Doubles this large are all even, so such exponents can be halved exactly
+    private static final double TWO_POW_62 = 0x1p62;
+
+    private PowerEngine() {
+    }
+
+    /**
+     * Performs an exponent calculation the way the ^ operator always has:
+     * negative exponents give 1 / x^|y|, and a negative base with a fractional
+     * exponent gives -(|x|^y)
+     *
+     * @param x             Base
+     * @param y             Exponent
+     * @param tolerance     Relative tolerance for roots found by Newton's method
+     * @return              Returns x ^ y
+     */
+    public static double power(double x, double y, double tolerance) {
+        boolean negative = y < 0;
+        if (negative)
+            y = -y;
+
+        double result;
+        if (y % 1 == 0) {
+            result = y == 0
+                    ? 1
+                    : x * pow(x, y - 1);
+        } else {
+            result = x < 0
+                    ? -fractionalPow(-x, y, tolerance)
+                    : fractionalPow(x, y, tolerance);
+        }
+
+        return negative
+                ? Program.divide(1, result)
+                : result;
+    }
+
+    /**
+     * Raises base to a non-negative integer exponent. Exponents up to
+     * SEQUENTIAL_LIMIT multiply base by itself n times, left to right.
+     * Larger ones square repeatedly, taking O(log n) multiplications, which
+     * matches the product exactly whenever every intermediate product is exact
+     *
+     * @param base          Value being raised
+     * @param exponent      Non-negative integer exponent
+     * @return              Returns base ^ exponent
+     */
+    public static double pow(double base, double exponent) {
+        if (exponent <= SEQUENTIAL_LIMIT) {
+            double result = 1;
+            for (int i = 0; i < exponent; i++)
+                result *= base;
+            return result;
+        }
+        if (exponent == Double.POSITIVE_INFINITY)
+            return Math.pow(base, exponent);
+        while (exponent >= TWO_POW_62) {
+            base *= base;
+            exponent /= 2;
+        }
+
+        long n = (long) exponent;
+        double result = 1;
+        while (n > 0) {
+            if ((n & 1) != 0)
+                result *= base;
+            n >>= 1;
+            if (n > 0)
+                base *= base;
+        }
+        return result;
+    }
+
+    /**
+     * Raises a non-negative base to a positive fractional exponent
+     *
+     * @param base          Non-negative value being raised
+     * @param exponent      Positive exponent with a fractional part
+     * @param tolerance     Relative tolerance for roots found by Newton's method
+     * @return              Returns base ^ exponent
+     */
+    public static double fractionalPow(double base, double exponent, double tolerance) {
+        double whole = Math.floor(exponent);
+        if (whole == exponent)
+            return pow(base, exponent);
+
+        // Halves and thirds have correctly rounded roots in the JDK
+        if (exponent * 2 % 1 == 0)
+            return pow(base, whole) * Math.sqrt(base);
+        double thirds = exponent * 3;
+        if (thirds % 1 == 0)
+            return pow(base, whole) * pow(Math.cbrt(base), thirds - whole * 3);
+
+        /*
+         If the decimal/fraction was 2.625
+         2.625 -> 21/8 -> 2 5/8
+         Therefore the calculation is as follows
+         (x^2) * (x^(1/8))^5
+        */
+        double fraction = exponent - whole;
+        for (int places = 1; places <= MAX_DECIMAL_PLACES; places++) {
+            double scaled = fraction * POWERS_OF_TEN[places];
+            double rounded = Math.rint(scaled);
+            if (Math.abs(scaled - rounded) <= Math.ulp(scaled))
+                return pow(base, whole) * properPow(base, Rational.valueOf((long) rounded, (long) POWERS_OF_TEN[places]), tolerance);
+        }
+
+        return Math.pow(base, exponent);
+    }
+
+    /**
+     * Performs an exponent calculation like power, taking the exponent as an
+     * exact fraction, so x^(1/3) is the cube root rather than x^0.333...
+     *
+     * @param x             Base
+     * @param y             Exponent
+     * @param tolerance     Relative tolerance for roots found by Newton's method
+     * @return              Returns x ^ y
+     */
+    public static double power(double x, Rational y, double tolerance) {
+        if (y.isInteger() || !y.fitsLong())
+            return power(x, y.doubleValue(), tolerance);
+        if (y.signum() < 0)
+            return Program.divide(1, power(x, y.negate(), tolerance));
+        if (x < 0)
+            return -power(-x, y, tolerance);
+
+        long whole = y.longNumerator() / y.longDenominator();
+        return pow(x, whole) * properPow(x, Rational.valueOf(y.longNumerator() % y.longDenominator(), y.longDenominator()), tolerance);
+    }
+
+    /**
+     * @param base          Non-negative value being raised
+     * @param fraction      Exponent between 0 and 1, in lowest terms p/q
+     * @return              Returns (base root q) ^ p
+     */
+    private static double properPow(double base, Rational fraction, double tolerance) {
+        return pow(root(base, fraction.longDenominator(), tolerance), fraction.longNumerator());
+    }
+
+    /**
+     * Finds the n-th root of a number with Newton's method, seeded from Math.pow
+     * so that it normally converges in one or two steps. Exact integer roots are
+     * returned exactly
+     *
+     * @param radicand      Number whose root is being found
+     * @param n             The exponent of the root
+     * @param tolerance     Stops once a step changes the root by less than this, relative to the root
+     * @return              Root of the radicand
+     */
+    public static double root(double radicand, long n, double tolerance) {
+        if (n < 1)
+            throw new IllegalArgumentException("Root exponent must be positive: " + n);
+        if (radicand < 0)
+            throw new RuntimeException("Imaginary number");
+        if (n == 1 || radicand == 0 || Double.isInfinite(radicand) || Double.isNaN(radicand))
+            return radicand;
+        if (n == 2)
+            return Math.sqrt(radicand);
+        if (n == 3)
+            return Math.cbrt(radicand);
+
+        double root = Math.pow(radicand, 1.0 / n);
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            // x' = ((n - 1) x + a / x^(n-1)) / n
+            double next = ((n - 1) * root + radicand / pow(root, n - 1)) / n;
+            boolean converged = Math.abs(next - root) <= tolerance * next;
+            root = next;
+            if (converged)
+                break;
+        }
+
+        // Perfect roots, e.g. 1024 root 10, are exactly 2
+        double rounded = Math.rint(root);
+        return rounded != root && pow(rounded, n) == radicand
+                ? rounded
+                : root;
+    }
+
+    /**
+     * Calculates the greatest common divisor with the binary GCD algorithm,
+     * which needs only shifts and subtractions. Magnitudes are taken as
+     * unsigned, so Long.MIN_VALUE counts as 2^63
+     *
+     * @param x             First value
+     * @param y             Second value
+     * @return              The greatest common divisor, or the other value if one is 0.
+     *                      A divisor of 2^63 is returned as Long.MIN_VALUE, as Math.abs does
+     */
+    public static long gcd(long x, long y) {
+        x = Math.abs(x);
+        y = Math.abs(y);
+        if (x == 0)
+            return y;
+        if (y == 0)
+            return x;
+
+        int shift = Long.numberOfTrailingZeros(x | y);
+        x >>>= Long.numberOfTrailingZeros(x);
+        do {
+            y >>>= Long.numberOfTrailingZeros(y);
+            if (Long.compareUnsigned(x, y) > 0) {
+                long t = y;
+                y = x;
+                x = t;
+            }
+            y -= x;
+        } while (y != 0);
+        return x << shift;
+    }
+}
@@ -0,0 +1,241 @@
+package calculator;
+
+/**
+ * Parses and evaluates an expression in a single pass by precedence
+ * climbing, reading numbers straight from the string, so nothing is
+ * allocated beyond the expression itself: no tokens, no program and no
+ * operator stack besides the call stack.
+ *
+ * Operators and unary minus follow the Lexer and Parser, with one
+ * exception: ^ is right-associative, so 2^3^2 is 2^(3^2) = 512, where the
+ * compiled engine gives (2^3)^2 = 64. Every other expression gets the
+ * same answer from both, as each operator is applied to the same values
+ * in the same order. A minus in front of a bracket negates the bracket and
+ * any powers of it, -(2)^2 = -4, except straight after ^, where it negates
+ * only the bracket, as the Lexer's rewrites do.
+ *
+ * Anything the evaluator does not answer is left to the compiled engine:
+ * malformed input, division by zero and failed powers, so errors are
+ * reported exactly as before, along with variables, number literals too
+ * long for the exact fast path, and nesting beyond MAX_DEPTH.
+ *
+ * An evaluator is not thread-safe, but can be reused for any number of expressions
+ */
+final class PrattEvaluator {
+    // Brackets and powers nested deeper than this are left to the compiled engine, rather than risk the stack
+    static final int MAX_DEPTH = 256;
+
+    // Binding power of each operator on its left. Binary operators take their right operand
+    // at one more than this, except ^, which takes it at the same power to associate to the right
+    private static final int SUM = 1;
+    private static final int PRODUCT = 3;
+    private static final int POWER = 5;
+
+    private String source;
+    private int length;
+    private int i;
+    private int depth;
+    private boolean failed;
+    private double value;
+
+    /**
+     * Evaluates an expression without variables
+     *
+     * @param source        User expression. Spaces are ignored, even within numbers, as evaluate strips them
+     * @return              Returns true if it was answered, see value, or false to leave it to the compiled engine
+     */
+    boolean evaluate(String source) {
+        this.source = source;
+        length = source.length();
+        i = 0;
+        depth = 0;
+        failed = false;
+
+        value = expression(0);
+        // Anything left over, such as a closing bracket with nothing open
+        if (peek() >= 0)
+            failed = true;
+        this.source = null;
+        return !failed;
+    }
+
+    /**
+     * @return              The answer of the last expression evaluated
+     */
+    double value() {
+        return value;
+    }
+
+    /**
+     * Evaluates operands joined by operators binding at least as tightly as power
+     */
+    private double expression(int power) {
+        if (++depth > MAX_DEPTH)
+            return fail();
+        double left = operand(false);
+        while (!failed) {
+            int c = peek();
+            int binding = binding(c);
+            if (binding < power)
+                break;
+            i++;
+            double right = c == '^'
+                    ? exponent()
+                    : expression(binding + 1);
+            if (failed)
+                break;
+            left = apply(c, left, right);
+        }
+        depth--;
+        return left;
+    }
+
+    /**
+     * Evaluates the right of ^, which starts with an operand that a minus negates alone
+     */
+    private double exponent() {
+        if (++depth > MAX_DEPTH)
+            return fail();
+        double left = operand(true);
+        while (!failed) {
+            int c = peek();
+            int binding = binding(c);
+            if (binding < POWER)
+                break;
+            i++;
+            double right = exponent();
+            if (failed)
+                break;
+            left = apply(c, left, right);
+        }
+        depth--;
+        return left;
+    }
+
+    /**
+     * Evaluates a number, a bracket, or a negated one
+     *
+     * @param afterPower    Whether the operand follows ^, so a minus before a bracket negates only the bracket
+     */
+    private double operand(boolean afterPower) {
+        int c = peek();
+        if (isNumberChar(c))
+            return number(false);
+        if (c == '(') {
+            i++;
+            double inner = expression(0);
+            if (failed)
+                return inner;
+            if (peek() != ')')
+                return fail();
+            i++;
+            return inner;
+        }
+        if (c == '-') {
+            i++;
+            int next = peek();
+            if (isNumberChar(next))
+                return number(true);
+            if (next != '(')
+                return fail();
+            // -( is -1 * (...), taking in the bracket's powers
+            return -(afterPower ? operand(false) : expression(POWER));
+        }
+        return fail();
+    }
+
+    /**
+     * Reads a number literal the way the Lexer does, skipping spaces within it
+     */
+    private double number(boolean negative) {
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean digits = false;
+        boolean exact = true;
+
+        for (; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == ' ')
+                continue;
+            if (c == '.') {
+                if (point)
+                    return fail();
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (mantissa < Lexer.MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (point)
+                        fractionDigits++;
+                } else {
+                    exact = false;
+                }
+            } else {
+                break;
+            }
+        }
+        // Longer literals are parsed by Double.parseDouble, which needs a String
+        if (!digits || !exact || mantissa > Lexer.MAX_EXACT_MANTISSA || fractionDigits >= Lexer.POWERS_OF_TEN.length)
+            return fail();
+
+        double value = mantissa / Lexer.POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Applies an operator the way Program does, leaving errors to the compiled engine to report
+     */
+    private double apply(int operator, double x, double y) {
+        switch (operator) {
+            case '+':
+                return x + y;
+            case '-':
+                return x - y;
+            case '*':
+                return x * y;
+            case '/':
+                if (y == 0)
+                    return fail();
+                return x / y;
+            default:
+                try {
+                    return Program.power(x, y);
+                } catch (RuntimeException e) {
+                    return fail();
+                }
+        }
+    }
+
+    /**
+     * @return              The next character that is not whitespace, without consuming it, or -1 at the end
+     */
+    private int peek() {
+        while (i < length && Character.isWhitespace(source.charAt(i)))
+            i++;
+        return i < length
+                ? source.charAt(i)
+                : -1;
+    }
+
+    private double fail() {
+        failed = true;
+        return Double.NaN;
+    }
+
+    /**
+     * @return              How tightly an operator binds its left operand, or -1 if c is not an operator
+     */
+    private static int binding(int c) {
+        return switch (c) {
+            case '+', '-' -> SUM;
+            case '*', '/' -> PRODUCT;
+            case '^' -> POWER;
+            default -> -1;
+        };
+    }
+
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '.';
+    }
+}
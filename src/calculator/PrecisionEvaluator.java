@@ -0,0 +1,369 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Evaluates a Program in decimal arithmetic at a given MathContext, reading
+ * each number as written, so 0.1 is exactly 0.1 and 9007199254740993 is not
+ * rounded to a double. Constants without a literal are read as the
+ * shortest decimal that gives their double.
+ *
+ * Evaluation first runs in double while tracking a bound on how far each
+ * value can be from the exact decimal one. Sums, products and quotients
+ * find their own rounding error exactly with two-sum and fma, and a literal
+ * a double cannot hold starts with the distance to its double, so integer
+ * and money arithmetic often stays exact. If the whole interval the answer
+ * can lie in rounds to one decimal at the requested precision, that is the
+ * answer. Otherwise, or when a value is not finite or a power could not
+ * be bounded, the program is run again in BigDecimal.
+ *
+ * BigDecimal intermediates are kept to GUARD_DIGITS more digits than the
+ * context asks for, or exact under MathContext.UNLIMITED. Powers with a
+ * fractional exponent are irrational in general, so they are calculated in
+ * double as the ^ operator always has. Answers have no trailing zeros
+ */
+final class PrecisionEvaluator {
+    /**
+     * Extra digits BigDecimal intermediates carry beyond the requested precision
+     */
+    static final int GUARD_DIGITS = 10;
+
+    // Error bounds are themselves rounded, so each is widened slightly
+    private static final double WIDEN = 1 + 0x1p-48;
+    // Doubles below this are integers whose arithmetic is exact while it stays below it
+    private static final double TWO_POW_53 = 0x1p53;
+
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    // Whole numbers of this many digits are exact doubles with room for a fraction
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    private static final ThreadLocal<double[]> STACKS = ThreadLocal.withInitial(() -> new double[64]);
+
+    private final Program program;
+    private final BigDecimal[] decimals;
+    private final double[] errors;
+
+    /**
+     * @param program       Program to evaluate, without constant folding, which would round in double.
+     *                      Its literals are read as written, if it keeps them
+     */
+    PrecisionEvaluator(Program program) {
+        this.program = program;
+        decimals = new BigDecimal[program.constants.length];
+        errors = new double[program.constants.length];
+        for (int i = 0; i < decimals.length; i++) {
+            double constant = program.constants[i];
+            String literal = program.literals == null ? null : program.literals[i];
+            decimals[i] = literal == null
+                    ? BigDecimal.valueOf(constant)
+                    : new BigDecimal(literal);
+            // A literal too large for a double can only be evaluated in BigDecimal
+            errors[i] = Double.isFinite(constant)
+                    ? error(new BigDecimal(constant).subtract(decimals[i]))
+                    : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Evaluates in double, tracking the error
+     *
+     * @param values        Value of each variable, indexed by slot
+     * @param context       Precision and rounding of the answer
+     * @return              The answer, or null if double could not determine it
+     */
+    BigDecimal estimate(BigDecimal[] values, MathContext context) {
+        if (values.length < program.variables.length)
+            throw new IllegalArgumentException("No value for variable " + program.variables[values.length]);
+
+        int size = 2 * (program.maxStack + program.temporaries);
+        double[] stack = STACKS.get();
+        if (stack.length < size) {
+            stack = new double[Math.max(size, stack.length * 2)];
+            STACKS.set(stack);
+        }
+        // Values are at even indices and their error bounds at odd ones, temporaries after the stack
+        int sp = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            int operand = program.operand(i);
+            switch (opcode) {
+                case Program.CONST -> {
+                    stack[sp] = program.constants[operand];
+                    stack[sp + 1] = errors[operand];
+                    sp += 2;
+                }
+                case Program.VARIABLE -> {
+                    BigDecimal value = values[operand];
+                    stack[sp] = value.doubleValue();
+                    stack[sp + 1] = error(value, stack[sp]);
+                    sp += 2;
+                }
+                case Program.ADD, Program.SUBTRACT -> {
+                    sp -= 2;
+                    double x = stack[sp - 2], y = opcode == Program.ADD ? stack[sp] : -stack[sp];
+                    double sum = x + y;
+                    // Two-sum: the exact rounding error of x + y
+                    double z = sum - x;
+                    double rounding = (x - (sum - z)) + (y - z);
+                    stack[sp - 2] = sum;
+                    stack[sp - 1] = widen(stack[sp - 1] + stack[sp + 1] + Math.abs(rounding));
+                }
+                case Program.MULTIPLY -> {
+                    sp -= 2;
+                    double x = stack[sp - 2], ex = stack[sp - 1];
+                    double y = stack[sp], ey = stack[sp + 1];
+                    double product = x * y;
+                    double rounding = Math.fma(x, y, -product);
+                    stack[sp - 2] = product;
+                    stack[sp - 1] = ex == 0 && ey == 0 && rounding == 0
+                            ? 0
+                            : widen(Math.abs(x) * ey + Math.abs(y) * ex + ex * ey + Math.abs(rounding));
+                }
+                case Program.DIVIDE -> {
+                    sp -= 2;
+                    double x = stack[sp - 2], ex = stack[sp - 1];
+                    double y = stack[sp], ey = stack[sp + 1];
+                    // The exact divisor may be zero, or rounded to zero here when it is not
+                    if (ey >= Math.abs(y)) {
+                        if (ey == 0)
+                            throw new ArithmeticException("Division by 0");
+                        return null;
+                    }
+                    double quotient = x / y;
+                    double remainder = Math.fma(-quotient, y, x);
+                    stack[sp - 2] = quotient;
+                    stack[sp - 1] = ex == 0 && ey == 0 && remainder == 0
+                            ? 0
+                            : widen((ex + Math.abs(quotient) * ey) / (Math.abs(y) - ey) + Math.abs(remainder / y));
+                }
+                case Program.POWER -> {
+                    sp -= 2;
+                    double x = stack[sp - 2], y = stack[sp];
+                    // Only whole powers of whole numbers are known to be exact
+                    if (stack[sp - 1] != 0 || stack[sp + 1] != 0 || x % 1 != 0 || y % 1 != 0
+                            || Math.abs(x) >= TWO_POW_53 || y < 0)
+                        return null;
+                    double power = Program.power(x, y);
+                    if (!(Math.abs(power) < TWO_POW_53))
+                        return null;
+                    stack[sp - 2] = power;
+                    stack[sp - 1] = 0;
+                }
+                case Program.NEGATE -> stack[sp - 2] = -stack[sp - 2];
+                case Program.DUPLICATE -> {
+                    stack[sp] = stack[sp - 2];
+                    stack[sp + 1] = stack[sp - 1];
+                    sp += 2;
+                }
+                case Program.TEE -> {
+                    stack[2 * (program.maxStack + operand)] = stack[sp - 2];
+                    stack[2 * (program.maxStack + operand) + 1] = stack[sp - 1];
+                }
+                case Program.LOAD -> {
+                    stack[sp] = stack[2 * (program.maxStack + operand)];
+                    stack[sp + 1] = stack[2 * (program.maxStack + operand) + 1];
+                    sp += 2;
+                }
+                default -> throw new IllegalStateException("Unexpected value: " + program.opcode(i));
+            }
+        }
+        if (sp == 0)
+            return BigDecimal.ZERO;
+
+        double value = stack[0], error = stack[1];
+        if (!Double.isFinite(value) || !Double.isFinite(error))
+            return null;
+        return round(value, error, context);
+    }
+
+    /**
+     * Rounds the exact answer, known only to lie within error of value
+     *
+     * @param value         Answer calculated in double
+     * @param error         Bound on the distance from value to the exact answer
+     * @param context       Precision and rounding of the answer
+     * @return              The answer, or null if values within the bound round differently
+     */
+    private static BigDecimal round(double value, double error, MathContext context) {
+        if (error == 0)
+            return normalise(new BigDecimal(value).round(context));
+        int precision = context.getPrecision();
+        RoundingMode mode = context.getRoundingMode();
+        if (precision == 0 || mode == RoundingMode.UNNECESSARY)
+            return null;
+
+        // Up to 15 digits, scale the answer so the digits kept are its whole part and round that in double
+        int scale = value == 0 || precision > MAX_DOUBLE_DIGITS
+                ? -1
+                : precision - 1 - (int) Math.floor(Math.log10(Math.abs(value)));
+        if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            double power = POWERS_OF_TEN[scale];
+            double x = Math.abs(value) * power;
+            double bound = widen(error * power + Math.abs(Math.fma(Math.abs(value), power, -x)));
+            if (x - bound >= POWERS_OF_TEN[precision - 1] && x + bound < POWERS_OF_TEN[precision]) {
+                double whole = Math.floor(x);
+                double fraction = x - whole;
+                boolean half = mode == RoundingMode.HALF_UP || mode == RoundingMode.HALF_DOWN || mode == RoundingMode.HALF_EVEN;
+                // Half modes change answer at a half, the others at each whole number
+                double margin = half
+                        ? Math.abs(fraction - 0.5)
+                        : Math.min(fraction, 1 - fraction);
+                if (bound >= margin)
+                    return null;
+
+                boolean up = switch (mode) {
+                    case UP -> true;
+                    case CEILING -> value > 0;
+                    case FLOOR -> value < 0;
+                    case DOWN -> false;
+                    default -> fraction > 0.5;
+                };
+                long digits = (long) whole + (up ? 1 : 0);
+                while (digits % 10 == 0 && scale > 0) {
+                    digits /= 10;
+                    scale--;
+                }
+                return BigDecimal.valueOf(value < 0 ? -digits : digits, scale);
+            }
+        }
+
+        // Rounding is monotonic, so if both ends of the interval round alike so does everything between
+        BigDecimal exact = new BigDecimal(value);
+        BigDecimal bound = new BigDecimal(error);
+        BigDecimal low = exact.subtract(bound).round(context);
+        BigDecimal high = exact.add(bound).round(context);
+        return low.compareTo(high) == 0
+                ? normalise(high)
+                : null;
+    }
+
+    /**
+     * Evaluates in BigDecimal
+     *
+     * @param values        Value of each variable, indexed by slot
+     * @param context       Precision and rounding of the answer
+     * @return              Returns answer
+     */
+    BigDecimal evaluate(BigDecimal[] values, MathContext context) {
+        if (values.length < program.variables.length)
+            throw new IllegalArgumentException("No value for variable " + program.variables[values.length]);
+
+        MathContext working = context.getPrecision() == 0
+                ? MathContext.UNLIMITED
+                : new MathContext(context.getPrecision() + GUARD_DIGITS, RoundingMode.HALF_EVEN);
+        BigDecimal[] stack = new BigDecimal[program.maxStack + program.temporaries];
+        int temps = program.maxStack;
+        int sp = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int operand = program.operand(i);
+            switch (program.opcode(i)) {
+                case Program.CONST -> stack[sp++] = decimals[operand];
+                case Program.VARIABLE -> stack[sp++] = values[operand];
+                case Program.ADD -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].add(stack[sp], working);
+                }
+                case Program.SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].subtract(stack[sp], working);
+                }
+                case Program.MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1].multiply(stack[sp], working);
+                }
+                case Program.DIVIDE -> {
+                    sp--;
+                    if (stack[sp].signum() == 0)
+                        throw new ArithmeticException("Division by 0");
+                    stack[sp - 1] = stack[sp - 1].divide(stack[sp], working);
+                }
+                case Program.POWER -> {
+                    sp--;
+                    stack[sp - 1] = power(stack[sp - 1], stack[sp], working);
+                }
+                case Program.NEGATE -> stack[sp - 1] = stack[sp - 1].negate();
+                case Program.DUPLICATE -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case Program.TEE -> stack[temps + operand] = stack[sp - 1];
+                case Program.LOAD -> stack[sp++] = stack[temps + operand];
+                default -> throw new IllegalStateException("Unexpected value: " + program.opcode(i));
+            }
+        }
+        return sp == 0
+                ? BigDecimal.ZERO
+                : normalise(stack[0].round(context));
+    }
+
+    /**
+     * Raises x to y like the ^ operator, exactly for whole exponents
+     */
+    private static BigDecimal power(BigDecimal x, BigDecimal y, MathContext working) {
+        if (y.signum() == 0)
+            return BigDecimal.ONE;
+        if (y.stripTrailingZeros().scale() > 0 || y.abs().compareTo(BigDecimal.valueOf(999_999_999)) > 0) {
+            double power = Program.power(x.doubleValue(), y.doubleValue());
+            if (!Double.isFinite(power))
+                throw new ArithmeticException("Power is not a finite number");
+            return new BigDecimal(power);
+        }
+
+        BigDecimal power = x.pow(y.abs().intValue(), working);
+        if (y.signum() > 0)
+            return power;
+        if (power.signum() == 0)
+            throw new ArithmeticException("Division by 0");
+        return BigDecimal.ONE.divide(power, working);
+    }
+
+    /**
+     * @param value         Value of a variable
+     * @param converted     The value as a double
+     * @return              Bound on the distance between them
+     */
+    private static double error(BigDecimal value, double converted) {
+        // Integers below 10^15 convert exactly. 1E+23 has one digit, but is not an exact double
+        if (value.scale() <= 0 && value.precision() - value.scale() <= MAX_DOUBLE_DIGITS)
+            return 0;
+        return Double.isFinite(converted)
+                ? error(new BigDecimal(converted).subtract(value))
+                : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param difference    Exact difference between two values
+     * @return              The difference as a double no smaller than its magnitude
+     */
+    private static double error(BigDecimal difference) {
+        double error = Math.abs(difference.doubleValue());
+        return error == 0
+                ? 0
+                : Math.nextUp(error);
+    }
+
+    /**
+     * @param error         Sum of error bounds, possibly rounded down
+     * @return              A bound at least as large as the exact sum
+     */
+    private static double widen(double error) {
+        return error == 0
+                ? 0
+                : error * WIDEN + Double.MIN_VALUE;
+    }
+
+    /**
+     * Strips trailing zeros, without turning whole numbers into exponents
+     */
+    private static BigDecimal normalise(BigDecimal value) {
+        value = value.stripTrailingZeros();
+        return value.scale() < 0
+                ? value.setScale(0)
+                : value;
+    }
+}
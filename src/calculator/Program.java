@@ -0,0 +1,638 @@
+package calculator;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, immutable form of an RPN expression. Each instruction is an int
+ * holding the opcode in its low byte and, for CONST, the index of the value
+ * in the constant pool in the remaining bits, or for VARIABLE the slot of the
+ * variable. The interpreter runs over a double[] stack, so evaluating a program
+ * boxes nothing and, once the calling thread's scratch stack is large enough,
+ * allocates nothing.
+ *
+ * Programs with variables can also be run over whole columns of values, a
+ * block of rows at a time, so each instruction is dispatched once per block
+ * rather than once per row.
+ *
+ * NEGATE and DUPLICATE never come from an expression directly, the
+ * Optimizer introduces them. Likewise TEE, which copies the top of the
+ * stack into a temporary, and LOAD, which pushes a temporary back, are
+ * introduced by CommonSubexpressions so a repeated subexpression is
+ * calculated once. Temporaries live in the stack array, after maxStack
+ */
+public final class Program {
+    public static final int CONST = 0;
+    public static final int ADD = 1;
+    public static final int SUBTRACT = 2;
+    public static final int MULTIPLY = 3;
+    public static final int DIVIDE = 4;
+    public static final int POWER = 5;
+    public static final int VARIABLE = 6;
+    public static final int NEGATE = 7;
+    public static final int DUPLICATE = 8;
+    public static final int TEE = 9;
+    public static final int LOAD = 10;
+
+    /**
+     * Number of rows run together when evaluating columns
+     */
+    public static final int BLOCK_SIZE = 512;
+
+    private static final int OPCODE_BITS = 8;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    // Operands are packed above the opcode, so each index must fit in the remaining bits
+    static final int MAX_OPERANDS = 1 << (Integer.SIZE - OPCODE_BITS);
+
+    // Per-thread operand stack reused across evaluations
+    private static final ThreadLocal<double[]> STACKS = ThreadLocal.withInitial(() -> new double[64]);
+    private static final ThreadLocal<double[][]> BLOCKS = ThreadLocal.withInitial(() -> new double[0][]);
+    private static final double[] NO_VALUES = {};
+
+    final int[] code;
+    final double[] constants;
+    final String[] variables;
+    final int maxStack;
+    final int temporaries;
+    // Text each constant was written as, kept only by Parser.parseLiterals, otherwise null
+    final String[] literals;
+
+    /**
+     * @param code          Instructions
+     * @param constants     Constant pool
+     * @param variables     Variable names, indexed by slot
+     * @param maxStack      Deepest the operand stack gets while running
+     * @param temporaries   Number of temporaries used by TEE and LOAD
+     */
+    Program(int[] code, double[] constants, String[] variables, int maxStack, int temporaries) {
+        this(code, constants, variables, maxStack, temporaries, null);
+    }
+
+    /**
+     * @param code          Instructions
+     * @param constants     Constant pool
+     * @param variables     Variable names, indexed by slot
+     * @param maxStack      Deepest the operand stack gets while running
+     * @param temporaries   Number of temporaries used by TEE and LOAD
+     * @param literals      Text each constant was written as, or null if not kept
+     */
+    Program(int[] code, double[] constants, String[] variables, int maxStack, int temporaries, String[] literals) {
+        this.code = code;
+        this.constants = constants;
+        this.variables = variables;
+        this.maxStack = maxStack;
+        this.temporaries = temporaries;
+        this.literals = literals;
+    }
+
+    /**
+     * Compiles an RPN expression such as the output of Calculator.rpn
+     *
+     * @param postFix       Expression in RPN format
+     * @param i             Index in postFix to start from
+     * @return              The compiled program
+     */
+    public static Program compile(List<String> postFix, int i) {
+        Builder builder = new Builder(postFix.size() - i);
+        for (; i < postFix.size(); i++) {
+            String str = postFix.get(i);
+            int opcode = opcode(str);
+            if (opcode >= 0) {
+                builder.operator(opcode);
+            } else if (isVariable(str)) {
+                builder.variable(str);
+            } else {
+                double value;
+                try {
+                    value = Double.parseDouble(str);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Extra opening bracket");
+                }
+                builder.constant(value);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs a program without variables on the calling thread's scratch stack
+     *
+     * @return              Returns answer
+     */
+    public double run() {
+        return run(NO_VALUES);
+    }
+
+    /**
+     * Runs the program on the calling thread's scratch stack
+     *
+     * @param values        Value of each variable, indexed by slot
+     * @return              Returns answer
+     */
+    public double run(double[] values) {
+        double[] stack = STACKS.get();
+        if (stack.length < maxStack + temporaries) {
+            stack = new double[Math.max(maxStack + temporaries, stack.length * 2)];
+            STACKS.set(stack);
+        }
+        return run(values, stack);
+    }
+
+    /**
+     * Runs the program
+     *
+     * @param values        Value of each variable, indexed by slot
+     * @param stack         Operand stack, at least maxStack() + temporaries() long
+     * @return              Returns answer
+     */
+    public double run(double[] values, double[] stack) {
+        if (values.length < variables.length)
+            throw new IllegalArgumentException("No value for variable " + variables[values.length]);
+
+        int[] code = this.code;
+        int temps = maxStack;
+        int sp = 0;
+        for (int instruction : code) {
+            switch (instruction & OPCODE_MASK) {
+                case CONST -> stack[sp++] = constants[instruction >>> OPCODE_BITS];
+                case VARIABLE -> stack[sp++] = values[instruction >>> OPCODE_BITS];
+                case ADD -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                }
+                case SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                }
+                case MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                }
+                case DIVIDE -> {
+                    sp--;
+                    stack[sp - 1] = divide(stack[sp - 1], stack[sp]);
+                }
+                case POWER -> {
+                    sp--;
+                    stack[sp - 1] = power(stack[sp - 1], stack[sp]);
+                }
+                case NEGATE -> stack[sp - 1] = -stack[sp - 1];
+                case DUPLICATE -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case TEE -> stack[temps + (instruction >>> OPCODE_BITS)] = stack[sp - 1];
+                case LOAD -> stack[sp++] = stack[temps + (instruction >>> OPCODE_BITS)];
+                default -> throw new IllegalStateException("Unexpected value: " + instruction);
+            }
+        }
+        return sp == 0
+                ? 0
+                : stack[0];
+    }
+
+    /**
+     * Runs the program once per row over columns of variable values. Rows are
+     * taken BLOCK_SIZE at a time and every instruction is applied to the whole
+     * block, so the interpreter loop runs once per block instead of once per row.
+     * Arithmetic on a block uses SIMD lanes where BlockKernels.best() allows
+     *
+     * @param columns       Values of each variable, indexed by slot, each at least rows long
+     * @param out           Destination of the answers, one per row
+     * @param rows          Number of rows to evaluate
+     */
+    public void run(double[][] columns, double[] out, int rows) {
+        run(columns, out, rows, BlockKernels.best());
+    }
+
+    /**
+     * Runs the program once per row over columns of variable values, a block at a time
+     *
+     * @param columns       Values of each variable, indexed by slot, each at least rows long
+     * @param out           Destination of the answers, one per row
+     * @param rows          Number of rows to evaluate
+     * @param kernels       Operations applied to each block
+     */
+    void run(double[][] columns, double[] out, int rows, BlockKernels kernels) {
+        if (columns.length < variables.length)
+            throw new IllegalArgumentException("No column for variable " + variables[columns.length]);
+        for (int slot = 0; slot < variables.length; slot++)
+            if (columns[slot].length < rows)
+                throw new IllegalArgumentException("Column " + variables[slot] + " has fewer than " + rows + " rows");
+        if (out.length < rows)
+            throw new IllegalArgumentException("Output has fewer than " + rows + " rows");
+
+        double[][] stack = blocks();
+        for (int start = 0; start < rows; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, rows - start);
+            runBlock(columns, start, length, stack, kernels);
+            if (code.length == 0)
+                Arrays.fill(out, start, start + length, 0);
+            else
+                System.arraycopy(stack[0], 0, out, start, length);
+        }
+    }
+
+    /**
+     * Runs the program once per row over columns held in buffers, such as
+     * mapped files, a block at a time. Only a block of each column is
+     * copied onto the heap at once
+     *
+     * @param columns       Values of each variable, indexed by slot, each at least rows long
+     * @param out           Destination of the answers, one per row
+     * @param rows          Number of rows to evaluate
+     * @param kernels       Operations applied to each block
+     */
+    void run(DoubleBuffer[] columns, DoubleBuffer out, int rows, BlockKernels kernels) {
+        if (columns.length < variables.length)
+            throw new IllegalArgumentException("No column for variable " + variables[columns.length]);
+
+        double[][] stack = blocks();
+        double[][] inputs = new double[variables.length][BLOCK_SIZE];
+        for (int start = 0; start < rows; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, rows - start);
+            for (int slot = 0; slot < variables.length; slot++)
+                columns[slot].get(start, inputs[slot], 0, length);
+            runBlock(inputs, 0, length, stack, kernels);
+            if (code.length == 0)
+                Arrays.fill(stack[0], 0, length, 0);
+            out.put(start, stack[0], 0, length);
+        }
+    }
+
+    /**
+     * Applies each instruction to one block of rows
+     */
+    private void runBlock(double[][] columns, int start, int length, double[][] stack, BlockKernels kernels) {
+        int sp = 0;
+        for (int instruction : code) {
+            switch (instruction & OPCODE_MASK) {
+                case CONST -> Arrays.fill(stack[sp++], 0, length, constants[instruction >>> OPCODE_BITS]);
+                case VARIABLE -> System.arraycopy(columns[instruction >>> OPCODE_BITS], start, stack[sp++], 0, length);
+                case ADD -> {
+                    sp--;
+                    kernels.add(stack[sp - 1], stack[sp], length);
+                }
+                case SUBTRACT -> {
+                    sp--;
+                    kernels.subtract(stack[sp - 1], stack[sp], length);
+                }
+                case MULTIPLY -> {
+                    sp--;
+                    kernels.multiply(stack[sp - 1], stack[sp], length);
+                }
+                case DIVIDE -> {
+                    sp--;
+                    kernels.divide(stack[sp - 1], stack[sp], length);
+                }
+                case POWER -> {
+                    double[] x = stack[sp - 2], y = stack[--sp];
+                    for (int j = 0; j < length; j++)
+                        x[j] = power(x[j], y[j]);
+                }
+                case NEGATE -> kernels.negate(stack[sp - 1], length);
+                case DUPLICATE -> {
+                    System.arraycopy(stack[sp - 1], 0, stack[sp], 0, length);
+                    sp++;
+                }
+                case TEE -> System.arraycopy(stack[sp - 1], 0, stack[maxStack + (instruction >>> OPCODE_BITS)], 0, length);
+                case LOAD -> System.arraycopy(stack[maxStack + (instruction >>> OPCODE_BITS)], 0, stack[sp++], 0, length);
+                default -> throw new IllegalStateException("Unexpected value: " + instruction);
+            }
+        }
+    }
+
+    /**
+     * @return              The calling thread's block stack, grown to maxStack + temporaries blocks
+     */
+    private double[][] blocks() {
+        double[][] stack = BLOCKS.get();
+        int blocks = maxStack + temporaries;
+        if (stack.length < blocks) {
+            double[][] grown = Arrays.copyOf(stack, blocks);
+            for (int i = stack.length; i < blocks; i++)
+                grown[i] = new double[BLOCK_SIZE];
+            BLOCKS.set(grown);
+            stack = grown;
+        }
+        return stack;
+    }
+
+    /**
+     * Divides two values, rejecting division by zero like Calculator.divide
+     *
+     * @param x     First value
+     * @param y     Second Value
+     * @return      Returns x / y
+     */
+    static double divide(double x, double y) {
+        if (y == 0)
+            throw new ArithmeticException("Division by 0");
+        return x / y;
+    }
+
+    /**
+     * Performs an exponent calculation like the ^ operator always has,
+     * taking 1 / x^|y| for negative exponents. Timed while a calculator
+     * with metrics is running the program
+     *
+     * @param x     First value
+     * @param y     Second Value
+     * @return      Returns x ^ y
+     */
+    static double power(double x, double y) {
+        return CalculatorMetrics.timingPowers
+                ? CalculatorMetrics.power(x, y)
+                : PowerEngine.power(x, y, PowerEngine.DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @return              Number of instructions
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * @param i             Instruction index
+     * @return              Opcode of the instruction
+     */
+    public int opcode(int i) {
+        return code[i] & OPCODE_MASK;
+    }
+
+    /**
+     * @param i             Instruction index
+     * @return              Operand of the instruction, e.g. the constant index of CONST
+     */
+    public int operand(int i) {
+        return code[i] >>> OPCODE_BITS;
+    }
+
+    /**
+     * @return              Variable names, indexed by slot
+     */
+    public List<String> variables() {
+        return List.of(variables);
+    }
+
+    /**
+     * @param i             Index in the constant pool
+     * @return              The constant
+     */
+    public double constant(int i) {
+        return constants[i];
+    }
+
+    /**
+     * @return              Deepest the operand stack gets while running
+     */
+    public int maxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @return              Number of temporaries holding repeated subexpressions
+     */
+    public int temporaries() {
+        return temporaries;
+    }
+
+    /**
+     * @return              The program in RPN format, e.g. 1.0 2.0 +
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < code.length; i++) {
+            if (i > 0)
+                sb.append(' ');
+            if (opcode(i) == CONST)
+                sb.append(constants[operand(i)]);
+            else if (opcode(i) == VARIABLE)
+                sb.append(variables[operand(i)]);
+            else if (opcode(i) == TEE || opcode(i) == LOAD)
+                sb.append(symbol(opcode(i))).append(':').append(operand(i));
+            else
+                sb.append(symbol(opcode(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param str           Element of an RPN expression
+     * @return              The opcode of an operator, or -1 for anything else
+     */
+    private static int opcode(String str) {
+        return switch (str) {
+            case "+" -> ADD;
+            case "-" -> SUBTRACT;
+            case "*" -> MULTIPLY;
+            case "/" -> DIVIDE;
+            case "^" -> POWER;
+            default -> -1;
+        };
+    }
+
+    /**
+     * @param str           Element of an RPN expression
+     * @return              Whether the element is a variable name
+     */
+    private static boolean isVariable(String str) {
+        if (str.isEmpty() || !(Character.isLetter(str.charAt(0)) || str.charAt(0) == '_'))
+            return false;
+        for (int i = 1; i < str.length(); i++)
+            if (!(Character.isLetterOrDigit(str.charAt(i)) || str.charAt(i) == '_'))
+                return false;
+        return true;
+    }
+
+    private static String symbol(int opcode) {
+        return switch (opcode) {
+            case ADD -> "+";
+            case SUBTRACT -> "-";
+            case MULTIPLY -> "*";
+            case DIVIDE -> "/";
+            case POWER -> "^";
+            case NEGATE -> "neg";
+            case DUPLICATE -> "dup";
+            case TEE -> "tee";
+            case LOAD -> "load";
+            default -> throw new IllegalStateException("Unexpected value: " + opcode);
+        };
+    }
+
+    /**
+     * Accumulates instructions while tracking the operand stack depth,
+     * so malformed expressions are rejected when they are compiled
+     */
+    static final class Builder {
+        private int[] code;
+        private double[] constants;
+        private String[] literals;
+        private final Map<String, Integer> slots = new LinkedHashMap<>();
+        private int size;
+        private int constantCount;
+        private int depth;
+        private int maxStack;
+        private int temporaries;
+
+        /**
+         * @param capacity      Expected number of instructions
+         */
+        Builder(int capacity) {
+            code = new int[Math.max(capacity, 4)];
+            constants = new double[Math.max(capacity / 2 + 1, 4)];
+        }
+
+        /**
+         * @param capacity      Expected number of instructions
+         * @param variables     Names given the first slots, in order, whether or not they are used
+         */
+        Builder(int capacity, String[] variables) {
+            this(capacity);
+            for (String name : variables)
+                slots.put(name, slots.size());
+        }
+
+        /**
+         * Adds an instruction pushing a constant
+         *
+         * @param value         The constant
+         */
+        void constant(double value) {
+            constant(value, null);
+        }
+
+        /**
+         * Adds an instruction pushing a constant, keeping the text it was written as
+         *
+         * @param value         The constant
+         * @param literal       Text of the number literal, or null if it was not written
+         */
+        void constant(double value, String literal) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, constantCount * 2);
+                if (literals != null)
+                    literals = Arrays.copyOf(literals, constants.length);
+            }
+            if (literal != null && literals == null)
+                literals = new String[constants.length];
+            constants[constantCount] = value;
+            if (literals != null)
+                literals[constantCount] = literal;
+            emit(operand(constantCount++, "constants") | CONST);
+            maxStack = Math.max(maxStack, ++depth);
+        }
+
+        /**
+         * Adds an instruction pushing the value of a variable. Each name gets
+         * a slot the first time it is seen
+         *
+         * @param name          Variable name
+         */
+        void variable(String name) {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(name, slot);
+            }
+            emit(operand(slot, "variables") | VARIABLE);
+            maxStack = Math.max(maxStack, ++depth);
+        }
+
+        /**
+         * Adds a binary operator
+         *
+         * @param opcode        One of ADD, SUBTRACT, MULTIPLY, DIVIDE or POWER
+         */
+        void operator(int opcode) {
+            if (depth < 2)
+                throw new RuntimeException("Extra operator somewhere");
+            depth--;
+            emit(opcode);
+        }
+
+        /**
+         * Adds an instruction negating the value on top of the stack
+         */
+        void negate() {
+            if (depth < 1)
+                throw new RuntimeException("Extra operator somewhere");
+            emit(NEGATE);
+        }
+
+        /**
+         * Adds an instruction pushing a copy of the value on top of the stack
+         */
+        void duplicate() {
+            if (depth < 1)
+                throw new RuntimeException("Extra operator somewhere");
+            emit(DUPLICATE);
+            maxStack = Math.max(maxStack, ++depth);
+        }
+
+        /**
+         * Adds an instruction copying the value on top of the stack into a temporary
+         *
+         * @param temporary     Index of the temporary
+         */
+        void tee(int temporary) {
+            if (depth < 1)
+                throw new RuntimeException("Extra operator somewhere");
+            int instruction = operand(temporary, "temporaries") | TEE;
+            temporaries = Math.max(temporaries, temporary + 1);
+            emit(instruction);
+        }
+
+        /**
+         * Adds an instruction pushing the value of a temporary
+         *
+         * @param temporary     Index of the temporary, set by an earlier tee
+         */
+        void load(int temporary) {
+            if (temporary >= temporaries)
+                throw new IllegalStateException("Temporary " + temporary + " loaded before it is set");
+            emit(operand(temporary, "temporaries") | LOAD);
+            maxStack = Math.max(maxStack, ++depth);
+        }
+
+        /**
+         * @return              Number of instructions added so far
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index         Index of a constant, variable or temporary
+         * @param kind          What it indexes, for the message
+         * @return              The index shifted into the operand bits of an instruction
+         */
+        private static int operand(int index, String kind) {
+            if (index >= MAX_OPERANDS)
+                throw new IllegalArgumentException("Expression too large: more than " + MAX_OPERANDS + " " + kind);
+            return index << OPCODE_BITS;
+        }
+
+        private void emit(int instruction) {
+            if (size == code.length)
+                code = Arrays.copyOf(code, size * 2);
+            code[size++] = instruction;
+        }
+
+        /**
+         * @return              The finished program
+         */
+        Program build() {
+            if (depth > 1)
+                throw new RuntimeException("Extra operand somewhere");
+            return new Program(Arrays.copyOf(code, size), Arrays.copyOf(constants, constantCount),
+                    slots.keySet().toArray(new String[0]), maxStack, temporaries,
+                    literals == null ? null : Arrays.copyOf(literals, constantCount));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled expressions saved to a file, so that a later process can load
+ * them without lexing, parsing or optimizing any of them.
+ *
+ * The file is big-endian: a header of magic, format version, flags and
+ * number of expressions, then the CRC32 of everything after the header,
+ * then each expression as its normalised text, its code, constants,
+ * variable names, maxStack, temporaries and deduplication ratio. Text is
+ * UTF-8 after its length in bytes, arrays follow their length.
+ *
+ * Loading memory-maps the file, checks the checksum and that every program
+ * stays within its constants, variables and stack, and rejects a file of
+ * another version, or one written with another fastMath setting, as its
+ * programs were optimized differently. The version is bumped whenever the
+ * opcodes or the layout change
+ */
+public final class ProgramStore {
+    static final int MAGIC = 0x43414C50; // "CALP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int FAST_MATH = 1;
+
+    private final Map<String, Expression> expressions;
+
+    private ProgramStore(Map<String, Expression> expressions) {
+        this.expressions = Collections.unmodifiableMap(expressions);
+    }
+
+    /**
+     * Saves the expressions a calculator has cached
+     *
+     * @param file          File to write, replacing any existing one
+     * @param calculator    Calculator whose cache is saved
+     * @return              Returns the number of expressions saved
+     * @throws IOException  If the file cannot be written
+     */
+    public static int save(Path file, Calculator calculator) throws IOException {
+        Collection<Expression> cached = calculator.getCache().expressions();
+        save(file, cached, calculator.isFastMath());
+        return cached.size();
+    }
+
+    /**
+     * Saves compiled expressions. The file is written beside its
+     * destination then moved over it, so a reader never sees half a file
+     *
+     * @param file          File to write, replacing any existing one
+     * @param expressions   Expressions compiled by a calculator with the given fastMath setting
+     * @param fastMath      Whether fastMath was on when they were compiled
+     * @throws IOException  If the file cannot be written
+     */
+    public static void save(Path file, Collection<Expression> expressions, boolean fastMath) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Expression expression : expressions) {
+            Program program = expression.program();
+            writeString(out, expression.toString());
+            out.writeInt(program.code.length);
+            for (int instruction : program.code)
+                out.writeInt(instruction);
+            out.writeInt(program.constants.length);
+            for (double constant : program.constants)
+                out.writeDouble(constant);
+            out.writeInt(program.variables.length);
+            for (String variable : program.variables)
+                writeString(out, variable);
+            out.writeInt(program.maxStack);
+            out.writeInt(program.temporaries);
+            out.writeDouble(expression.deduplicationRatio());
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(fastMath ? FAST_MATH : 0)
+                .putInt(expressions.size())
+                .putInt((int) crc.getValue())
+                .flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            channel.write(new ByteBuffer[] {header, ByteBuffer.wrap(payload)});
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a saved file of expressions, and adds them to the calculator's cache
+     *
+     * @param file          File written by save
+     * @param calculator    Calculator whose tiering the expressions use, and whose cache they are added to
+     * @return              Returns the store of loaded expressions
+     * @throws IOException  If the file cannot be read, is corrupt, or is of another version
+     * @throws IllegalArgumentException If the file was written with another fastMath setting than the calculator's
+     */
+    public static ProgramStore load(Path file, Calculator calculator) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Program store " + file + " is too large");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a program store");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Program store " + file + " is version " + version + ", expected " + VERSION);
+        boolean fastMath = (buffer.getInt() & FAST_MATH) != 0;
+        if (fastMath != calculator.isFastMath())
+            throw new IllegalArgumentException("Program store " + file + " was written with fastMath " + fastMath);
+        int count = buffer.getInt();
+        int checksum = buffer.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice());
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Program store " + file + " is corrupt: checksum mismatch");
+
+        // Every expression takes more than a byte, so a count above the bytes left is corrupt
+        if (count < 0 || count > buffer.remaining())
+            throw new IOException("Program store " + file + " is corrupt: " + count + " expressions");
+        Map<String, Expression> expressions = new HashMap<>((int) (count / 0.75f) + 1);
+        try {
+            for (int i = 0; i < count; i++) {
+                String text = readString(buffer);
+                int[] code = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(code);
+                buffer.position(buffer.position() + code.length * Integer.BYTES);
+                double[] constants = new double[buffer.getInt()];
+                buffer.asDoubleBuffer().get(constants);
+                buffer.position(buffer.position() + constants.length * Double.BYTES);
+                String[] variables = new String[buffer.getInt()];
+                for (int slot = 0; slot < variables.length; slot++)
+                    variables[slot] = readString(buffer);
+                Program program = new Program(code, constants, variables, buffer.getInt(), buffer.getInt());
+                double ratio = buffer.getDouble();
+
+                String problem = verify(program);
+                if (problem != null)
+                    throw new IOException("Program store " + file + " is corrupt: " + text + " " + problem);
+                Expression expression = new Expression(text, program, calculator.getTiering(), ratio);
+                expressions.put(text, expression);
+                calculator.getCache().put(text, expression);
+            }
+        } catch (RuntimeException e) {
+            // A length that runs past the end of the file, or a negative one
+            throw new IOException("Program store " + file + " is corrupt", e);
+        }
+        return new ProgramStore(expressions);
+    }
+
+    /**
+     * Checks that a program only reads constants, variables and
+     * temporaries it has, and keeps its stack between empty and maxStack
+     *
+     * @param program       Program read from a file
+     * @return              What is wrong with it, or null if nothing
+     */
+    static String verify(Program program) {
+        if (program.maxStack < 0 || program.temporaries < 0)
+            return "has a negative stack size";
+        int depth = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int operand = program.operand(i);
+            int limit = switch (program.opcode(i)) {
+                case Program.CONST -> program.constants.length;
+                case Program.VARIABLE -> program.variables.length;
+                case Program.TEE, Program.LOAD -> program.temporaries;
+                default -> 1;
+            };
+            if (operand < 0 || operand >= limit)
+                return "has operand " + operand + " out of range at " + i;
+            int pops;
+            int pushes;
+            switch (program.opcode(i)) {
+                case Program.CONST, Program.VARIABLE, Program.LOAD -> {
+                    pops = 0;
+                    pushes = 1;
+                }
+                case Program.ADD, Program.SUBTRACT, Program.MULTIPLY, Program.DIVIDE, Program.POWER -> {
+                    pops = 2;
+                    pushes = 1;
+                }
+                case Program.NEGATE, Program.TEE -> {
+                    pops = 1;
+                    pushes = 1;
+                }
+                case Program.DUPLICATE -> {
+                    pops = 1;
+                    pushes = 2;
+                }
+                default -> {
+                    return "has unknown opcode " + program.opcode(i) + " at " + i;
+                }
+            }
+            if (depth < pops)
+                return "underflows its stack at " + i;
+            depth += pushes - pops;
+            if (depth > program.maxStack)
+                return "overflows its stack at " + i;
+        }
+        if (depth != (program.size() == 0 ? 0 : 1))
+            return "leaves " + depth + " values on its stack";
+        return null;
+    }
+
+    /**
+     * @param exp           User expression
+     * @return              The loaded expression, or null if the store does not hold it
+     */
+    public Expression get(String exp) {
+        return expressions.get(Calculator.stripWhitespace(exp));
+    }
+
+    /**
+     * @return              Every loaded expression by its normalised text
+     */
+    public Map<String, Expression> expressions() {
+        return expressions;
+    }
+
+    /**
+     * @return              Number of loaded expressions
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,490 @@
+package calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An exact fraction, always in lowest terms with a positive denominator.
+ *
+ * Numerator and denominator are held as longs while they fit, with each
+ * operation checking for overflow and moving to BigInteger when it happens.
+ * Long fractions are reduced with PowerEngine.gcd, the binary GCD, and
+ * cross-cancelled before multiplying so intermediate values stay small.
+ * No operation goes through floating point. Instances are immutable
+ */
+public final class Rational implements Comparable<Rational> {
+    public static final Rational ZERO = new Rational(0, 1);
+    public static final Rational ONE = new Rational(1, 1);
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    // Doubles below this are integers whose quotient is correctly rounded
+    private static final long TWO_POW_53 = 1L << 53;
+    // Exponent of the smallest subnormal double, 2^-1074
+    private static final int MIN_EXPONENT = -1074;
+
+    // The long form is used when bigNumerator is null. Long.MIN_VALUE is kept out of it, so negation cannot overflow
+    private final long numerator;
+    private final long denominator;
+    private final BigInteger bigNumerator;
+    private final BigInteger bigDenominator;
+
+    private Rational(long numerator, long denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+        this.bigNumerator = null;
+        this.bigDenominator = null;
+    }
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = 0;
+        this.denominator = 0;
+        this.bigNumerator = numerator;
+        this.bigDenominator = denominator;
+    }
+
+    /**
+     * @param value         A whole number
+     * @return              The value as a fraction over 1
+     */
+    public static Rational valueOf(long value) {
+        return valueOf(value, 1);
+    }
+
+    /**
+     * @param numerator     Numerator
+     * @param denominator   Denominator, not 0
+     * @return              The fraction in lowest terms
+     */
+    public static Rational valueOf(long numerator, long denominator) {
+        if (denominator == 0)
+            throw new ArithmeticException("Division by 0");
+        if (numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE)
+            return valueOf(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+        return reduced(numerator, denominator);
+    }
+
+    /**
+     * @param numerator     Numerator
+     * @param denominator   Denominator, not 0
+     * @return              The fraction in lowest terms
+     */
+    public static Rational valueOf(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0)
+            throw new ArithmeticException("Division by 0");
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if (!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return of(numerator, denominator);
+    }
+
+    /**
+     * @param value         A decimal, e.g. 0.125
+     * @return              The decimal as a fraction, e.g. 1/8
+     */
+    public static Rational valueOf(BigDecimal value) {
+        BigInteger unscaled = value.unscaledValue();
+        int scale = value.scale();
+        return scale <= 0
+                ? valueOf(unscaled.multiply(BigInteger.TEN.pow(-scale)), BigInteger.ONE)
+                : valueOf(unscaled, BigInteger.TEN.pow(scale));
+    }
+
+    /**
+     * Reads a double as the shortest decimal that gives it, the way a
+     * number written in an expression is meant, so 0.1 is 1/10
+     *
+     * @param value         A finite double
+     * @return              The decimal as a fraction
+     */
+    public static Rational valueOf(double value) {
+        if (!Double.isFinite(value))
+            throw new ArithmeticException(value + " is not a rational number");
+        // Casting saturates at 2^63, so only doubles below it in magnitude are read as a long
+        if (value == (long) value && Math.abs(value) < 0x1p63)
+            return valueOf((long) value);
+        return valueOf(BigDecimal.valueOf(value));
+    }
+
+    /**
+     * Reduces a long fraction whose parts are not Long.MIN_VALUE
+     */
+    private static Rational reduced(long numerator, long denominator) {
+        if (denominator < 0) {
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+        long gcd = PowerEngine.gcd(numerator, denominator);
+        return gcd == 1
+                ? new Rational(numerator, denominator)
+                : new Rational(numerator / gcd, denominator / gcd);
+    }
+
+    /**
+     * Chooses the long form for a reduced fraction when it fits
+     */
+    private static Rational of(BigInteger numerator, BigInteger denominator) {
+        return fitsLong(numerator) && fitsLong(denominator)
+                ? new Rational(numerator.longValue(), denominator.longValue())
+                : new Rational(numerator, denominator);
+    }
+
+    private static boolean fitsLong(BigInteger value) {
+        return value.bitLength() < 64 && !value.equals(LONG_MIN);
+    }
+
+    /**
+     * @param other         Value to add
+     * @return              Returns this + other
+     */
+    public Rational add(Rational other) {
+        if (bigNumerator == null && other.bigNumerator == null) {
+            long a = numerator, b = denominator, c = other.numerator, d = other.denominator;
+            // a/b + c/d with g = gcd(b, d) is (a*(d/g) + c*(b/g)) / (b/g*d), and only g can divide out
+            long g = PowerEngine.gcd(b, d);
+            long ad = multiply(a, d / g), cb = multiply(c, b / g);
+            if (ad != Long.MIN_VALUE && cb != Long.MIN_VALUE) {
+                long sum = ad + cb;
+                if (sum == 0)
+                    return ZERO;
+                // The sum overflowed if its sign differs from both addends'
+                if (((ad ^ sum) & (cb ^ sum)) >= 0 && sum != Long.MIN_VALUE) {
+                    long g2 = PowerEngine.gcd(sum, g);
+                    long den = multiply(b / g, d / g2);
+                    if (den != Long.MIN_VALUE)
+                        return new Rational(sum / g2, den);
+                }
+            }
+        }
+        return valueOf(bigNumerator().multiply(other.bigDenominator()).add(other.bigNumerator().multiply(bigDenominator())),
+                bigDenominator().multiply(other.bigDenominator()));
+    }
+
+    /**
+     * @param other         Value to subtract
+     * @return              Returns this - other
+     */
+    public Rational subtract(Rational other) {
+        return add(other.negate());
+    }
+
+    /**
+     * @param other         Value to multiply by
+     * @return              Returns this * other
+     */
+    public Rational multiply(Rational other) {
+        if (bigNumerator == null && other.bigNumerator == null) {
+            if (numerator == 0 || other.numerator == 0)
+                return ZERO;
+            // Cross-cancel first, so the products are already in lowest terms
+            long g1 = PowerEngine.gcd(numerator, other.denominator);
+            long g2 = PowerEngine.gcd(other.numerator, denominator);
+            long num = multiply(numerator / g1, other.numerator / g2);
+            long den = multiply(denominator / g2, other.denominator / g1);
+            if (num != Long.MIN_VALUE && den != Long.MIN_VALUE)
+                return new Rational(num, den);
+        }
+        return valueOf(bigNumerator().multiply(other.bigNumerator()), bigDenominator().multiply(other.bigDenominator()));
+    }
+
+    /**
+     * @param other         Value to divide by
+     * @return              Returns this / other
+     */
+    public Rational divide(Rational other) {
+        if (other.signum() == 0)
+            throw new ArithmeticException("Division by 0");
+        return multiply(other.reciprocal());
+    }
+
+    /**
+     * Raises the fraction to an integer power by repeated squaring. The
+     * numerator and denominator stay coprime, so nothing is reduced
+     *
+     * @param exponent      Any integer, negative for the reciprocal
+     * @return              Returns this ^ exponent
+     */
+    public Rational pow(int exponent) {
+        if (exponent < 0) {
+            if (signum() == 0)
+                throw new ArithmeticException("Division by 0");
+            return reciprocal().pow(-exponent);
+        }
+        if (bigNumerator == null) {
+            long num = pow(numerator, exponent);
+            long den = pow(denominator, exponent);
+            if (num != Long.MIN_VALUE && den != Long.MIN_VALUE)
+                return new Rational(num, den);
+        }
+        return of(bigNumerator().pow(exponent), bigDenominator().pow(exponent));
+    }
+
+    /**
+     * Finds the n-th root when it is itself a fraction, e.g. 8/27 root 3 is 2/3
+     *
+     * @param n             The exponent of the root, positive
+     * @return              The root, or null if it is irrational
+     */
+    public Rational root(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("Root exponent must be positive: " + n);
+        if (signum() < 0)
+            throw new RuntimeException("Imaginary number");
+        if (n == 1 || signum() == 0 || isOne())
+            return this;
+        BigInteger num = root(bigNumerator(), n);
+        BigInteger den = num == null ? null : root(bigDenominator(), n);
+        return den == null
+                ? null
+                : of(num, den);
+    }
+
+    /**
+     * @return              The exact integer n-th root of a positive value, or null if there is none
+     */
+    private static BigInteger root(BigInteger value, int n) {
+        if (value.equals(BigInteger.ONE))
+            return value;
+        // 2^n is the smallest n-th power above 1
+        if (value.bitLength() <= n)
+            return null;
+        BigInteger root = n == 2
+                ? value.sqrt()
+                : newtonRoot(value, n);
+        return root.pow(n).equals(value)
+                ? root
+                : null;
+    }
+
+    /**
+     * @return              floor(value root n), by Newton's method in integers
+     */
+    private static BigInteger newtonRoot(BigInteger value, int n) {
+        BigInteger big = BigInteger.valueOf(n);
+        BigInteger less = BigInteger.valueOf(n - 1);
+        // Start above the root, from a power of two, and descend until the step stops shrinking it
+        BigInteger root = BigInteger.ONE.shiftLeft(value.bitLength() / n + 1);
+        while (true) {
+            BigInteger next = less.multiply(root).add(value.divide(root.pow(n - 1))).divide(big);
+            if (next.compareTo(root) >= 0)
+                return root;
+            root = next;
+        }
+    }
+
+    /**
+     * @return              Returns -this
+     */
+    public Rational negate() {
+        return bigNumerator == null
+                ? new Rational(-numerator, denominator)
+                : of(bigNumerator.negate(), bigDenominator);
+    }
+
+    /**
+     * @return              Returns 1 / this
+     */
+    public Rational reciprocal() {
+        if (signum() == 0)
+            throw new ArithmeticException("Division by 0");
+        if (bigNumerator == null)
+            return numerator < 0
+                    ? new Rational(-denominator, -numerator)
+                    : new Rational(denominator, numerator);
+        return bigNumerator.signum() < 0
+                ? of(bigDenominator.negate(), bigNumerator.negate())
+                : of(bigDenominator, bigNumerator);
+    }
+
+    /**
+     * @return              -1, 0 or 1 as the value is negative, zero or positive
+     */
+    public int signum() {
+        return bigNumerator == null
+                ? Long.signum(numerator)
+                : bigNumerator.signum();
+    }
+
+    /**
+     * @return              Returns true if the denominator is 1
+     */
+    public boolean isInteger() {
+        return bigNumerator == null
+                ? denominator == 1
+                : bigDenominator.equals(BigInteger.ONE);
+    }
+
+    private boolean isOne() {
+        return bigNumerator == null && numerator == 1 && denominator == 1;
+    }
+
+    /**
+     * @return              The numerator, negative for negative values
+     */
+    public BigInteger numerator() {
+        return bigNumerator();
+    }
+
+    /**
+     * @return              The denominator, always positive
+     */
+    public BigInteger denominator() {
+        return bigDenominator();
+    }
+
+    /**
+     * @return              Returns true if the numerator and denominator both fit in a long
+     */
+    public boolean fitsLong() {
+        return bigNumerator == null;
+    }
+
+    /**
+     * @return              The numerator, if fitsLong()
+     */
+    public long longNumerator() {
+        if (bigNumerator != null)
+            throw new ArithmeticException("Numerator does not fit in a long");
+        return numerator;
+    }
+
+    /**
+     * @return              The denominator, if fitsLong()
+     */
+    public long longDenominator() {
+        if (bigNumerator != null)
+            throw new ArithmeticException("Denominator does not fit in a long");
+        return denominator;
+    }
+
+    /**
+     * @return              The nearest double, ties to even, for display. Exact values stay in the Rational
+     */
+    public double doubleValue() {
+        // Both parts are exact doubles, so one division rounds correctly
+        if (bigNumerator == null && Math.abs(numerator) < TWO_POW_53 && denominator < TWO_POW_53)
+            return (double) numerator / denominator;
+
+        BigInteger n = bigNumerator().abs();
+        BigInteger d = bigDenominator();
+        if (n.signum() == 0)
+            return 0;
+        // The binary exponent of n / d, from the lengths of its parts, less one if n is below d shifted to it
+        int exponent = n.bitLength() - d.bitLength();
+        if (shift(n, -exponent).compareTo(shift(d, exponent)) < 0)
+            exponent--;
+        // Unit of the last place kept, 53 bits below the top, or the smallest subnormal
+        int unit = Math.max(exponent - 52, MIN_EXPONENT);
+
+        // Divides once to a whole number of units, then rounds the remainder half to even
+        BigInteger[] division = shift(n, -unit).divideAndRemainder(shift(d, unit));
+        BigInteger units = division[0];
+        int half = division[1].shiftLeft(1).compareTo(shift(d, unit));
+        if (half > 0 || (half == 0 && units.testBit(0)))
+            units = units.add(BigInteger.ONE);
+        // At most 2^53 units, so exact, and scalb is exact or overflows to infinity
+        double magnitude = Math.scalb(units.doubleValue(), unit);
+        return signum() < 0
+                ? -magnitude
+                : magnitude;
+    }
+
+    /**
+     * @return              value * 2^bits when bits is positive, otherwise value unchanged
+     */
+    private static BigInteger shift(BigInteger value, int bits) {
+        return bits > 0
+                ? value.shiftLeft(bits)
+                : value;
+    }
+
+    /**
+     * @param context       Precision and rounding of the result
+     * @return              The fraction as a decimal
+     */
+    public BigDecimal toBigDecimal(MathContext context) {
+        return new BigDecimal(bigNumerator()).divide(new BigDecimal(bigDenominator()), context);
+    }
+
+    private BigInteger bigNumerator() {
+        return bigNumerator == null
+                ? BigInteger.valueOf(numerator)
+                : bigNumerator;
+    }
+
+    private BigInteger bigDenominator() {
+        return bigNumerator == null
+                ? BigInteger.valueOf(denominator)
+                : bigDenominator;
+    }
+
+    /**
+     * @return              x * y, or Long.MIN_VALUE if it overflows
+     */
+    private static long multiply(long x, long y) {
+        long high = Math.multiplyHigh(x, y);
+        long low = x * y;
+        return (high == 0 && low >= 0) || (high == -1 && low < 0)
+                ? low
+                : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return              x ^ n by repeated squaring, or Long.MIN_VALUE if it overflows
+     */
+    private static long pow(long x, int n) {
+        long result = 1;
+        while (n > 0) {
+            if ((n & 1) != 0 && (result = multiply(result, x)) == Long.MIN_VALUE)
+                return Long.MIN_VALUE;
+            n >>= 1;
+            if (n > 0 && (x = multiply(x, x)) == Long.MIN_VALUE)
+                return Long.MIN_VALUE;
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        if (bigNumerator == null && other.bigNumerator == null) {
+            long left = multiply(numerator, other.denominator);
+            long right = multiply(other.numerator, denominator);
+            if (left != Long.MIN_VALUE && right != Long.MIN_VALUE)
+                return Long.compare(left, right);
+        }
+        return bigNumerator().multiply(other.bigDenominator()).compareTo(other.bigNumerator().multiply(bigDenominator()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Rational other))
+            return false;
+        // Both are in lowest terms and use the long form whenever it fits
+        return bigNumerator == null
+                ? other.bigNumerator == null && numerator == other.numerator && denominator == other.denominator
+                : bigNumerator.equals(other.bigNumerator) && bigDenominator.equals(other.bigDenominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return bigNumerator == null
+                ? Long.hashCode(numerator) * 31 + Long.hashCode(denominator)
+                : bigNumerator.hashCode() * 31 + bigDenominator.hashCode();
+    }
+
+    /**
+     * @return              The fraction, e.g. -3/4, or just the numerator for integers
+     */
+    @Override
+    public String toString() {
+        return isInteger()
+                ? bigNumerator == null ? Long.toString(numerator) : bigNumerator.toString()
+                : bigNumerator == null ? numerator + "/" + denominator : bigNumerator + "/" + bigDenominator;
+    }
+}
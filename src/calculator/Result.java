@@ -0,0 +1,92 @@
+package calculator;
+
+/**
+ * The answer to an expression, or why there is none and the position in
+ * the expression where it went wrong, e.g. "extra closing bracket at 17".
+ * Unlike evaluate, which throws, a failure here is an ordinary value, so
+ * malformed input costs no more than well formed input
+ */
+public final class Result {
+    /**
+     * Result of validating an expression that can be compiled
+     */
+    static final Result VALID = new Result(Double.NaN, null, -1);
+
+    private final double value;
+    private final ErrorCode error;
+    private final int position;
+
+    private Result(double value, ErrorCode error, int position) {
+        this.value = value;
+        this.error = error;
+        this.position = position;
+    }
+
+    /**
+     * @param value         The answer
+     * @return              A successful result
+     */
+    static Result of(double value) {
+        return new Result(value, null, -1);
+    }
+
+    /**
+     * @param error         Why there is no answer
+     * @param position      Position in the expression where it went wrong
+     * @return              A failed result
+     */
+    static Result failure(ErrorCode error, int position) {
+        return new Result(Double.NaN, error, position);
+    }
+
+    /**
+     * @return              Returns true if there was no error
+     */
+    public boolean succeeded() {
+        return error == null;
+    }
+
+    /**
+     * @return              Returns true if there was an error
+     */
+    public boolean failed() {
+        return error != null;
+    }
+
+    /**
+     * @return              The answer, or NaN if there was an error or the result is from validate
+     */
+    public double value() {
+        return value;
+    }
+
+    /**
+     * @return              Why there is no answer, or null if there was no error
+     */
+    public ErrorCode error() {
+        return error;
+    }
+
+    /**
+     * @return              Position in the expression where it went wrong, or -1 if there was no error
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return              The error and its position e.g. "extra closing bracket at 17", or null if there was no error
+     */
+    public String message() {
+        return error == null
+                ? null
+                : error.description() + " at " + position;
+    }
+
+    @Override
+    public String toString() {
+        return error == null
+                ? String.valueOf(value)
+                : message();
+    }
+}
@@ -1,7 +1,28 @@
 package calculator;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 public class Runner {
-    public static void main(String[] args) {
+    private static final String USAGE = "Usage: --file input [--out output] [--binary]";
+
+    /**
+     * With no arguments evaluates a sample expression. Otherwise
+     * --file input [--out output] [--binary] evaluates every line of the
+     * input file, writing the answers to output or standard out
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            evaluateFile(args);
+            return;
+        }
+
         Calculator calculator = new Calculator();
 
 //        String exp = "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7";
@@ -12,4 +33,37 @@ public class Runner {
 //        calculator.evaluate(exp);
         System.out.println(calculator.evaluate(exp));
     }
+
+    private static void evaluateFile(String[] args) throws IOException {
+        Path input = null;
+        Path output = null;
+        boolean binary = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--file" -> input = Path.of(value(args, ++i));
+                case "--out" -> output = Path.of(value(args, ++i));
+                case "--binary" -> binary = true;
+                default -> throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        if (input == null)
+            throw new IllegalArgumentException(USAGE);
+
+        FileEvaluator evaluator = new FileEvaluator(binary, FileEvaluator.DEFAULT_WINDOW);
+        try (WritableByteChannel out = output == null
+                ? Channels.newChannel(new FileOutputStream(FileDescriptor.out))
+                : FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            System.err.println(evaluator.evaluate(input, out, System.err));
+        }
+    }
+
+    /**
+     * @return              The value following an option
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(USAGE);
+        return args[i];
+    }
 }
@@ -0,0 +1,42 @@
+package calculator;
+
+/**
+ * Block operations as plain loops, which the JIT may vectorize on its own
+ * for add, subtract, multiply and negate
+ */
+final class ScalarKernels implements BlockKernels {
+    @Override
+    public void add(double[] x, double[] y, int length) {
+        for (int j = 0; j < length; j++)
+            x[j] = x[j] + y[j];
+    }
+
+    @Override
+    public void subtract(double[] x, double[] y, int length) {
+        for (int j = 0; j < length; j++)
+            x[j] = x[j] - y[j];
+    }
+
+    @Override
+    public void multiply(double[] x, double[] y, int length) {
+        for (int j = 0; j < length; j++)
+            x[j] = x[j] * y[j];
+    }
+
+    @Override
+    public void divide(double[] x, double[] y, int length) {
+        for (int j = 0; j < length; j++)
+            x[j] = Program.divide(x[j], y[j]);
+    }
+
+    @Override
+    public void negate(double[] x, int length) {
+        for (int j = 0; j < length; j++)
+            x[j] = -x[j];
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
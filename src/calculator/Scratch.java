@@ -0,0 +1,49 @@
+package calculator;
+
+/**
+ * Buffers a thread reuses for every expression it compiles, validates or
+ * evaluates in one pass, so that threads sharing a Calculator neither lock
+ * nor allocate them. Buffers grown by an unusually long expression are
+ * dropped afterwards, so an idle thread holds a few kilobytes at most
+ */
+final class Scratch {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    // Tokens beyond which the lexer and parser are not kept for the next expression
+    private static final int MAX_RETAINED_TOKENS = 1024;
+
+    Lexer lexer = new Lexer();
+    Parser parser = new Parser();
+    final PrattEvaluator pratt = new PrattEvaluator();
+    int[] positions = new int[16];
+    double[] stack = new double[16];
+    private boolean inUse;
+
+    private Scratch() {
+    }
+
+    /**
+     * @return              The calling thread's scratch, or a new one if it is already in use further up the stack
+     */
+    static Scratch acquire() {
+        Scratch scratch = SCRATCH.get();
+        if (scratch.inUse)
+            return new Scratch();
+        scratch.inUse = true;
+        return scratch;
+    }
+
+    /**
+     * Lets go of the last expression and any oversized buffers
+     */
+    void release() {
+        if (lexer.size() > MAX_RETAINED_TOKENS || positions.length > MAX_RETAINED_TOKENS) {
+            lexer = new Lexer();
+            parser = new Parser();
+            positions = new int[16];
+            stack = new double[16];
+        } else {
+            lexer.scan("");
+        }
+        inUse = false;
+    }
+}
@@ -0,0 +1,98 @@
+package calculator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Policy for promoting expressions from the interpreter to bytecode.
+ *
+ * Every expression starts out interpreted and counts its evaluations.
+ * Once the count reaches the threshold the expression is queued for
+ * compilation on a background daemon thread, and keeps being interpreted
+ * until its compiled form is ready, so the evaluating thread never waits
+ * on the compiler. Promotions are counted. An expression the compiler
+ * fails on, e.g. when defining its class runs out of metaspace, is
+ * rejected and stays interpreted. Safe for concurrent use
+ */
+public final class Tiering {
+    /**
+     * Evaluations after which an expression is compiled by default
+     */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    // One compiler thread shared by every calculator
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "calculator-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int threshold;
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder promoted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a tiering policy
+     *
+     * @param threshold     Evaluations after which an expression is compiled
+     */
+    public Tiering(int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Queues an expression for compilation, unless it has been queued already
+     *
+     * @param expression    Expression that reached the threshold
+     */
+    void promote(Expression expression) {
+        if (!expression.queue())
+            return;
+        queued.increment();
+        COMPILER.execute(() -> {
+            boolean compiled;
+            try {
+                compiled = expression.compileBytecode();
+            } catch (RuntimeException | LinkageError | OutOfMemoryError e) {
+                expression.reject();
+                compiled = false;
+            }
+            if (compiled)
+                promoted.increment();
+            else
+                rejected.increment();
+        });
+    }
+
+    /**
+     * @return              Evaluations after which an expression is compiled
+     */
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * @return              Number of expressions queued for compilation
+     */
+    public long queued() {
+        return queued.sum();
+    }
+
+    /**
+     * @return              Number of expressions promoted to bytecode
+     */
+    public long promoted() {
+        return promoted.sum();
+    }
+
+    /**
+     * @return              Number of queued expressions too long to compile, or that failed to, which stay interpreted
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+}
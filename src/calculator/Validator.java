@@ -0,0 +1,129 @@
+package calculator;
+
+/**
+ * Finds why an expression cannot be evaluated without throwing, using the
+ * calling thread's Scratch, so checking an expression allocates nothing
+ * unless it is malformed
+ */
+final class Validator {
+    private Validator() {
+    }
+
+    /**
+     * Checks that an expression compiles
+     *
+     * @param exp           User expression
+     * @return              Result.VALID, or where it first goes wrong
+     */
+    static Result validate(CharSequence exp) {
+        Scratch scratch = Scratch.acquire();
+        try {
+            return check(scratch, exp);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Evaluates an expression that compiles, stopping at the first operation that would throw
+     *
+     * @param exp           User expression, which validate accepts
+     * @return              Where evaluating it goes wrong, or Result.VALID if it does not
+     */
+    static Result failure(CharSequence exp) {
+        Scratch scratch = Scratch.acquire();
+        try {
+            return run(scratch, exp);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Positions a failure found in an expression stripped of spaces in the expression as written
+     *
+     * @param exp           User expression, before stripping
+     * @param failure       Failure of the stripped expression
+     * @return              The same failure, positioned in exp
+     */
+    static Result unstrip(String exp, Result failure) {
+        int stripped = 0;
+        for (int i = 0; i < exp.length(); i++) {
+            if (exp.charAt(i) == ' ')
+                continue;
+            if (stripped++ == failure.position())
+                return i == failure.position()
+                        ? failure
+                        : Result.failure(failure.error(), i);
+        }
+        return failure;
+    }
+
+    private static Result check(Scratch scratch, CharSequence exp) {
+        Lexer lexer = scratch.lexer;
+        if (!lexer.scan(exp))
+            return Result.failure(lexer.error(), lexer.errorPosition());
+        if (!scratch.parser.check(lexer))
+            return Result.failure(scratch.parser.error(), scratch.parser.errorPosition());
+        return Result.VALID;
+    }
+
+    private static Result run(Scratch scratch, CharSequence exp) {
+        Result result = check(scratch, exp);
+        if (result.failed())
+            return result;
+
+        if (scratch.positions.length < scratch.lexer.size())
+            scratch.positions = new int[scratch.lexer.size()];
+        int[] positions = scratch.positions;
+        Program program = scratch.parser.parse(scratch.lexer, positions);
+        if (scratch.stack.length < program.maxStack)
+            scratch.stack = new double[program.maxStack];
+        double[] stack = scratch.stack;
+
+        int sp = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            switch (opcode) {
+                case Program.CONST -> stack[sp++] = program.constants[program.operand(i)];
+                case Program.VARIABLE -> {
+                    return Result.failure(ErrorCode.NO_VALUE_FOR_VARIABLE, positions[i]);
+                }
+                case Program.DIVIDE -> {
+                    sp--;
+                    if (stack[sp] == 0)
+                        return Result.failure(ErrorCode.DIVISION_BY_ZERO, positions[i]);
+                    stack[sp - 1] /= stack[sp];
+                }
+                case Program.POWER -> {
+                    sp--;
+                    double x = stack[sp - 1];
+                    double y = stack[sp];
+                    if (y < 0) {
+                        // x^y is 1 / x^|y|, which fails when x^|y| is 0
+                        double power = PowerEngine.power(x, -y, PowerEngine.DEFAULT_TOLERANCE);
+                        if (power == 0)
+                            return Result.failure(ErrorCode.DIVISION_BY_ZERO, positions[i]);
+                        stack[sp - 1] = 1 / power;
+                    } else {
+                        stack[sp - 1] = PowerEngine.power(x, y, PowerEngine.DEFAULT_TOLERANCE);
+                    }
+                }
+                case Program.ADD -> {
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                }
+                case Program.SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                }
+                case Program.MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                }
+                default -> throw new IllegalStateException("Unexpected value: " + opcode);
+            }
+        }
+        return Result.VALID;
+    }
+}
@@ -0,0 +1,406 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Named expressions that refer to each other by name, like the cells of a
+ * spreadsheet, e.g. C = A*B+3. Each formula is compiled once, with the
+ * names it uses as its variables.
+ *
+ * Changing a cell marks only the cells that depend on it, directly or
+ * transitively, as dirty. recalculate then runs just those, in order of
+ * their level: a cell's level is one more than the highest level of the
+ * cells it uses, so every cell in a level can be run at the same time,
+ * and large levels are split across the calculator's ForkJoinPool.
+ * Definitions that would make a cell depend on itself are rejected.
+ *
+ * A cell that is used but never defined or set is NaN, as is a cell whose
+ * formula throws, e.g. by dividing by zero. The exception is kept.
+ *
+ * A workspace is not safe for concurrent use
+ */
+public final class Workspace {
+    // Levels with fewer dirty cells than this are run on the calling thread
+    private static final int PARALLEL_LEVEL = 1024;
+    // Cells each task runs before it is not split any further
+    private static final int MIN_LEVEL_SLICE = 256;
+
+    private final Calculator calculator;
+    private final Map<String, Cell> cells = new LinkedHashMap<>();
+    private final List<Cell> dirty = new ArrayList<>();
+    private long recomputed;
+
+    /**
+     * Creates a workspace compiling formulas with a default Calculator
+     */
+    public Workspace() {
+        this(new Calculator());
+    }
+
+    /**
+     * @param calculator    Calculator compiling the formulas, whose pool runs large levels
+     */
+    public Workspace(Calculator calculator) {
+        this.calculator = calculator;
+    }
+
+    /**
+     * Defines a cell by a formula, replacing whatever it held before. The
+     * cell and everything depending on it are recomputed by the next
+     * recalculate
+     *
+     * @param name          Name of the cell, such as rate or C2
+     * @param formula       Expression, whose variables are the names of other cells
+     * @throws IllegalArgumentException if the cell would depend on itself, directly or through others
+     */
+    public void define(String name, String formula) {
+        // Cells are only added once the formula compiles and closes no cycle, so a rejected one leaves none behind
+        Cell cell = cells.get(name);
+        if (cell == null)
+            cell = newCell(name);
+        Expression expression = calculator.compile(formula);
+        List<String> names = expression.variables();
+        Cell[] inputs = new Cell[names.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            Cell input = names.get(i).equals(name) ? cell : cells.get(names.get(i));
+            inputs[i] = input != null
+                    ? input
+                    : newCell(names.get(i));
+        }
+        checkAcyclic(cell, inputs);
+
+        cells.putIfAbsent(name, cell);
+        for (Cell input : inputs)
+            cells.putIfAbsent(input.name, input);
+
+        for (Cell input : cell.inputs)
+            input.dependents.remove(cell);
+        for (Cell input : inputs)
+            input.dependents.add(cell);
+        cell.expression = expression;
+        cell.inputs = inputs;
+        cell.arguments = new double[inputs.length];
+        relevel(cell);
+        markDirty(cell);
+    }
+
+    /**
+     * Sets a cell to a value, replacing any formula it held. Everything
+     * depending on it is recomputed by the next recalculate
+     *
+     * @param name          Name of the cell
+     * @param value         Its new value
+     */
+    public void set(String name, double value) {
+        Cell cell = cell(name);
+        if (cell.dirty) {
+            dirty.remove(cell);
+            cell.dirty = false;
+        }
+        if (cell.expression != null) {
+            for (Cell input : cell.inputs)
+                input.dependents.remove(cell);
+            cell.expression = null;
+            cell.inputs = Cell.NONE;
+            cell.arguments = null;
+            relevel(cell);
+        }
+        if (Double.compare(cell.value, value) == 0 && cell.error == null)
+            return;
+        cell.value = value;
+        cell.error = null;
+        for (Cell dependent : cell.dependents)
+            markDirty(dependent);
+    }
+
+    /**
+     * Recomputes every dirty cell, each after the cells it uses
+     *
+     * @return              Number of cells recomputed
+     */
+    public int recalculate() {
+        int count = dirty.size();
+        if (count == 0)
+            return 0;
+
+        // Bucket the dirty cells by level, then run the levels in order
+        int levels = 0;
+        for (Cell cell : dirty)
+            levels = Math.max(levels, cell.level + 1);
+        int[] starts = new int[levels + 1];
+        for (Cell cell : dirty)
+            starts[cell.level + 1]++;
+        for (int level = 0; level < levels; level++)
+            starts[level + 1] += starts[level];
+        Cell[] ordered = new Cell[count];
+        int[] next = Arrays.copyOf(starts, levels);
+        for (Cell cell : dirty)
+            ordered[next[cell.level]++] = cell;
+        dirty.clear();
+
+        for (int level = 0; level < levels; level++) {
+            int from = starts[level];
+            int to = starts[level + 1];
+            if (to - from < PARALLEL_LEVEL) {
+                for (int i = from; i < to; i++)
+                    ordered[i].compute();
+            } else {
+                ForkJoinPool pool = calculator.pool();
+                int slice = Math.max(MIN_LEVEL_SLICE, (to - from) / (pool.getParallelism() * 8));
+                pool.invoke(new LevelTask(ordered, from, to, slice));
+            }
+        }
+        recomputed += count;
+        return count;
+    }
+
+    /**
+     * @param name          Name of a cell
+     * @return              Its value, recalculating first if anything is dirty
+     * @throws IllegalArgumentException if there is no such cell
+     */
+    public double get(String name) {
+        Cell cell = existing(name);
+        recalculate();
+        return cell.value;
+    }
+
+    /**
+     * @param name          Name of a cell
+     * @return              The exception its formula threw, or null if it has a value
+     * @throws IllegalArgumentException if there is no such cell
+     */
+    public RuntimeException error(String name) {
+        Cell cell = existing(name);
+        recalculate();
+        return cell.error;
+    }
+
+    /**
+     * @param name          Name of a cell
+     * @return              Names of the cells its formula uses, none if it is set to a value
+     * @throws IllegalArgumentException if there is no such cell
+     */
+    public List<String> dependencies(String name) {
+        Cell cell = existing(name);
+        List<String> names = new ArrayList<>(cell.inputs.length);
+        for (Cell input : cell.inputs)
+            names.add(input.name);
+        return names;
+    }
+
+    /**
+     * @return              Names of every cell, in the order they were first used
+     */
+    public Set<String> names() {
+        return Collections.unmodifiableSet(cells.keySet());
+    }
+
+    /**
+     * @return              Number of cells waiting to be recomputed
+     */
+    public int dirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return              Number of cells recomputed by every recalculate so far
+     */
+    public long getCellsRecomputed() {
+        return recomputed;
+    }
+
+    private Cell cell(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null) {
+            cell = newCell(name);
+            cells.put(name, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * @return              A cell that is not yet in the workspace
+     */
+    private static Cell newCell(String name) {
+        if (!isName(name))
+            throw new IllegalArgumentException("Not a valid cell name: " + name);
+        return new Cell(name);
+    }
+
+    private Cell existing(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null)
+            throw new IllegalArgumentException("No cell named " + name);
+        return cell;
+    }
+
+    /**
+     * Names are what the Lexer reads as a variable
+     */
+    private static boolean isName(String name) {
+        if (name.isEmpty())
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+            if (!letter && (i == 0 || c < '0' || c > '9'))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rejects inputs that already depend on the cell, which would close a cycle
+     *
+     * @param cell          Cell being defined
+     * @param inputs        Cells its new formula uses
+     */
+    private static void checkAcyclic(Cell cell, Cell[] inputs) {
+        Set<Cell> targets = new HashSet<>(Arrays.asList(inputs));
+        if (targets.isEmpty())
+            return;
+
+        // Search the cells depending on this one, remembering how each was reached
+        Map<Cell, Cell> reachedFrom = new HashMap<>();
+        ArrayDeque<Cell> stack = new ArrayDeque<>();
+        reachedFrom.put(cell, null);
+        stack.push(cell);
+        while (!stack.isEmpty()) {
+            Cell current = stack.pop();
+            if (targets.contains(current)) {
+                // current uses ... uses cell, and cell would use current
+                StringBuilder path = new StringBuilder(cell.name);
+                for (Cell c = current; c != null; c = reachedFrom.get(c))
+                    path.append(" -> ").append(c.name);
+                throw new IllegalArgumentException("Cycle: " + path);
+            }
+            for (Cell dependent : current.dependents) {
+                if (!reachedFrom.containsKey(dependent)) {
+                    reachedFrom.put(dependent, current);
+                    stack.push(dependent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the level of a cell after its inputs change, and of every
+     * cell depending on it whose level changes as a result
+     */
+    private static void relevel(Cell cell) {
+        ArrayDeque<Cell> stack = new ArrayDeque<>();
+        stack.push(cell);
+        while (!stack.isEmpty()) {
+            Cell current = stack.pop();
+            int level = 0;
+            for (Cell input : current.inputs)
+                level = Math.max(level, input.level + 1);
+            if (level != current.level || current == cell) {
+                current.level = level;
+                for (Cell dependent : current.dependents)
+                    stack.push(dependent);
+            }
+        }
+    }
+
+    /**
+     * Marks a formula cell and everything depending on it dirty, stopping
+     * at cells already dirty, whose dependents are dirty too
+     */
+    private void markDirty(Cell cell) {
+        if (cell.dirty)
+            return;
+        ArrayDeque<Cell> stack = new ArrayDeque<>();
+        cell.dirty = true;
+        stack.push(cell);
+        while (!stack.isEmpty()) {
+            Cell current = stack.pop();
+            dirty.add(current);
+            for (Cell dependent : current.dependents) {
+                if (!dependent.dirty) {
+                    dependent.dirty = true;
+                    stack.push(dependent);
+                }
+            }
+        }
+    }
+
+    /**
+     * A named value, computed from its formula or set directly
+     */
+    private static final class Cell {
+        static final Cell[] NONE = {};
+
+        final String name;
+        final List<Cell> dependents = new ArrayList<>();
+        Expression expression;
+        // Cells whose values are passed to the expression, in the order of its variables
+        Cell[] inputs = NONE;
+        double[] arguments;
+        int level;
+        boolean dirty;
+        double value = Double.NaN;
+        RuntimeException error;
+
+        Cell(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Runs the formula on the current values of its inputs
+         */
+        void compute() {
+            for (int i = 0; i < inputs.length; i++)
+                arguments[i] = inputs[i].value;
+            try {
+                value = expression.evaluate(arguments);
+                error = null;
+            } catch (RuntimeException e) {
+                value = Double.NaN;
+                error = e;
+            }
+            dirty = false;
+        }
+    }
+
+    /**
+     * Computes a slice of one level, halving it until it is small enough to run directly
+     */
+    @SuppressWarnings("serial")
+    private static final class LevelTask extends RecursiveAction {
+        private final Cell[] cells;
+        private final int from;
+        private final int to;
+        private final int slice;
+
+        LevelTask(Cell[] cells, int from, int to, int slice) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > slice) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LevelTask(cells, from, mid, slice), new LevelTask(cells, mid, to, slice));
+                return;
+            }
+            for (int i = from; i < to; i++)
+                cells[i].compute();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * The best kernels this JVM offers, vector ones when run with
+ * --add-modules jdk.incubator.vector, against the scalar loops
+ */
+public class TestBlockKernels {
+
+    private static Stream<Integer> lengths() {
+        // Lengths around every common lane count, so both the vector loop and the tail run
+        return Stream.of(0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 17, 63, 512);
+    }
+
+    @ParameterizedTest(name = "Testing kernels over {0} rows")
+    @MethodSource("lengths")
+    void test_best_matches_scalar(int length) {
+        Random random = new Random(length);
+        double[] x = new double[length];
+        double[] y = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextGaussian() * 1e3;
+            y[i] = random.nextGaussian() * 1e-3 + (i % 2 == 0 ? 7 : -7);
+        }
+
+        BlockKernels best = BlockKernels.best();
+        for (int op = 0; op < 5; op++) {
+            double[] expected = x.clone();
+            double[] actual = x.clone();
+            apply(BlockKernels.SCALAR, op, expected, y, length);
+            apply(best, op, actual, y, length);
+            assertArrayEquals(expected, actual, best.name() + " op " + op);
+        }
+    }
+
+    private static void apply(BlockKernels kernels, int op, double[] x, double[] y, int length) {
+        switch (op) {
+            case 0 -> kernels.add(x, y, length);
+            case 1 -> kernels.subtract(x, y, length);
+            case 2 -> kernels.multiply(x, y, length);
+            case 3 -> kernels.divide(x, y, length);
+            default -> kernels.negate(x, length);
+        }
+    }
+
+    @Test
+    void test_division_by_zero_anywhere() {
+        BlockKernels best = BlockKernels.best();
+        for (int at = 0; at < 21; at++) {
+            double[] y = new double[21];
+            java.util.Arrays.fill(y, 2);
+            y[at] = at % 2 == 0 ? 0.0 : -0.0;
+            ArithmeticException e = assertThrows(ArithmeticException.class, () -> best.divide(new double[21], y, 21));
+            assertEquals("Division by 0", e.getMessage());
+        }
+        // Zeros past the length are not read
+        best.divide(new double[21], new double[21], 0);
+    }
+
+    @Test
+    void test_program_columns_match_scalar() {
+        Program program = new Calculator().compile("-(a*b-c)/(a+2)+b*-c").program();
+        int rows = 1000;
+        double[][] columns = new double[3][rows];
+        Random random = new Random(21);
+        for (double[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = random.nextDouble() * 10;
+
+        double[] expected = new double[rows];
+        double[] actual = new double[rows];
+        program.run(columns, expected, rows, BlockKernels.SCALAR);
+        program.run(columns, actual, rows);
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,100 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.ref.WeakReference;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestBytecodeCompiler {
+
+    Calculator calculator;
+
+    @BeforeEach
+    void setup() {
+        calculator = new Calculator();
+    }
+
+    @ParameterizedTest(name = "Testing bytecode matches interpreter {index}: {0}")
+    @MethodSource("expressions")
+    void test_matches_interpreter(String exp) {
+        Expression expression = calculator.compile(exp);
+        double interpreted = expression.evaluate();
+        assertTrue(expression.compileBytecode());
+        assertTrue(expression.isBytecodeCompiled());
+        // assertEquals on doubles compares bit patterns, so -0.0 and NaN must match too
+        assertEquals(interpreted, expression.evaluate());
+    }
+
+    static Stream<Arguments> expressions() {
+        return Stream.of(
+                Arguments.of("5"),
+                Arguments.of("1+1"),
+                Arguments.of("-0*1"),
+                Arguments.of("-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7"),
+                Arguments.of("1-4*(2-3)-6^3/(2*(4+6))+4-7"),
+                Arguments.of("27^(1/3)"),
+                Arguments.of("2^-(3)*2"),
+                Arguments.of("-4^0.5"),
+                Arguments.of("0.5^-0.5"),
+                Arguments.of("7^0.123456"),
+                Arguments.of("2^5000-2^5000"),
+                Arguments.of("0.1+0.2+0.3+0.4+0.5+0.6+0.7+0.8+0.9+1.1+1.2+1.3")
+        );
+    }
+
+    @Test
+    void test_division_by_zero() {
+        Expression expression = calculator.compile("1+1/(2-2)");
+        assertTrue(expression.compileBytecode());
+        Exception e = assertThrows(ArithmeticException.class, expression::evaluate);
+        assertEquals("Division by 0", e.getMessage());
+    }
+
+    @Test
+    void test_variables() {
+        StringBuilder exp = new StringBuilder("v0");
+        double[] values = new double[200];
+        for (int i = 1; i < values.length; i++)
+            exp.append(i % 3 == 0 ? "*" : "+").append('v').append(i);
+        for (int i = 0; i < values.length; i++)
+            values[i] = 1 + i / 100.0;
+
+        Expression expression = calculator.compile(exp.toString());
+        double interpreted = expression.evaluate(values);
+        assertTrue(expression.compileBytecode());
+        assertEquals(interpreted, expression.evaluate(values));
+
+        Exception e = assertThrows(IllegalArgumentException.class, () -> expression.evaluate(1, 2));
+        assertEquals("No value for variable v2", e.getMessage());
+    }
+
+    @Test
+    void test_long_programs_stay_interpreted() {
+        Expression expression = calculator.compile("x" + "+x".repeat(BytecodeCompiler.MAX_CODE_LENGTH));
+        assertFalse(expression.compileBytecode());
+        assertFalse(expression.isBytecodeCompiled());
+        assertEquals(1.5 * (BytecodeCompiler.MAX_CODE_LENGTH + 1), expression.evaluate(1.5));
+    }
+
+    @Test
+    void test_class_is_unloadable() throws InterruptedException {
+        WeakReference<Class<?>> type = compiledClass();
+        for (int i = 0; i < 50 && type.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(type.get());
+    }
+
+    private WeakReference<Class<?>> compiledClass() {
+        CompiledProgram compiled = BytecodeCompiler.compile(calculator.compile("1+2*3").program());
+        assertEquals(7, compiled.eval(new double[0]));
+        return new WeakReference<>(compiled.getClass());
+    }
+}
@@ -4,9 +4,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -159,7 +162,8 @@ public class TestCalculator {
                 Arguments.of(3.6, 3, 3, 5),
                 Arguments.of(7.88, 7, 22, 25),
                 Arguments.of(3.67, 3, 67, 100),
-                Arguments.of(0.5, 0, 1, 2)
+                Arguments.of(0.5, 0, 1, 2),
+                Arguments.of(0.29, 0, 29, 100)
         );
     }
 
@@ -531,7 +535,7 @@ public class TestCalculator {
     @Test
     void test_power_pointFive_negPointFive() {
         double ans = calculator.evaluate("0.5^-0.5");
-        assertEquals(1.4142120368572106, ans);
+        assertEquals(Math.sqrt(2), ans, 1e-15);
     }
 
     @Test
@@ -569,4 +573,149 @@ public class TestCalculator {
         double ans = calculator.evaluate("-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7");
         assertEquals(-820.6311111111111, ans);
     }
+
+    @Test
+    void test_compile_matches_evaluate() {
+        String exp = "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7";
+        Expression expression = calculator.compile(exp);
+        assertEquals(calculator.evaluate(exp), expression.evaluate());
+        assertEquals(expression.evaluate(), expression.evaluate());
+    }
+
+    @Test
+    void test_cache_counts_hits_and_misses() {
+        calculator.evaluate("1+2*4");
+        calculator.evaluate("1 + 2 * 4");
+        calculator.evaluate("1+2*4");
+        ExpressionCache cache = calculator.getCache();
+        assertEquals(1, cache.misses());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void test_cache_evicts_least_recently_used() {
+        Calculator small = new Calculator(2);
+        small.evaluate("1+1");
+        small.evaluate("2+2");
+        small.evaluate("1+1");
+        small.evaluate("3+3"); // Evicts 2+2
+        small.evaluate("1+1");
+        small.evaluate("2+2");
+        ExpressionCache cache = small.getCache();
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    void test_single_number() {
+        assertEquals(5, calculator.evaluate("5"));
+        assertEquals(-2.5, calculator.evaluate("(-2.5)"));
+    }
+
+    @Test
+    void test_million_term_expression() {
+        // 1M terms, evaluated well within a 10 second budget and without deep recursion
+        int terms = 1_000_000;
+        StringBuilder exp = new StringBuilder("0");
+        double check = 0;
+        for (int i = 1; i < terms; i++) {
+            int value = i % 97;
+            if (i % 2 == 0) {
+                exp.append('+').append(value);
+                check += value;
+            } else {
+                exp.append('-').append(value);
+                check -= value;
+            }
+        }
+        double expected = check;
+        double ans = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> calculator.evaluate(exp.toString()));
+        assertEquals(expected, ans);
+    }
+
+    @Test
+    void test_deeply_nested_brackets() {
+        int depth = 100_000;
+        String exp = "(".repeat(depth) + "2*3" + ")".repeat(depth) + "-1";
+        assertEquals(5, calculator.evaluate(exp));
+    }
+
+    @Test
+    void test_pow_matches_repeated_multiplication() {
+        // Compared wherever repeated multiplication is exact, i.e. matches the BigDecimal product
+        double[] bases = {2, -3, 1.5, 0.5, 7, -0.25};
+        for (double base : bases) {
+            double repeated = base;
+            BigDecimal exact = new BigDecimal(base);
+            for (int n = 1; n <= 60 && new BigDecimal(repeated).compareTo(exact) == 0; n++) {
+                assertEquals(repeated, calculator.pow(base, n, base, false), base + "^" + n);
+                assertEquals(1 / repeated, calculator.pow(base, n, base, true), base + "^-" + n);
+                repeated *= base;
+                exact = exact.multiply(new BigDecimal(base));
+            }
+        }
+    }
+
+    @Test
+    void test_pow_keeps_inexact_products() {
+        // Compound growth, where each product rounds, keeps the answers repeated multiplication gave
+        assertEquals(117.39085287969573, calculator.evaluate("1.1^50"));
+        double[] bases = {1.1, -1.1, 0.1, 1.0001, 1.0000001};
+        for (double base : bases) {
+            double repeated = base;
+            for (int n = 1; n <= PowerEngine.SEQUENTIAL_LIMIT + 1; n++) {
+                assertEquals(repeated, calculator.pow(base, n, base, false), base + "^" + n);
+                if (repeated != 0)
+                    assertEquals(1 / repeated, calculator.pow(base, n, base, true), base + "^-" + n);
+                repeated *= base;
+            }
+        }
+        assertEquals(1.1 * 1.1 * 1.1 * 1.1 * 1.1 * 1.1 * 1.1 * 7, calculator.evaluate("1.1^7*7"));
+        assertEquals(Math.pow(0.1, 30), calculator.evaluate("0.1^30"), 1e-40);
+    }
+
+    @Test
+    void test_pow_large_integer_exponents() {
+        assertEquals(Double.POSITIVE_INFINITY, calculator.evaluate("2^5000"));
+        assertEquals(Math.pow(2, -1000), calculator.evaluate("2^-1000"));
+        assertEquals(-1, calculator.evaluate("-1^1000001"));
+        assertEquals(Math.pow(1.0000001, 1e6), calculator.evaluate("1.0000001^1000000"), 1e-9);
+        assertEquals(Math.pow(1.00001, 50000), calculator.evaluate("1.00001^50000"), 1e-9);
+    }
+
+    @Test
+    void test_evaluate_all_keeps_order_and_errors() {
+        List<String> batch = Arrays.asList("1+1", "1/0", "2^3", "(1+2", "x*2", "-12-34*(-2.36--3.64)");
+        BatchResult result = calculator.evaluateAll(batch);
+        assertEquals(6, result.size());
+        assertEquals(3, result.errorCount());
+        assertEquals(2, result.value(0));
+        assertInstanceOf(ArithmeticException.class, result.error(1));
+        assertTrue(Double.isNaN(result.value(1)));
+        assertEquals(8, result.value(2));
+        assertEquals("Extra opening bracket", result.error(3).getMessage());
+        assertTrue(result.failed(4));
+        assertFalse(result.failed(5));
+        assertEquals(-12 - 34 * (-2.36 - -3.64), result.value(5));
+    }
+
+    @Test
+    void test_evaluate_all_matches_evaluate() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Calculator parallel = new Calculator(16, pool);
+            String[] batch = new String[10_000];
+            for (int i = 0; i < batch.length; i++)
+                batch[i] = (i % 100) + "*" + (i % 7) + "-" + (i % 13) + "/((" + (i % 5) + "-2)^2+1)";
+            double[] out = new double[batch.length];
+            BatchResult result = parallel.evaluateAll(batch, out);
+            assertSame(out, result.values());
+            for (int i = 0; i < batch.length; i++)
+                assertEquals(calculator.evaluate(batch[i]), out[i], batch[i]);
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,149 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestCalculatorMetrics {
+
+    Calculator calculator;
+
+    @BeforeEach
+    void setup() {
+        calculator = new Calculator(16, ForkJoinPool.commonPool(), null);
+    }
+
+    @Test
+    void test_disabled_by_default() {
+        assertNull(calculator.getMetrics());
+        assertEquals(7, calculator.evaluate("1+2*3"));
+        calculator.setMetricsEnabled(true);
+        calculator.setMetricsEnabled(false);
+        assertNull(calculator.getMetrics());
+    }
+
+    @Test
+    void test_phases() {
+        calculator.setMetricsEnabled(true);
+        CalculatorMetrics metrics = calculator.getMetrics();
+        for (int i = 0; i < 10; i++)
+            calculator.evaluate("2^0.5+x^0*(1+2)".replace("x", Integer.toString(i + 2)));
+        calculator.evaluate("2^0.5+2^0*(1+2)");
+
+        assertEquals(10, metrics.count("LEX"));
+        assertEquals(10, metrics.count("PARSE"));
+        assertEquals(10, metrics.count("OPTIMIZE"));
+        assertEquals(11, metrics.count("RUN"));
+        assertEquals(11, metrics.getEvaluations());
+        // Each compilation folds 2^0.5 and x^0, the cached expression runs without powers
+        assertEquals(20, metrics.count("POWER"));
+        assertEquals(10 * 13, metrics.getTokensProcessed());
+        assertTrue(metrics.p50("RUN") <= metrics.p99("RUN"));
+        assertTrue(metrics.p99("RUN") <= metrics.p999("RUN"));
+        assertTrue(metrics.p999("RUN") > 0);
+    }
+
+    @Test
+    void test_powers() {
+        calculator.setMetricsEnabled(true);
+        CalculatorMetrics metrics = calculator.getMetrics();
+        Expression expression = calculator.compile("x^0.5+x^3");
+        assertEquals(0, metrics.count("POWER"));
+        // Expressions used outside evaluate are not timed
+        expression.evaluate(4);
+        assertEquals(0, metrics.count("POWER"));
+
+        assertEquals(3, calculator.pow(3, 1, 3, false));
+        assertEquals(2, calculator.sqrtA(4, 1, 2, 0));
+        assertEquals(2, metrics.count("POWER"));
+    }
+
+    @Test
+    void test_errors_by_type() {
+        calculator.setMetricsEnabled(true);
+        assertThrows(ArithmeticException.class, () -> calculator.evaluate("1/(2-2)"));
+        assertThrows(ArithmeticException.class, () -> calculator.evaluate("1/(3-3)"));
+        assertThrows(RuntimeException.class, () -> calculator.evaluate("1+"));
+        BatchResult result = calculator.evaluateAll(new String[]{"1", "2/(1-1)"}, new double[2]);
+        assertEquals(1, result.errorCount());
+
+        Map<String, Long> errors = calculator.getMetrics().getErrors();
+        assertEquals(3, errors.get(ArithmeticException.class.getName()));
+        assertEquals(1, errors.get(RuntimeException.class.getName()));
+        calculator.getMetrics().reset();
+        assertTrue(calculator.getMetrics().getErrors().isEmpty());
+        assertEquals(0, calculator.getMetrics().getEvaluations());
+    }
+
+    @Test
+    void test_jmx() throws Exception {
+        calculator.setMetricsEnabled(true);
+        ObjectName name = calculator.getMetrics().register();
+        calculator.evaluate("1+1");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(name, "Evaluations"));
+        assertEquals(3L, server.getAttribute(name, "TokensProcessed"));
+        assertEquals(1L, server.invoke(name, "count", new Object[]{"PARSE"}, new String[]{String.class.getName()}));
+
+        calculator.setMetricsEnabled(false);
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void test_thread_churn_shares_fixed_stripes() throws InterruptedException {
+        calculator.setMetricsEnabled(true);
+        CalculatorMetrics metrics = calculator.getMetrics();
+        int threads = 4 * CalculatorMetrics.STRIPES + 10;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> calculator.evaluate("1+2"));
+            thread.start();
+            thread.join();
+        }
+        assertEquals(threads, metrics.getEvaluations());
+        assertTrue(metrics.stripeCount() <= CalculatorMetrics.STRIPES);
+    }
+
+    @Test
+    void test_shared_histogram_keeps_every_count() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++)
+                    histogram.record(i & 63);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(400_000, histogram.count());
+    }
+
+    @Test
+    void test_histogram_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (int i = 1; i <= 100_000; i++)
+            histogram.record(i);
+        assertEquals(100_000, histogram.count());
+        assertEquals(50_000, histogram.percentile(50), 50_000 * 0.035);
+        assertEquals(99_000, histogram.percentile(99), 99_000 * 0.035);
+        assertEquals(99_900, histogram.percentile(99.9), 99_900 * 0.035);
+        assertEquals(1, histogram.percentile(0));
+
+        for (long value : new long[]{0, 31, 32, 63, 64, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.highest(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.highest(bucket - 1) < value);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestColumnFileEvaluator {
+
+    @TempDir
+    Path dir;
+
+    private final Calculator calculator = new Calculator();
+
+    private Path column(String name, double[] values) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (double value : values)
+            bytes.putDouble(value);
+        return Files.write(dir.resolve(name + ".bin"), bytes.array());
+    }
+
+    private double[] read(Path file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        double[] values = new double[bytes.remaining() / Double.BYTES];
+        for (int i = 0; i < values.length; i++)
+            values[i] = bytes.getDouble();
+        return values;
+    }
+
+    @Test
+    void test_matches_rows_across_windows() throws IOException {
+        // Not a whole number of windows or blocks, so the last of each is short
+        int rows = Program.BLOCK_SIZE * 5 + 37;
+        double[] price = new double[rows];
+        double[] rate = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            price[i] = 100 + i % 1000;
+            rate[i] = (i % 100) / 1000.0;
+        }
+        Expression expression = calculator.compile("price*(1+rate)^3-price/2");
+        Path out = dir.resolve("out.bin");
+        // Two blocks per window
+        ColumnFileEvaluator evaluator = new ColumnFileEvaluator(Program.BLOCK_SIZE * Double.BYTES * 2);
+        long evaluated = evaluator.evaluate(expression,
+                Map.of("price", column("price", price), "rate", column("rate", rate)), out);
+
+        assertEquals(rows, evaluated);
+        double[] answers = read(out);
+        assertEquals(rows, answers.length);
+        for (int i = 0; i < rows; i++)
+            assertEquals(expression.evaluate(price[i], rate[i]), answers[i]);
+    }
+
+    @Test
+    void test_replaces_existing_output() throws IOException {
+        Path out = Files.write(dir.resolve("out.bin"), new byte[4096]);
+        new ColumnFileEvaluator().evaluate(calculator.compile("x*2"), Map.of("x", column("x", new double[]{1, 2, 3})), out);
+        assertArrayEquals(new double[]{2, 4, 6}, read(out));
+    }
+
+    @Test
+    void test_rejects_bad_columns() throws IOException {
+        ColumnFileEvaluator evaluator = new ColumnFileEvaluator();
+        Path out = dir.resolve("out.bin");
+        Path x = column("x", new double[]{1, 2, 3});
+        Path y = column("y", new double[]{1, 2});
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(calculator.compile("x+y"), Map.of("x", x, "y", y), out));
+        assertEquals("Column y has 2 rows, expected 3", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(calculator.compile("x+z"), Map.of("x", x), out));
+        assertEquals("No column for variable z", e.getMessage());
+        Path odd = Files.write(dir.resolve("odd.bin"), new byte[12]);
+        assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(calculator.compile("x"), Map.of("x", odd), out));
+        assertThrows(IllegalArgumentException.class, () -> new ColumnFileEvaluator(64));
+    }
+
+    @Test
+    void test_rejected_columns_leave_output_alone() throws IOException {
+        ColumnFileEvaluator evaluator = new ColumnFileEvaluator();
+        Path x = column("x", new double[]{1, 2, 3});
+        Path y = column("y", new double[]{1, 2});
+        Path out = column("out", new double[]{7});
+
+        assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(calculator.compile("x+y"), Map.of("x", x, "y", y), out));
+        assertArrayEquals(new double[]{7}, read(out));
+
+        // The same file by another path
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> evaluator.evaluate(calculator.compile("x*2"), Map.of("x", x), dir.resolve(".").resolve("x.bin")));
+        assertEquals("Column x is also the output", e.getMessage());
+        assertArrayEquals(new double[]{1, 2, 3}, read(x));
+    }
+}
@@ -0,0 +1,112 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestCommonSubexpressions {
+
+    private static Program parse(String exp) {
+        return new Parser().parse(new Lexer().tokenize(exp));
+    }
+
+    @ParameterizedTest(name = "Testing elimination {index}: {0}")
+    @MethodSource("eliminations")
+    void test_eliminate(String exp, String check, double ratio) {
+        CommonSubexpressions eliminator = new CommonSubexpressions();
+        assertEquals(check, eliminator.eliminate(parse(exp)).toString());
+        assertEquals(ratio, eliminator.ratio());
+    }
+
+    static Stream<Arguments> eliminations() {
+        return Stream.of(
+                Arguments.of("a+b", "a b +", 1.0),
+                Arguments.of("a*a", "a a *", 1.5),
+                Arguments.of("(a+b)*(a+b)", "a b + dup *", 7 / 4.0),
+                Arguments.of("(a+b)*c+(a+b)*d", "a b + tee:0 c * load:0 d * +", 11 / 8.0),
+                Arguments.of("(a-b)/(a-b)*(a-b)", "a b - tee:0 dup / load:0 *", 11 / 5.0),
+                Arguments.of("(a+1)^2-(a+1)", "a 1.0 + tee:0 2.0 ^ load:0 -", 1.5)
+        );
+    }
+
+    @Test
+    void test_rejects_eliminated_programs() {
+        Program program = new CommonSubexpressions().eliminate(parse("(a+b)*c+(a+b)*d"));
+        assertThrows(IllegalArgumentException.class, () -> new CommonSubexpressions().eliminate(program));
+        assertThrows(IllegalArgumentException.class, () -> new Optimizer().optimize(program));
+    }
+
+    @Test
+    void test_matches_original() {
+        String[] operators = {"+", "-", "*", "/", "^"};
+        String[] operands = {"a", "b", "0", "2", "(a-b)", "(a/b)", "(b^a)"};
+        double[] values = {0, -0.0, 1, -1, 2, 0.5, Double.NaN, Double.POSITIVE_INFINITY};
+        Random random = new Random(11);
+        CommonSubexpressions eliminator = new CommonSubexpressions();
+
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder exp = new StringBuilder(operands[random.nextInt(operands.length)]);
+            for (int term = random.nextInt(8); term >= 0; term--) {
+                String next = operands[random.nextInt(operands.length)];
+                if (random.nextBoolean())
+                    exp.insert(0, '(').append(')');
+                exp.append(operators[random.nextInt(operators.length)]).append(next);
+            }
+
+            Program program = parse(exp.toString());
+            Program eliminated = eliminator.eliminate(program);
+            CompiledProgram compiled = BytecodeCompiler.compile(eliminated);
+            for (int row = 0; row < 10; row++) {
+                double[] vars = new double[program.variables().size()];
+                for (int i = 0; i < vars.length; i++)
+                    vars[i] = values[random.nextInt(values.length)];
+                Object expected = result(program, vars);
+                assertEquals(expected, result(eliminated, vars), () -> exp + " => " + eliminated);
+                assertEquals(expected, result(compiled, vars), () -> exp + " => " + eliminated);
+            }
+        }
+    }
+
+    private static Object result(Program program, double[] vars) {
+        try {
+            return program.run(vars);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    private static Object result(CompiledProgram compiled, double[] vars) {
+        try {
+            return compiled.eval(vars);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    void test_columns_use_temporaries() {
+        Program program = new CommonSubexpressions().eliminate(parse("(a+b)*a+(a+b)*b"));
+        assertEquals(1, program.temporaries());
+        double[] a = {1, 2, 3};
+        double[] b = {4, 5, 6};
+        double[] out = new double[3];
+        program.run(new double[][]{a, b}, out, out.length);
+        for (int i = 0; i < out.length; i++)
+            assertEquals((a[i] + b[i]) * a[i] + (a[i] + b[i]) * b[i], out[i]);
+    }
+
+    @Test
+    void test_expression_reports_ratio() {
+        Calculator calculator = new Calculator();
+        Expression expression = calculator.compile("(x*y+1)*2+(x*y+1)*3");
+        assertEquals(15 / 10.0, expression.deduplicationRatio());
+        assertEquals(20, expression.evaluate(2, 1.5));
+        assertEquals(1.0, calculator.compile("x+y").deduplicationRatio());
+    }
+}
@@ -0,0 +1,126 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Many threads sharing one Calculator. A small cache keeps compiling and
+ * evicting expressions while others are evaluated, so any state leaking
+ * between threads shows up as a wrong answer
+ */
+public class TestConcurrency {
+    private static final int THREADS = 32;
+    private static final int ITERATIONS = 5_000;
+    private static final MathContext CONTEXT = new MathContext(12);
+
+    private static String[] corpus() {
+        String[] corpus = new String[200];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = switch (i % 5) {
+                case 0 -> "-" + i + "-34*(-2.36--3.64)--76^3/(32*(-54+" + (i % 97) + "))+4-7";
+                case 1 -> "(" + i + "+1)^0.5*" + i + "/(" + i + "+2)";
+                case 2 -> i + "/(" + (i % 3) + "-" + (i % 3) + ")";
+                case 3 -> "((" + i + "*2)+(" + i + "*2))*(" + i + "*2)";
+                default -> "(" + i + "+2";
+            };
+        }
+        return corpus;
+    }
+
+    @Test
+    void test_shared_calculator_agrees_with_single_thread() throws Exception {
+        String[] corpus = corpus();
+        Calculator reference = new Calculator();
+        Result[] expected = new Result[corpus.length];
+        BigDecimal[] decimals = new BigDecimal[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            expected[i] = reference.tryEvaluate(corpus[i]);
+            if (expected[i].succeeded())
+                decimals[i] = reference.evaluate(corpus[i], CONTEXT);
+        }
+
+        // Far fewer entries than expressions, so the cache churns
+        Calculator shared = new Calculator(16);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    for (int n = 0; n < ITERATIONS; n++) {
+                        int i = (n * 7 + thread * 13) % corpus.length;
+                        Result result = shared.tryEvaluate(corpus[i]);
+                        assertEquals(expected[i].error(), result.error(), corpus[i]);
+                        assertEquals(expected[i].position(), result.position(), corpus[i]);
+                        if (expected[i].failed()) {
+                            assertThrows(RuntimeException.class, () -> shared.evaluate(corpus[i]));
+                            continue;
+                        }
+                        assertEquals(expected[i].value(), result.value(), corpus[i]);
+                        assertEquals(expected[i].value(), shared.evaluate(corpus[i]), corpus[i]);
+                        if (n % 10 == 0)
+                            assertEquals(decimals[i], shared.evaluate(corpus[i], CONTEXT), corpus[i]);
+                        // Metrics switched on and off under the evaluations
+                        if (n % 500 == 0)
+                            shared.setMetricsEnabled(thread % 2 == 0);
+                    }
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+            shared.setMetricsEnabled(false);
+        }
+
+        ExpressionCache cache = shared.getCache();
+        assertTrue(cache.size() <= cache.capacity(), "size " + cache.size());
+        assertTrue(cache.hits() > 0);
+    }
+
+    @Test
+    void test_cache_stays_bounded_under_concurrent_puts() throws Exception {
+        ExpressionCache cache = new ExpressionCache(64);
+        Calculator calculator = new Calculator();
+        Expression expression = calculator.compile("1+2");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < ITERATIONS; n++) {
+                        String key = Integer.toString((n * 31 + thread) % 500);
+                        Expression cached = cache.get(key);
+                        if (cached == null)
+                            cache.put(key, expression);
+                        else
+                            assertSame(expression, cached);
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= cache.capacity(), "size " + cache.size());
+        assertEquals((long) THREADS * ITERATIONS, cache.hits() + cache.misses());
+    }
+}
@@ -0,0 +1,103 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TestExpressionTree {
+
+    private final Calculator calculator = new Calculator();
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static String generate(Random random, int terms) {
+        String[] operators = {"+", "-", "*", "/", "^", "+-", "*-"};
+        StringBuilder exp = new StringBuilder();
+        int open = 0;
+        for (int term = 0; term < terms; term++) {
+            if (term > 0)
+                exp.append(operators[random.nextInt(operators.length)]);
+            if (random.nextInt(4) == 0) {
+                boolean negated = exp.length() > 0 && exp.charAt(exp.length() - 1) == '-';
+                exp.append(random.nextBoolean() && !negated ? "-(" : "(");
+                open++;
+            }
+            exp.append(random.nextInt(5) == 0 ? "x" : Integer.toString(1 + random.nextInt(9)));
+            if (open > 0 && random.nextInt(3) == 0) {
+                exp.append(')');
+                open--;
+            }
+        }
+        return exp.append(")".repeat(open)).toString();
+    }
+
+    @Test
+    void test_matches_serial_evaluation() {
+        Random random = new Random(25);
+        for (int n = 0; n < 500; n++) {
+            String exp = generate(random, 2 + random.nextInt(60));
+            // A tiny threshold, so even these are split many times over
+            ExpressionTree tree = calculator.tree(exp, 1 + random.nextInt(8));
+            double x = random.nextDouble() * 4;
+            double expected;
+            try {
+                expected = calculator.compile(exp).evaluate(x);
+            } catch (ArithmeticException e) {
+                // Some divide by something that comes to 0
+                ArithmeticException actual = assertThrows(ArithmeticException.class, () -> tree.evaluate(pool, x), exp);
+                assertEquals(e.getMessage(), actual.getMessage());
+                continue;
+            }
+            assertEquals(expected, tree.evaluate(pool, x), exp);
+        }
+    }
+
+    @Test
+    void test_million_term_chain() {
+        int terms = 1_000_000;
+        StringBuilder exp = new StringBuilder("0");
+        for (int i = 1; i < terms; i++)
+            exp.append(i % 2 == 0 ? '+' : '-').append(i % 97).append(i % 3 == 0 ? "*x" : "");
+        String s = exp.toString();
+        ExpressionTree tree = calculator.tree(s);
+        assertTrue(tree.size() > terms * 2);
+        assertEquals(calculator.compile(s).evaluate(1.5), tree.evaluate(pool, 1.5));
+    }
+
+    @Test
+    void test_deeply_nested_brackets() {
+        // Heavy on the right, 1-(2-(3-(...)))
+        int depth = 100_000;
+        StringBuilder exp = new StringBuilder();
+        for (int i = 1; i <= depth; i++)
+            exp.append(i % 10).append("-(");
+        exp.append('x').append(")".repeat(depth));
+        String s = exp.toString();
+        assertEquals(calculator.compile(s).evaluate(3), calculator.tree(s, 64).evaluate(pool, 3));
+    }
+
+    @Test
+    void test_errors_are_not_wrapped() {
+        StringBuilder exp = new StringBuilder("1");
+        for (int i = 0; i < 50_000; i++)
+            exp.append(i == 40_000 ? "+1/(x-2)" : "+" + i % 7);
+        ExpressionTree tree = calculator.tree(exp.toString(), 100);
+        ArithmeticException e = assertThrows(ArithmeticException.class, () -> tree.evaluate(pool, 2));
+        assertEquals("Division by 0", e.getMessage());
+        assertThrows(IllegalArgumentException.class, tree::evaluate);
+    }
+
+    @Test
+    void test_rejects_shared_subexpressions() {
+        Program shared = calculator.compile("(x+1)*(x+1)").program();
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionTree(shared, 8));
+    }
+}
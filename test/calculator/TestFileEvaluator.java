@@ -0,0 +1,79 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestFileEvaluator {
+
+    @TempDir
+    Path dir;
+
+    private final Calculator calculator = new Calculator();
+
+    private String[] lines() {
+        String[] lines = new String[1000];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = i % 97 == 0
+                    ? "(" + i + "+1"
+                    : "-" + i + "-34*(-2.36--3.64)--76^3/(32*(-54+" + (i % 13) + "))+" + i + "^0.5";
+        return lines;
+    }
+
+    private ByteArrayOutputStream evaluate(String[] lines, boolean binary, int window, ByteArrayOutputStream errors)
+            throws IOException {
+        Path input = dir.resolve("input.txt");
+        Files.writeString(input, String.join("\n", lines) + "\n", StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileEvaluator.Summary summary = new FileEvaluator(binary, window)
+                .evaluate(input, Channels.newChannel(out), new PrintStream(errors, true));
+        assertEquals(lines.length, summary.lines());
+        return out;
+    }
+
+    @Test
+    void test_text_output_across_windows() throws IOException {
+        String[] lines = lines();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        String[] answers = evaluate(lines, false, 256, errors).toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals(lines.length, answers.length);
+        for (int i = 0; i < lines.length; i++) {
+            if (i % 97 == 0)
+                assertEquals("NaN", answers[i]);
+            else
+                assertEquals(calculator.evaluate(lines[i]), Double.parseDouble(answers[i]), lines[i]);
+        }
+        assertTrue(errors.toString().startsWith("Line 1: Extra opening bracket"));
+        assertTrue(errors.toString().contains("Line 98: Extra opening bracket"));
+    }
+
+    @Test
+    void test_binary_output() throws IOException {
+        String[] lines = lines();
+        ByteBuffer answers = ByteBuffer.wrap(evaluate(lines, true, 1 << 20, new ByteArrayOutputStream()).toByteArray());
+        assertEquals(lines.length * 8, answers.remaining());
+        for (int i = 1; i < lines.length; i++) {
+            double answer = answers.getDouble(i * 8);
+            if (i % 97 == 0)
+                assertTrue(Double.isNaN(answer));
+            else
+                assertEquals(calculator.evaluate(lines[i]), answer, lines[i]);
+        }
+    }
+
+    @Test
+    void test_line_longer_than_window() throws IOException {
+        String[] lines = {"1+2", "1" + "+1".repeat(100), "3"};
+        assertThrows(IllegalStateException.class, () -> evaluate(lines, false, 64, new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,118 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestLexer {
+
+    Lexer lexer;
+
+    @BeforeEach
+    void setup() {
+        lexer = new Lexer();
+    }
+
+    private String[] texts(String exp) {
+        lexer.tokenize(exp);
+        ArrayList<String> texts = new ArrayList<>();
+        for (int i = 0; i < lexer.size(); i++)
+            texts.add(lexer.text(i));
+        return texts.toArray(new String[0]);
+    }
+
+    @ParameterizedTest(name = "Testing number parsing {index}: {0}")
+    @MethodSource("numbers")
+    void test_number_matches_parse_double(String literal) {
+        lexer.tokenize(literal);
+        assertEquals(1, lexer.size());
+        assertEquals(Lexer.NUMBER, lexer.kind(0));
+        assertEquals(Double.parseDouble(literal), lexer.value(0));
+    }
+
+    @ParameterizedTest(name = "Testing unary minus {index}: {0}")
+    @MethodSource("unary")
+    void test_unary_minus(String exp, String[] check) {
+        assertEquals(Arrays.toString(check), Arrays.toString(texts(exp)));
+    }
+
+    static Stream<Arguments> numbers() {
+        return Stream.of(
+                Arguments.of("0"),
+                Arguments.of("3.67"),
+                Arguments.of("0.00001"),
+                Arguments.of(".5"),
+                Arguments.of("5."),
+                Arguments.of("9007199254740993"),
+                Arguments.of("123456789012345678901234567890.123456789"),
+                Arguments.of("0.1000000000000000055511151231257827")
+        );
+    }
+
+    static Stream<Arguments> unary() {
+        return Stream.of(
+                Arguments.of("-(5*4)", new String[]{"-1","*","(","5","*","4",")"}),
+                Arguments.of("5+-(7-3)", new String[]{"5","-","(","7","-","3",")"}),
+                Arguments.of("5--(7-3)", new String[]{"5","+","(","7","-","3",")"}),
+                Arguments.of("5*-(7-3)", new String[]{"-5","*","(","7","-","3",")"}),
+                Arguments.of("-5/-(7)", new String[]{"5","/","(","7",")"}),
+                Arguments.of("(1)*-(3)", new String[]{"(","1",")","*","-1","*","(","3",")"}),
+                Arguments.of("2^3*-(4)", new String[]{"2","^","3","*","-1","*","(","4",")"}),
+                Arguments.of("2^-(3)*2", new String[]{"2","^","(","-1","*","(","3",")",")","*","2"}),
+                Arguments.of("(-(2))", new String[]{"(","-1","*","(","2",")",")"}),
+                Arguments.of("- 2 - - 3", new String[]{"-2","-","-3"}),
+                Arguments.of("-x+y", new String[]{"-1","*","x","+","y"}),
+                Arguments.of("2*-rate", new String[]{"-2","*","rate"}),
+                Arguments.of("a-b--c", new String[]{"a","-","b","+","c"}),
+                Arguments.of("2^-n*3", new String[]{"2","^","(","-1","*","n",")","*","3"})
+        );
+    }
+
+    @Test
+    void test_kinds_and_positions() {
+        lexer.tokenize("12 + (3^4)");
+        int[] kinds = {Lexer.NUMBER, Lexer.PLUS, Lexer.OPEN, Lexer.NUMBER, Lexer.POWER, Lexer.NUMBER, Lexer.CLOSE};
+        int[] positions = {0, 3, 5, 6, 7, 8, 9};
+        assertEquals(kinds.length, lexer.size());
+        for (int i = 0; i < kinds.length; i++) {
+            assertEquals(kinds[i], lexer.kind(i));
+            assertEquals(positions[i], lexer.position(i));
+        }
+    }
+
+    @Test
+    void test_variables() {
+        lexer.tokenize("price*(1+rate_2)");
+        assertEquals(Lexer.VARIABLE, lexer.kind(0));
+        assertEquals("price", lexer.name(0));
+        assertEquals(Lexer.VARIABLE, lexer.kind(5));
+        assertEquals("rate_2", lexer.name(5));
+    }
+
+    @Test
+    void test_lexer_is_reusable() {
+        lexer.tokenize("1+2+3+4");
+        lexer.tokenize("5");
+        assertEquals(1, lexer.size());
+        assertEquals(5, lexer.value(0));
+    }
+
+    @Test
+    void test_malformed_number() {
+        assertThrows(IllegalArgumentException.class, () -> lexer.tokenize("1.2.3"));
+    }
+
+    @Test
+    void test_unexpected_character() {
+        Exception e = assertThrows(IllegalArgumentException.class, () -> lexer.tokenize("1+#"));
+        assertEquals("Unexpected character '#' at position 2", e.getMessage());
+    }
+}
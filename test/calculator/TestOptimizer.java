@@ -0,0 +1,112 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestOptimizer {
+
+    private static Program parse(String exp) {
+        return new Parser().parse(new Lexer().tokenize(exp));
+    }
+
+    @ParameterizedTest(name = "Testing optimization {index}: {0}")
+    @MethodSource("optimizations")
+    void test_optimize(String exp, String check, int removed) {
+        Optimizer optimizer = new Optimizer();
+        assertEquals(check, optimizer.optimize(parse(exp)).toString());
+        assertEquals(removed, optimizer.removed());
+    }
+
+    static Stream<Arguments> optimizations() {
+        return Stream.of(
+                Arguments.of("(2*3.5)^2", "49.0", 4),
+                Arguments.of("x*1", "x", 2),
+                Arguments.of("1*x/1", "x", 4),
+                Arguments.of("x^1-0", "x", 4),
+                Arguments.of("x+0", "x 0.0 +", 0),
+                Arguments.of("-x", "x neg", 1),
+                Arguments.of("-(-x)", "x", 4),
+                Arguments.of("y-(-x)", "y x +", 2),
+                Arguments.of("y+(-x)", "y x -", 2),
+                Arguments.of("2^-n", "2.0 n neg ^", 1),
+                Arguments.of("x^2", "x dup *", 0),
+                Arguments.of("(x+1)^2*3", "x 1.0 + dup * 3.0 *", 0),
+                Arguments.of("x^0", "1.0", 2),
+                Arguments.of("(x/y)^0", "x y / 0.0 ^", 0),
+                Arguments.of("1/(2-2)", "1.0 0.0 /", 2),
+                Arguments.of("x*(1+2*3-4)", "x 3.0 *", 6)
+        );
+    }
+
+    @Test
+    void test_fast_math() {
+        Optimizer optimizer = new Optimizer(true);
+        assertEquals("x", optimizer.optimize(parse("x+0")).toString());
+        assertEquals("x neg", optimizer.optimize(parse("0-x")).toString());
+        assertEquals("0.0", optimizer.optimize(parse("(x+y)*0")).toString());
+        assertEquals("x y / 0.0 *", optimizer.optimize(parse("x/y*0")).toString());
+    }
+
+    @Test
+    void test_variables_keep_their_slots() {
+        Program program = new Optimizer().optimize(parse("a^0+b"));
+        assertEquals("1.0 b +", program.toString());
+        assertEquals(2, program.variables().size());
+        assertEquals(3, program.run(new double[]{7, 2}));
+    }
+
+    @Test
+    void test_matches_unoptimized() {
+        String[] operators = {"+", "-", "*", "/", "^"};
+        String[] operands = {"a", "b", "c", "0", "-0", "1", "-1", "2", "0.5", "(a-a)", "-(b)"};
+        double[] values = {0, -0.0, 1, -1, 2, 0.5, 3.75, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Random random = new Random(7);
+        Optimizer optimizer = new Optimizer();
+
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder exp = new StringBuilder(operands[random.nextInt(operands.length)]);
+            for (int term = random.nextInt(6); term >= 0; term--) {
+                String next = operands[random.nextInt(operands.length)];
+                if (random.nextBoolean())
+                    exp.insert(0, '(').append(')');
+                exp.append(operators[random.nextInt(operators.length)]).append(next);
+            }
+
+            Program program = parse(exp.toString());
+            Program optimized = optimizer.optimize(program);
+            assertTrue(optimized.size() <= program.size());
+            for (int row = 0; row < 20; row++) {
+                double[] vars = new double[program.variables().size()];
+                for (int i = 0; i < vars.length; i++)
+                    vars[i] = values[random.nextInt(values.length)];
+                Object expected = result(program, vars);
+                assertEquals(expected, result(optimized, vars), () -> exp + " " + program + " => " + optimized);
+            }
+        }
+    }
+
+    private static Object result(Program program, double[] vars) {
+        try {
+            return program.run(vars);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    void test_calculator_counts_removed_operations() {
+        Calculator calculator = new Calculator();
+        assertEquals(49, calculator.evaluate("(2*3.5)^2"));
+        assertEquals(4, calculator.getOptimizedAway());
+        calculator.setFastMath(true);
+        assertTrue(calculator.isFastMath());
+        assertEquals(0, calculator.compile("x*0").evaluate(Double.NaN));
+    }
+}
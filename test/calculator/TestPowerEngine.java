@@ -0,0 +1,111 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestPowerEngine {
+
+    @ParameterizedTest(name = "Testing root {index}: {0} root {1}")
+    @MethodSource("roots")
+    void test_root_accuracy(double radicand, long n) {
+        double root = PowerEngine.root(radicand, n, PowerEngine.DEFAULT_TOLERANCE);
+        assertEquals(radicand, PowerEngine.pow(root, n), Math.abs(radicand) * n * 1e-15);
+    }
+
+    @ParameterizedTest(name = "Testing fractional pow {index}: {0} ^ {1}")
+    @MethodSource("powers")
+    void test_fractional_pow_accuracy(double base, double exponent) {
+        double expected = Math.pow(base, exponent);
+        assertEquals(expected, PowerEngine.fractionalPow(base, exponent, PowerEngine.DEFAULT_TOLERANCE), expected * 1e-12);
+    }
+
+    static Stream<Arguments> roots() {
+        return Stream.of(
+                Arguments.of(2, 5),
+                Arguments.of(29, 10),
+                Arguments.of(3.67, 7),
+                Arguments.of(0.5, 40),
+                Arguments.of(1e300, 17),
+                Arguments.of(1e-300, 1000),
+                Arguments.of(123456.789, 1000000)
+        );
+    }
+
+    static Stream<Arguments> powers() {
+        return Stream.of(
+                Arguments.of(2, 5.675),
+                Arguments.of(3.67, 7.5),
+                Arguments.of(3.5, 7.5),
+                Arguments.of(0.5, 0.5),
+                Arguments.of(27, 1.0 / 3),
+                Arguments.of(10, 2.0 / 3),
+                Arguments.of(1.05, 30.25),
+                Arguments.of(7, 0.123456),
+                Arguments.of(7, 0.1234567891)
+        );
+    }
+
+    @Test
+    void test_perfect_roots_are_exact() {
+        assertEquals(3, PowerEngine.root(27, 3, PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(2, PowerEngine.root(1024, 10, PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(7, PowerEngine.root(Math.pow(7, 12), 12, PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(3, new Calculator().evaluate("27^(1/3)"));
+    }
+
+    @Test
+    void test_tolerance_is_selectable() {
+        double exact = Math.pow(5, 1.0 / 9);
+        assertEquals(exact, PowerEngine.root(5, 9, 1e-3), 1e-3);
+        assertEquals(exact, PowerEngine.root(5, 9, 0), 1e-15);
+    }
+
+    @Test
+    void test_imaginary_root() {
+        assertThrows(RuntimeException.class, () -> PowerEngine.root(-4, 2, PowerEngine.DEFAULT_TOLERANCE));
+    }
+
+    @Test
+    void test_infinite_exponent() {
+        assertEquals(Double.POSITIVE_INFINITY, PowerEngine.pow(2, Double.POSITIVE_INFINITY));
+        assertEquals(0, PowerEngine.power(2, Double.NEGATIVE_INFINITY, PowerEngine.DEFAULT_TOLERANCE));
+        assertTrue(Double.isNaN(PowerEngine.power(Double.NaN, Double.POSITIVE_INFINITY, PowerEngine.DEFAULT_TOLERANCE)));
+    }
+
+    @Test
+    void test_rational_exponent() {
+        assertEquals(2, PowerEngine.power(8, Rational.valueOf(1, 3), PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(-2, PowerEngine.power(-8, Rational.valueOf(1, 3), PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(0.25, PowerEngine.power(8, Rational.valueOf(-2, 3), PowerEngine.DEFAULT_TOLERANCE));
+        assertEquals(Math.pow(2, 3.5), PowerEngine.power(2, Rational.valueOf(7, 2), PowerEngine.DEFAULT_TOLERANCE), 1e-12);
+        assertEquals(1024, PowerEngine.power(2, Rational.valueOf(10), PowerEngine.DEFAULT_TOLERANCE));
+    }
+
+    @Test
+    void test_binary_gcd() {
+        assertEquals(4, PowerEngine.gcd(788, 100));
+        assertEquals(25, PowerEngine.gcd(-5675, 1000));
+        assertEquals(1, PowerEngine.gcd(Long.MAX_VALUE, Long.MAX_VALUE - 1));
+        assertEquals(9, PowerEngine.gcd(0, 9));
+        assertEquals(1L << 40, PowerEngine.gcd(3L << 40, 5L << 41));
+    }
+
+    @Test
+    void test_gcd_of_min_value() {
+        long gcd = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> PowerEngine.gcd(Long.MIN_VALUE, 6));
+        assertEquals(2, gcd);
+        assertEquals(2, PowerEngine.gcd(-6, Long.MIN_VALUE));
+        assertEquals(1, PowerEngine.gcd(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(1L << 40, PowerEngine.gcd(Long.MIN_VALUE, 3L << 40));
+        // 2^63 does not fit, so comes back as Long.MIN_VALUE like Math.abs
+        assertEquals(Long.MIN_VALUE, PowerEngine.gcd(Long.MIN_VALUE, Long.MIN_VALUE));
+        assertEquals(Long.MIN_VALUE, PowerEngine.gcd(Long.MIN_VALUE, 0));
+    }
+}
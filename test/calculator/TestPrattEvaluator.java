@@ -0,0 +1,159 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Runs every case of TestCalculator with the PRATT engine, then the cases where it differs
+ */
+public class TestPrattEvaluator extends TestCalculator {
+
+    private final Calculator compiled = new Calculator();
+
+    @BeforeEach
+    @Override
+    void setup() {
+        super.setup();
+        calculator.setEngine(Calculator.Engine.PRATT);
+    }
+
+    @Test
+    @Override
+    void test_cache_counts_hits_and_misses() {
+        // Answered in one pass, so nothing is compiled or cached
+        calculator.evaluate("1+2*4");
+        calculator.evaluate("1 + 2 * 4");
+        ExpressionCache cache = calculator.getCache();
+        assertEquals(0, cache.misses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void test_power_is_right_associative() {
+        assertEquals(512, calculator.evaluate("2^3^2"));
+        assertEquals(64, compiled.evaluate("2^3^2"));
+        assertEquals(2, calculator.evaluate("2^3^0"));
+    }
+
+    @ParameterizedTest(name = "Testing same answer: {0}")
+    @ValueSource(strings = {"-(2)^2", "2^-(1+1)*3", "3*-(2)^2", "(1)*-(2)^2/3", "6/-(2)*3", "1+-(2)", "1--(2)",
+            "0*-(5)", "-0.0", " 1 2 . 5 + 1", "1 +\t2", "((1))", "-2^0.5", "0.1+0.2", "123456789012345678901",
+            "0.12345678901234567890123456"})
+    void test_same_answer_as_compiled(String exp) {
+        assertEquals(compiled.evaluate(exp), calculator.evaluate(exp));
+    }
+
+    @ParameterizedTest(name = "Testing same error: {0}")
+    @ValueSource(strings = {"", "()", "1+", "(1", "1)", "1/0", "2^(1/0)+)", "1.2.3", "1 # 2", "x+1", "--(2)", "2(3)",
+            "1\t2", "1e5"})
+    void test_same_error_as_compiled(String exp) {
+        assertSameOutcome(exp);
+    }
+
+    /**
+     * Asserts both engines give the same answer, or throw the same exception
+     */
+    private void assertSameOutcome(String exp) {
+        RuntimeException expected = null;
+        try {
+            compiled.evaluate(exp);
+        } catch (RuntimeException e) {
+            expected = e;
+        }
+        if (expected == null) {
+            // The compiled engine's lenient parse answers it, so the one-pass engine must too
+            assertEquals(compiled.evaluate(exp), calculator.evaluate(exp), exp);
+            return;
+        }
+        RuntimeException actual = assertThrows(RuntimeException.class, () -> calculator.evaluate(exp), exp);
+        assertEquals(expected.getClass(), actual.getClass(), exp);
+        assertEquals(expected.getMessage(), actual.getMessage(), exp);
+    }
+
+    @Test
+    void test_deep_nesting_falls_back() {
+        String exp = "(".repeat(PrattEvaluator.MAX_DEPTH * 2) + "1" + ")".repeat(PrattEvaluator.MAX_DEPTH * 2);
+        assertEquals(1, calculator.evaluate(exp));
+        assertEquals(1, calculator.getCache().size());
+    }
+
+    @Test
+    void test_generated_expressions_match_compiled() {
+        Random random = new Random(24);
+        String[] operators = {"+", "-", "*", "/", "^", "*-", "+-", "/-", "^-"};
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder exp = new StringBuilder();
+            int open = 0;
+            for (int term = 0; term < 6; term++) {
+                if (term > 0)
+                    exp.append(operators[random.nextInt(term % 2 == 0 ? operators.length : 4)]);
+                if (random.nextInt(4) == 0) {
+                    exp.append(random.nextBoolean() ? "-(" : "(");
+                    open++;
+                }
+                exp.append(1 + random.nextInt(9));
+                if (random.nextInt(3) == 0)
+                    exp.append('.').append(random.nextInt(10));
+                if (open > 0 && random.nextInt(3) == 0) {
+                    exp.append(')');
+                    open--;
+                }
+            }
+            exp.append(")".repeat(open));
+            String s = exp.toString();
+            // Chains of powers group differently by design
+            if (!hasPowerChain(s))
+                assertSameOutcome(s);
+        }
+    }
+
+    /**
+     * @return              Whether two ^ are applied in a row at the same depth of brackets, as in 2^-(1)^3
+     */
+    private static boolean hasPowerChain(String exp) {
+        boolean[] power = new boolean[exp.length() + 1];
+        int depth = 0;
+        for (int i = 0; i < exp.length(); i++) {
+            char c = exp.charAt(i);
+            char previous = i == 0 ? '(' : exp.charAt(i - 1);
+            if (c == '(') {
+                power[++depth] = false;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '^') {
+                if (power[depth])
+                    return true;
+                power[depth] = true;
+            } else if (c == '+' || c == '*' || c == '/' || (c == '-' && (Character.isDigit(previous) || previous == ')'))) {
+                power[depth] = false;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void test_evaluation_does_not_allocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        String exp = "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7";
+        int iterations = 200_000;
+        double sum = 0;
+        for (int i = 0; i < iterations; i++)
+            sum += calculator.evaluate(exp);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            sum += calculator.evaluate(exp);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, allocated / iterations, "bytes per evaluation");
+        assertEquals(-820.6311111111111 * iterations * 2, sum, 1e-3);
+    }
+}
@@ -0,0 +1,127 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestPrecision {
+
+    Calculator calculator;
+
+    @BeforeEach
+    void setup() {
+        calculator = new Calculator();
+    }
+
+    @ParameterizedTest(name = "Testing precise evaluation {index}: {0}")
+    @MethodSource("expressions")
+    void test_precise(String exp, MathContext context, String answer, boolean escalated) {
+        assertEquals(new BigDecimal(answer), calculator.evaluate(exp, context));
+        assertEquals(1, calculator.getPreciseEvaluations());
+        assertEquals(escalated ? 1 : 0, calculator.getEscalations());
+    }
+
+    static Stream<Arguments> expressions() {
+        return Stream.of(
+                Arguments.of("0.1+0.2", new MathContext(10), "0.3", false),
+                Arguments.of("0.1+0.2", MathContext.DECIMAL64, "0.3", true),
+                Arguments.of("19.99*3-0.97", new MathContext(12), "59", false),
+                Arguments.of("100*1.5", MathContext.UNLIMITED, "150", false),
+                Arguments.of("(1+2)*(1+2)-4/8", MathContext.UNLIMITED, "8.5", false),
+                Arguments.of("12^3", MathContext.UNLIMITED, "1728", false),
+                Arguments.of("2^64", MathContext.UNLIMITED, "18446744073709551616", true),
+                Arguments.of("1/3", new MathContext(20), "0.33333333333333333333", true),
+                Arguments.of("1.1^2", MathContext.DECIMAL64, "1.21", true),
+                Arguments.of("2^-2", MathContext.DECIMAL64, "0.25", true),
+                Arguments.of("4^0.5", MathContext.DECIMAL64, "2", true),
+                Arguments.of("10^200*10^200/10^200", MathContext.UNLIMITED, "1" + "0".repeat(200), true),
+                // Literals a double cannot hold are read as written
+                Arguments.of("9007199254740993-9007199254740992", MathContext.DECIMAL128, "1", true),
+                Arguments.of("(9007199254740993+1)-(9007199254740992+1)", MathContext.DECIMAL128, "1", true),
+                Arguments.of("9007199254740993", MathContext.UNLIMITED, "9007199254740993", true),
+                Arguments.of("0.12345678901234567891", MathContext.DECIMAL128, "0.12345678901234567891", true),
+                Arguments.of("1" + "0".repeat(400) + "/1" + "0".repeat(399), MathContext.UNLIMITED, "10", true)
+        );
+    }
+
+    @Test
+    void test_division_by_zero() {
+        Exception e = assertThrows(ArithmeticException.class, () -> calculator.evaluate("1/(2-2)", MathContext.DECIMAL64));
+        assertEquals("Division by 0", e.getMessage());
+        // 0.3-0.1-0.2 is not zero in double, but is exactly
+        e = assertThrows(ArithmeticException.class, () -> calculator.evaluate("1/(0.3-0.1-0.2)", MathContext.DECIMAL64));
+        assertEquals("Division by 0", e.getMessage());
+        assertThrows(ArithmeticException.class, () -> calculator.evaluate("1/3", MathContext.UNLIMITED));
+    }
+
+    @Test
+    void test_variables() {
+        Expression expression = calculator.compile("price*(1+rate)^years");
+        assertEquals(new BigDecimal("110.25"), expression.evaluate(MathContext.DECIMAL64,
+                new BigDecimal("100"), new BigDecimal("0.05"), new BigDecimal("2")));
+        assertEquals(new BigDecimal("300"), calculator.compile("a*b").evaluate(MathContext.DECIMAL64,
+                new BigDecimal("1E+2"), new BigDecimal("3")));
+        Exception e = assertThrows(IllegalArgumentException.class, () -> expression.evaluate(MathContext.DECIMAL64));
+        assertEquals("No value for variable price", e.getMessage());
+    }
+
+    @Test
+    void test_large_exponent_variables() {
+        // Few digits but a large exponent, so not exact doubles
+        Expression x = calculator.compile("x");
+        assertEquals(new BigDecimal("100000000000000000000000"), x.evaluate(new MathContext(30), new BigDecimal("1E+23")));
+        assertEquals(new BigDecimal("1234567890123450000000000"),
+                x.evaluate(new MathContext(30), new BigDecimal("123456789012345E+10")));
+        assertEquals(new BigDecimal("1"), calculator.compile("x-y").evaluate(new MathContext(30),
+                new BigDecimal("10000000000000000000000001"), new BigDecimal("1E+25")));
+        assertEquals(new BigDecimal("2" + "0".repeat(400)), calculator.compile("x*2").evaluate(MathContext.UNLIMITED,
+                new BigDecimal("1E+400")));
+    }
+
+    @Test
+    void test_double_agrees_with_big_decimal() {
+        String[] operators = {"+", "-", "*", "/"};
+        String[] operands = {"0.1", "19.99", "3", "0.05", "100", "7", "1.25", "(2.5-0.01)", "(3-1.75)"};
+        MathContext[] contexts = {new MathContext(8), new MathContext(12), MathContext.DECIMAL64};
+        Random random = new Random(5);
+
+        int estimated = 0;
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder exp = new StringBuilder(operands[random.nextInt(operands.length)]);
+            for (int term = random.nextInt(6); term >= 0; term--) {
+                if (random.nextBoolean())
+                    exp.insert(0, '(').append(')');
+                exp.append(operators[random.nextInt(operators.length)]).append(operands[random.nextInt(operands.length)]);
+            }
+
+            PrecisionEvaluator precise = calculator.compile(exp.toString()).precise();
+            MathContext context = contexts[random.nextInt(contexts.length)];
+            BigDecimal answer = precise.estimate(new BigDecimal[0], context);
+            if (answer != null) {
+                estimated++;
+                assertEquals(precise.evaluate(new BigDecimal[0], context), answer, exp::toString);
+            }
+        }
+        // Most of the traffic should stay in double
+        assertTrue(estimated > 1000, estimated + " answered in double");
+    }
+
+    @Test
+    void test_escalation_rate() {
+        assertEquals(0, calculator.getEscalationRate());
+        calculator.evaluate("0.1+0.2", new MathContext(10));
+        calculator.evaluate("0.1+0.2", new MathContext(10));
+        calculator.evaluate("1.1+2.2", new MathContext(10));
+        calculator.evaluate("2^64", new MathContext(10));
+        assertEquals(0.25, calculator.getEscalationRate());
+    }
+}
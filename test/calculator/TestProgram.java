@@ -0,0 +1,163 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestProgram {
+
+    Calculator calculator;
+
+    @BeforeEach
+    void setup() {
+        calculator = new Calculator();
+    }
+
+    private static Program compile(String... postFix) {
+        return Program.compile(new ArrayList<>(Arrays.asList(postFix)), 0);
+    }
+
+    @Test
+    void test_compile_post_fix() {
+        Program program = compile("-12", "34", "-2.36", "-3.64", "-", "*", "-");
+        assertEquals(7, program.size());
+        assertEquals(4, program.maxStack());
+        assertEquals(Program.CONST, program.opcode(2));
+        assertEquals(-2.36, program.constant(program.operand(2)));
+        assertEquals(Program.MULTIPLY, program.opcode(5));
+        assertEquals(-12 - 34 * (-2.36 - -3.64), program.run());
+    }
+
+    @Test
+    void test_parser_matches_rpn() {
+        String exp = "-12-34*-(-2.36--3.64)--76-3/(32*(-54+36))+4^7";
+        Program program = new Parser().parse(new Lexer().tokenize(exp));
+        assertEquals("-12.0 -34.0 -2.36 -3.64 - * - -76.0 - 3.0 32.0 -54.0 36.0 + * / - 4.0 7.0 ^ +",
+                program.toString());
+    }
+
+    @Test
+    void test_extra_operator() {
+        Exception e = assertThrows(RuntimeException.class, () -> compile("1", "+"));
+        assertEquals("Extra operator somewhere", e.getMessage());
+    }
+
+    @Test
+    void test_extra_opening_bracket() {
+        Exception e = assertThrows(RuntimeException.class, () -> calculator.evaluate("(1+2"));
+        assertEquals("Extra opening bracket", e.getMessage());
+    }
+
+    @Test
+    void test_extra_closing_bracket() {
+        Exception e = assertThrows(RuntimeException.class, () -> calculator.evaluate("1+2)"));
+        assertEquals("Extra closing bracket", e.getMessage());
+    }
+
+    @Test
+    void test_division_by_zero() {
+        Expression expression = calculator.compile("1/(2-2)");
+        assertThrows(ArithmeticException.class, expression::evaluate);
+    }
+
+    @Test
+    void test_variables() {
+        Expression expression = calculator.compile("price*(1+rate)^years - price");
+        assertEquals(Arrays.asList("price", "rate", "years"), expression.variables());
+        assertEquals(100 * Math.pow(1.05, 3) - 100, expression.evaluate(100, 0.05, 3), 1e-12);
+        assertEquals(0, expression.evaluate(0, 0.05, 3));
+    }
+
+    @Test
+    void test_missing_variable() {
+        Exception e = assertThrows(IllegalArgumentException.class, () -> calculator.evaluate("x+1"));
+        assertEquals("No value for variable x", e.getMessage());
+    }
+
+    @Test
+    void test_operand_out_of_range() {
+        // Indices above 2^24 would wrap onto operand 0, so are rejected rather than packed
+        Program.Builder builder = new Program.Builder(4);
+        builder.constant(1);
+        builder.tee(Program.MAX_OPERANDS - 1);
+        Exception e = assertThrows(IllegalArgumentException.class, () -> builder.tee(Program.MAX_OPERANDS));
+        assertTrue(e.getMessage().startsWith("Expression too large"));
+    }
+
+    @Test
+    void test_rpn_with_variables() {
+        ArrayList<String> normalised = new ArrayList<>();
+        ArrayList<String> postFix = new ArrayList<>();
+        calculator.normaliseInput("a*-(b+2)".split(""), normalised, "", 0, false);
+        calculator.rpn(normalised, new java.util.Stack<>(), postFix, 0);
+        assertEquals("[a, -1, *, b, 2, +, *]", postFix.toString());
+        assertEquals("a -1.0 * b 2.0 + *", Program.compile(postFix, 0).toString());
+    }
+
+    @Test
+    void test_columns_match_rows() {
+        Expression expression = calculator.compile("price*(1+rate)^years/-n + 2.5");
+        int rows = Program.BLOCK_SIZE * 3 + 17;
+        double[] price = new double[rows];
+        double[] rate = new double[rows];
+        double[] years = new double[rows];
+        double[] n = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            price[i] = 100 + i;
+            rate[i] = i / 1000.0;
+            years[i] = i % 30;
+            n[i] = 1 + i % 7;
+        }
+        double[] out = new double[rows];
+        expression.evaluate(Map.of("price", price, "rate", rate, "years", years, "n", n), out);
+        for (int i = 0; i < rows; i++)
+            assertEquals(expression.evaluate(price[i], rate[i], years[i], n[i]), out[i], "row " + i);
+    }
+
+    @Test
+    void test_columns_division_by_zero() {
+        Expression expression = calculator.compile("1/x");
+        double[] out = new double[3];
+        assertThrows(ArithmeticException.class, () -> expression.evaluate(Map.of("x", new double[]{1, 0, 2}), out));
+    }
+
+    @Test
+    void test_missing_column() {
+        Expression expression = calculator.compile("x+y");
+        assertThrows(IllegalArgumentException.class, () -> expression.evaluate(Map.of("x", new double[1]), new double[1]));
+    }
+
+    @Test
+    void test_evaluation_does_not_allocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        String exp = "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7";
+        Expression expression = calculator.compile(exp);
+        int iterations = 200_000;
+        double sum = 0;
+
+        // Warm-up, so the scratch stack exists and the interpreter is compiled
+        for (int i = 0; i < iterations; i++)
+            sum += expression.evaluate() + calculator.evaluate(exp);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            sum += expression.evaluate();
+        long compiled = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            sum += calculator.evaluate(exp);
+        long cached = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(0, compiled / iterations, "bytes per compiled evaluation");
+        assertEquals(0, cached / iterations, "bytes per cached evaluation");
+        assertEquals(-820.6311111111111 * iterations * 4, sum, 1e-3);
+    }
+}
@@ -0,0 +1,118 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestProgramStore {
+
+    @TempDir
+    Path dir;
+
+    private static final String[] FORMULAS = {"2+3*4", "price*(1+rate)^3-price/2", "(x+1)*(x+1)-x/(x+1)", "-2^0.5", "1/0"};
+
+    private Path saved(Calculator calculator) throws IOException {
+        List<Expression> expressions = new ArrayList<>();
+        for (String formula : FORMULAS)
+            expressions.add(calculator.compile(formula));
+        Path file = dir.resolve("programs.bin");
+        ProgramStore.save(file, expressions, calculator.isFastMath());
+        return file;
+    }
+
+    @Test
+    void test_loaded_programs_match_compiled() throws IOException {
+        Calculator calculator = new Calculator();
+        Path file = saved(calculator);
+
+        Calculator fresh = new Calculator();
+        ProgramStore store = ProgramStore.load(file, fresh);
+        assertEquals(FORMULAS.length, store.size());
+        for (String formula : FORMULAS) {
+            Expression compiled = calculator.compile(formula);
+            Expression loaded = store.get(formula);
+            assertEquals(compiled.program().toString(), loaded.program().toString());
+            assertEquals(compiled.variables(), loaded.variables());
+            assertEquals(compiled.deduplicationRatio(), loaded.deduplicationRatio());
+        }
+        assertEquals(calculator.compile("(x+1)*(x+1)-x/(x+1)").evaluate(0.5), store.get("(x + 1)*(x+1) - x/(x+1)").evaluate(0.5));
+        assertThrows(ArithmeticException.class, () -> store.get("1/0").evaluate());
+    }
+
+    @Test
+    void test_load_fills_cache() throws IOException {
+        Path file = saved(new Calculator());
+
+        Calculator fresh = new Calculator();
+        ProgramStore.load(file, fresh);
+        assertEquals(14, fresh.evaluate("2 + 3*4"));
+        assertEquals(1, fresh.getCache().hits());
+        assertEquals(0, fresh.getCache().misses());
+    }
+
+    @Test
+    void test_save_calculator_cache() throws IOException {
+        Calculator calculator = new Calculator();
+        calculator.evaluate("1+2");
+        calculator.evaluate("3*4^2");
+        Path file = dir.resolve("cache.bin");
+        assertEquals(2, ProgramStore.save(file, calculator));
+
+        ProgramStore store = ProgramStore.load(file, new Calculator());
+        assertEquals(3, store.get("1+2").evaluate());
+        assertEquals(48, store.get("3*4^2").evaluate());
+    }
+
+    @Test
+    void test_rejects_corrupt_file() throws IOException {
+        Path file = saved(new Calculator());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(file, bytes);
+
+        IOException e = assertThrows(IOException.class, () -> ProgramStore.load(file, new Calculator()));
+        assertTrue(e.getMessage().contains("checksum"));
+    }
+
+    @Test
+    void test_rejects_other_version_and_format() throws IOException {
+        Path file = saved(new Calculator());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[7] = (byte) (ProgramStore.VERSION + 1);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramStore.load(file, new Calculator()));
+
+        Files.writeString(file, "2+3*4");
+        assertThrows(IOException.class, () -> ProgramStore.load(file, new Calculator()));
+    }
+
+    @Test
+    void test_rejects_other_fast_math() throws IOException {
+        Path file = saved(new Calculator());
+        Calculator fast = new Calculator();
+        fast.setFastMath(true);
+        assertThrows(IllegalArgumentException.class, () -> ProgramStore.load(file, fast));
+    }
+
+    @Test
+    void test_verify_rejects_bad_programs() {
+        int add = Program.ADD;
+        int constant = Program.CONST;
+        assertNull(ProgramStore.verify(new Program(new int[] {constant, constant, add}, new double[] {1}, new String[0], 2, 0)));
+        // Reads a constant that is not in the pool
+        assertNotNull(ProgramStore.verify(new Program(new int[] {constant | 1 << 8}, new double[] {1}, new String[0], 1, 0)));
+        // Adds with one value on the stack
+        assertNotNull(ProgramStore.verify(new Program(new int[] {constant, add}, new double[] {1}, new String[0], 1, 0)));
+        // Deeper than maxStack
+        assertNotNull(ProgramStore.verify(new Program(new int[] {constant, constant, add}, new double[] {1}, new String[0], 1, 0)));
+        // Unknown opcode
+        assertNotNull(ProgramStore.verify(new Program(new int[] {constant, 99}, new double[] {1}, new String[0], 1, 0)));
+    }
+}
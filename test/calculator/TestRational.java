@@ -0,0 +1,152 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestRational {
+
+    @ParameterizedTest(name = "Testing exact evaluation {index}: {0}")
+    @MethodSource("expressions")
+    void test_evaluate_exact(String exp, String answer) {
+        assertEquals(answer, new Calculator().evaluateExact(exp).toString());
+    }
+
+    static Stream<Arguments> expressions() {
+        return Stream.of(
+                Arguments.of("0.1+0.2", "3/10"),
+                Arguments.of("1/3*3", "1"),
+                Arguments.of("1/3-1/2", "-1/6"),
+                Arguments.of("2^-2+0.75", "1"),
+                Arguments.of("(2/3)^3", "8/27"),
+                Arguments.of("2^100", "1267650600228229401496703205376"),
+                Arguments.of("8^(1/3)", "2"),
+                Arguments.of("-8^(2/3)", "-4"),
+                Arguments.of("(16/81)^0.75", "8/27"),
+                Arguments.of("9223372036854775807+1-1", "9223372036854775807"),
+                // Literals longer than a double holds are read as written
+                Arguments.of("9007199254740993-9007199254740992", "1"),
+                Arguments.of("9007199254740993", "9007199254740993"),
+                Arguments.of("(9007199254740993+1)-(9007199254740992+1)", "1"),
+                Arguments.of("0.12345678901234567891*100000000000000000000", "12345678901234567891"),
+                Arguments.of("-123456789012345678901234567890/10", "-12345678901234567890123456789")
+        );
+    }
+
+    @Test
+    void test_no_exact_answer() {
+        Calculator calculator = new Calculator();
+        Exception e = assertThrows(ArithmeticException.class, () -> calculator.evaluateExact("1/(1-1)"));
+        assertEquals("Division by 0", e.getMessage());
+        e = assertThrows(ArithmeticException.class, () -> calculator.evaluateExact("2^0.5"));
+        assertEquals("2^1/2 has no exact answer", e.getMessage());
+        assertThrows(ArithmeticException.class, () -> calculator.evaluateExact("0^-1"));
+    }
+
+    @Test
+    void test_promotes_on_overflow() {
+        Rational max = Rational.valueOf(Long.MAX_VALUE);
+        Rational sum = max.add(Rational.ONE);
+        assertFalse(sum.fitsLong());
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), sum.numerator());
+        assertTrue(sum.subtract(Rational.ONE).fitsLong());
+        assertEquals(max, sum.subtract(Rational.ONE));
+
+        // Cross-cancelling keeps this product in longs
+        Rational product = Rational.valueOf(Long.MAX_VALUE, 3).multiply(Rational.valueOf(3, Long.MAX_VALUE));
+        assertEquals(Rational.ONE, product);
+        assertTrue(product.fitsLong());
+
+        assertEquals("-1/9223372036854775808", Rational.valueOf(1, Long.MIN_VALUE).toString());
+        assertEquals(Rational.valueOf(Long.MIN_VALUE, 2), Rational.valueOf(-(1L << 62)));
+    }
+
+    @Test
+    void test_roots() {
+        assertEquals(Rational.valueOf(2, 3), Rational.valueOf(8, 27).root(3));
+        assertEquals(Rational.valueOf(1L << 30), Rational.valueOf(1L << 60).root(2));
+        assertNull(Rational.valueOf(2).root(2));
+        assertNull(Rational.valueOf(1, 2).root(1000));
+        assertEquals(Rational.valueOf(3), Rational.valueOf(3).pow(1001).root(1001));
+    }
+
+    @Test
+    void test_decimals() {
+        assertEquals(Rational.valueOf(1, 10), Rational.valueOf(0.1));
+        assertEquals(Rational.valueOf(-5, 4), Rational.valueOf(-1.25));
+        assertEquals(Rational.valueOf(12300), Rational.valueOf(new BigDecimal("1.23E+4")));
+        assertThrows(ArithmeticException.class, () -> Rational.valueOf(Double.NaN));
+        // Beyond a long, whole doubles are read as their shortest decimal too
+        assertEquals(Rational.valueOf(new BigDecimal("9223372036854776000")), Rational.valueOf(0x1p63));
+        assertEquals(Rational.valueOf(new BigDecimal("-9223372036854776000")), Rational.valueOf(-0x1p63));
+        assertEquals(Rational.valueOf(Long.MAX_VALUE - 1023), Rational.valueOf(0x1p63 - 1024));
+        assertEquals(0.1, Rational.valueOf(1, 10).doubleValue());
+        assertEquals(1.0 / 3, Rational.valueOf(1, 3).add(Rational.valueOf(Long.MAX_VALUE)).subtract(Rational.valueOf(Long.MAX_VALUE)).doubleValue());
+    }
+
+    @Test
+    void test_double_value_is_nearest() {
+        Random random = new Random(5);
+        for (int n = 0; n < 5000; n++) {
+            BigInteger numerator = new BigInteger(70, random).subtract(BigInteger.ONE.shiftLeft(69));
+            BigInteger denominator = new BigInteger(70, random).add(BigInteger.ONE);
+            Rational x = Rational.valueOf(numerator, denominator);
+            double value = x.doubleValue();
+            // No neighbouring double is nearer the exact fraction
+            BigDecimal distance = distance(numerator, denominator, value);
+            assertTrue(distance.compareTo(distance(numerator, denominator, Math.nextUp(value))) <= 0, x.toString());
+            assertTrue(distance.compareTo(distance(numerator, denominator, Math.nextDown(value))) <= 0, x.toString());
+        }
+
+        // Ties go to even, below the normal range and past the largest double
+        BigInteger two = BigInteger.TWO;
+        assertEquals(0x1p53, Rational.valueOf(two.pow(53).add(BigInteger.ONE), BigInteger.ONE).doubleValue());
+        assertEquals(0x1p53 + 4, Rational.valueOf(two.pow(53).add(BigInteger.valueOf(3)), BigInteger.ONE).doubleValue());
+        assertEquals(0, Rational.valueOf(BigInteger.ONE, two.pow(1075)).doubleValue());
+        assertEquals(Double.MIN_VALUE, Rational.valueOf(BigInteger.valueOf(3), two.pow(1076)).doubleValue());
+        assertEquals(0x1.8p-1060, Rational.valueOf(BigInteger.valueOf(3), two.pow(1061)).doubleValue());
+        assertEquals(Double.NEGATIVE_INFINITY, Rational.valueOf(two.pow(1024).negate(), BigInteger.ONE).doubleValue());
+        assertEquals(Double.MAX_VALUE, Rational.valueOf(new BigDecimal(Double.MAX_VALUE)).doubleValue());
+        assertEquals(-0.1, Rational.valueOf(BigInteger.valueOf(-1), BigInteger.TEN).doubleValue());
+    }
+
+    /**
+     * @return              |numerator / denominator - value| * denominator, exactly
+     */
+    private static BigDecimal distance(BigInteger numerator, BigInteger denominator, double value) {
+        return new BigDecimal(numerator).subtract(new BigDecimal(denominator).multiply(new BigDecimal(value))).abs();
+    }
+
+    @Test
+    void test_matches_big_integer_fractions() {
+        Random random = new Random(3);
+        long[] magnitudes = {10, 1000, 1L << 31, 1L << 62, Long.MAX_VALUE};
+        for (int n = 0; n < 5000; n++) {
+            long[] parts = new long[4];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = random.nextLong() % magnitudes[random.nextInt(magnitudes.length)];
+                if (parts[i] == 0 && i % 2 == 1)
+                    parts[i] = 1;
+            }
+            Rational x = Rational.valueOf(parts[0], parts[1]);
+            Rational y = Rational.valueOf(parts[2], parts[3]);
+            BigInteger a = BigInteger.valueOf(parts[0]), b = BigInteger.valueOf(parts[1]);
+            BigInteger c = BigInteger.valueOf(parts[2]), d = BigInteger.valueOf(parts[3]);
+
+            assertEquals(Rational.valueOf(a.multiply(d).add(c.multiply(b)), b.multiply(d)), x.add(y));
+            assertEquals(Rational.valueOf(a.multiply(d).subtract(c.multiply(b)), b.multiply(d)), x.subtract(y));
+            assertEquals(Rational.valueOf(a.multiply(c), b.multiply(d)), x.multiply(y));
+            assertEquals(x.subtract(y).signum(), Integer.signum(x.compareTo(y)));
+            if (c.signum() != 0)
+                assertEquals(Rational.valueOf(a.multiply(d), b.multiply(c)), x.divide(y));
+        }
+    }
+}
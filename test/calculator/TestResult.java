@@ -0,0 +1,118 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class TestResult {
+
+    Calculator calculator;
+
+    @BeforeEach
+    void setup() {
+        calculator = new Calculator();
+    }
+
+    @ParameterizedTest(name = "Testing error {index}: {0}")
+    @MethodSource("errors")
+    void test_error_codes(String exp, ErrorCode error, int position) {
+        Result result = calculator.tryEvaluate(exp);
+        assertTrue(result.failed());
+        assertEquals(error, result.error());
+        assertEquals(position, result.position());
+        assertTrue(Double.isNaN(result.value()));
+        // Errors found before compiling are the same from validate
+        if (error != ErrorCode.DIVISION_BY_ZERO && error != ErrorCode.NO_VALUE_FOR_VARIABLE)
+            assertEquals(error, calculator.validate(exp).error());
+    }
+
+    private static Stream<Arguments> errors() {
+        return Stream.of(
+                Arguments.of("1+2)", ErrorCode.EXTRA_CLOSING_BRACKET, 3),
+                Arguments.of("(1+2", ErrorCode.EXTRA_OPENING_BRACKET, 0),
+                Arguments.of("2*((1+2)", ErrorCode.EXTRA_OPENING_BRACKET, 2),
+                Arguments.of("1+#", ErrorCode.UNEXPECTED_CHARACTER, 2),
+                Arguments.of("1..2", ErrorCode.MALFORMED_NUMBER, 0),
+                Arguments.of("3*-.", ErrorCode.MALFORMED_NUMBER, 2),
+                Arguments.of("1+", ErrorCode.EXTRA_OPERATOR, 1),
+                Arguments.of("*2", ErrorCode.EXTRA_OPERATOR, 0),
+                Arguments.of("(1)(2)", ErrorCode.EXTRA_OPERAND, 4),
+                Arguments.of("x*2", ErrorCode.NO_VALUE_FOR_VARIABLE, 0),
+                Arguments.of("1+2/(3-3)", ErrorCode.DIVISION_BY_ZERO, 3),
+                Arguments.of("2+0^-1", ErrorCode.DIVISION_BY_ZERO, 3),
+                // Positions count whitespace
+                Arguments.of("1 + 2 )", ErrorCode.EXTRA_CLOSING_BRACKET, 6)
+        );
+    }
+
+    @Test
+    void test_success() {
+        Result result = calculator.tryEvaluate("-12-34*(-2.36--3.64)");
+        assertTrue(result.succeeded());
+        assertNull(result.error());
+        assertEquals(-1, result.position());
+        assertEquals(calculator.evaluate("-12-34*(-2.36--3.64)"), result.value());
+        // Cached, and the same again
+        assertEquals(result.value(), calculator.tryEvaluate("-12-34*(-2.36--3.64)").value());
+
+        Result valid = calculator.validate("2^x");
+        assertTrue(valid.succeeded());
+        assertNull(valid.message());
+    }
+
+    @Test
+    void test_message() {
+        Result result = calculator.tryEvaluate("(2+3))*4");
+        assertEquals("extra closing bracket at 5", result.message());
+        assertEquals("extra closing bracket at 5", result.toString());
+    }
+
+    @Test
+    void test_agrees_with_evaluate() {
+        // Random strings over the expression alphabet, mostly malformed
+        Random random = new Random(18);
+        String alphabet = "0123.+-*/^()x ";
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder exp = new StringBuilder();
+            int length = 1 + random.nextInt(10);
+            for (int i = 0; i < length; i++)
+                exp.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            String s = exp.toString();
+
+            boolean compiles;
+            try {
+                calculator.compile(s);
+                compiles = true;
+            } catch (RuntimeException e) {
+                compiles = false;
+            }
+            assertEquals(compiles, calculator.validate(s).succeeded(), s);
+
+            Result result = calculator.tryEvaluate(s);
+            try {
+                assertEquals(calculator.evaluate(s), result.value(), s);
+                assertTrue(result.succeeded(), s);
+            } catch (RuntimeException e) {
+                assertTrue(result.failed(), s);
+            }
+        }
+    }
+
+    @Test
+    void test_errors_counted_by_code() {
+        calculator.setMetricsEnabled(true);
+        calculator.tryEvaluate("(1");
+        calculator.tryEvaluate("1/0");
+        calculator.tryEvaluate("1/0");
+        assertEquals(1L, calculator.getMetrics().getErrors().get("EXTRA_OPENING_BRACKET"));
+        assertEquals(2L, calculator.getMetrics().getErrors().get("DIVISION_BY_ZERO"));
+        calculator.setMetricsEnabled(false);
+    }
+}
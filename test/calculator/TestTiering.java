@@ -0,0 +1,85 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+public class TestTiering {
+
+    private static void awaitTier(Expression expression, Expression.Tier tier) throws InterruptedException {
+        for (int i = 0; i < 500 && expression.tier() != tier; i++)
+            Thread.sleep(10);
+        assertEquals(tier, expression.tier());
+    }
+
+    @Test
+    void test_promoted_after_threshold() throws InterruptedException {
+        Tiering tiering = new Tiering(10);
+        Calculator calculator = new Calculator(16, ForkJoinPool.commonPool(), tiering);
+        String exp = "-12-34*(-2.36--3.64)--76^3/(32*(-54+36))+4-7";
+        Expression expression = calculator.compile(exp);
+
+        double interpreted = expression.evaluate();
+        for (int i = 1; i < 9; i++)
+            assertEquals(interpreted, expression.evaluate());
+        assertEquals(Expression.Tier.INTERPRETED, expression.tier());
+        assertEquals(9, expression.invocations());
+        assertEquals(0, tiering.queued());
+
+        assertEquals(interpreted, expression.evaluate());
+        awaitTier(expression, Expression.Tier.COMPILED);
+        assertEquals(1, tiering.queued());
+        assertEquals(1, tiering.promoted());
+        assertEquals(interpreted, expression.evaluate());
+        assertEquals(10, expression.invocations());
+    }
+
+    @Test
+    void test_cached_expressions_are_promoted() throws InterruptedException {
+        Tiering tiering = new Tiering(5);
+        Calculator calculator = new Calculator(16, ForkJoinPool.commonPool(), tiering);
+        for (int i = 0; i < 100; i++)
+            assertEquals(7, calculator.evaluate("1+2*3"));
+        Expression expression = calculator.getCache().get("1+2*3");
+        awaitTier(expression, Expression.Tier.COMPILED);
+        assertEquals(1, tiering.promoted());
+    }
+
+    @Test
+    void test_long_expressions_are_not_compiled() throws InterruptedException {
+        Tiering tiering = new Tiering(1);
+        Calculator calculator = new Calculator(16, ForkJoinPool.commonPool(), tiering);
+        Expression expression = calculator.compile("x" + "+x".repeat(BytecodeCompiler.MAX_CODE_LENGTH));
+        assertEquals(BytecodeCompiler.MAX_CODE_LENGTH + 1, expression.evaluate(1));
+        awaitTier(expression, Expression.Tier.NOT_COMPILABLE);
+        assertEquals(1, tiering.rejected());
+        assertEquals(0, tiering.promoted());
+    }
+
+    @Test
+    void test_compiler_failure_is_rejected() throws InterruptedException {
+        Tiering tiering = new Tiering(1);
+        // An unknown opcode makes BytecodeCompiler throw, as a failure to define the class would
+        Program program = new Program(new int[] {Program.CONST, 99}, new double[] {1}, new String[0], 1, 0);
+        Expression expression = new Expression("1", program, tiering, 1);
+        tiering.promote(expression);
+        awaitTier(expression, Expression.Tier.NOT_COMPILABLE);
+        for (int i = 0; i < 500 && tiering.rejected() == 0; i++)
+            Thread.sleep(10);
+        assertEquals(1, tiering.rejected());
+        assertEquals(0, tiering.promoted());
+        assertFalse(expression.isBytecodeCompiled());
+    }
+
+    @Test
+    void test_without_tiering() {
+        Calculator calculator = new Calculator(16, ForkJoinPool.commonPool(), null);
+        Expression expression = calculator.compile("1+1");
+        for (int i = 0; i < 10_000; i++)
+            expression.evaluate();
+        assertEquals(Expression.Tier.INTERPRETED, expression.tier());
+        assertNull(calculator.getTiering());
+    }
+}
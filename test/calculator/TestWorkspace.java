@@ -0,0 +1,142 @@
+package calculator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestWorkspace {
+
+    Workspace workspace;
+
+    @BeforeEach
+    void setup() {
+        workspace = new Workspace();
+    }
+
+    @Test
+    void test_formula_follows_inputs() {
+        workspace.set("A", 2);
+        workspace.set("B", 3);
+        workspace.define("C", "A*B+3");
+        assertEquals(9, workspace.get("C"));
+        assertEquals(List.of("A", "B"), workspace.dependencies("C"));
+
+        workspace.set("A", 4);
+        assertEquals(1, workspace.dirtyCount());
+        assertEquals(1, workspace.recalculate());
+        assertEquals(15, workspace.get("C"));
+        assertEquals(0, workspace.recalculate());
+    }
+
+    @Test
+    void test_only_affected_cells_recomputed() {
+        workspace.set("A", 1);
+        workspace.set("B", 1);
+        workspace.define("C", "A+1");
+        workspace.define("D", "B+1");
+        workspace.define("E", "C*2");
+        assertEquals(3, workspace.recalculate());
+
+        workspace.set("A", 5);
+        assertEquals(2, workspace.recalculate());
+        assertEquals(12, workspace.get("E"));
+        assertEquals(2, workspace.get("D"));
+        // Setting the same value changes nothing
+        workspace.set("B", 1);
+        assertEquals(0, workspace.recalculate());
+        assertEquals(5, workspace.getCellsRecomputed());
+    }
+
+    @Test
+    void test_diamond_in_topological_order() {
+        workspace.define("D", "B+C");
+        workspace.define("B", "A*2");
+        workspace.define("C", "A+1");
+        workspace.set("A", 3);
+        assertEquals(10, workspace.get("D"));
+
+        workspace.set("A", 10);
+        assertEquals(3, workspace.recalculate());
+        assertEquals(31, workspace.get("D"));
+
+        // Redefining A as a formula moves everything above it up a level
+        workspace.set("X", 1);
+        workspace.define("A", "X*2");
+        assertEquals(4, workspace.recalculate());
+        assertEquals(7, workspace.get("D"));
+    }
+
+    @Test
+    void test_cycles_rejected() {
+        workspace.define("A", "B+1");
+        workspace.define("B", "C+1");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> workspace.define("C", "A+1"));
+        assertEquals("Cycle: C -> A -> B -> C", e.getMessage());
+        e = assertThrows(IllegalArgumentException.class, () -> workspace.define("C", "C+1"));
+        assertEquals("Cycle: C -> C", e.getMessage());
+
+        // The workspace is unchanged
+        workspace.set("C", 1);
+        assertEquals(3, workspace.get("A"));
+        assertEquals(List.of(), workspace.dependencies("C"));
+    }
+
+    @Test
+    void test_rejected_definition_adds_no_cells() {
+        workspace.define("X", "1");
+        assertThrows(IllegalArgumentException.class, () -> workspace.define("A", "B+A"));
+        assertThrows(RuntimeException.class, () -> workspace.define("A", "1+"));
+        assertEquals(List.of("X"), List.copyOf(workspace.names()));
+
+        workspace.define("A", "B+1");
+        assertEquals(List.of("X", "A", "B"), List.copyOf(workspace.names()));
+    }
+
+    @Test
+    void test_errors_and_missing_cells() {
+        workspace.define("E", "1/A");
+        workspace.set("A", 0);
+        assertTrue(Double.isNaN(workspace.get("E")));
+        assertInstanceOf(ArithmeticException.class, workspace.error("E"));
+
+        workspace.set("A", 4);
+        assertEquals(0.25, workspace.get("E"));
+        assertNull(workspace.error("E"));
+
+        workspace.define("F", "missing*2");
+        assertTrue(Double.isNaN(workspace.get("F")));
+        assertThrows(IllegalArgumentException.class, () -> workspace.get("nothing"));
+        assertThrows(IllegalArgumentException.class, () -> workspace.set("2x", 1));
+        assertThrows(RuntimeException.class, () -> workspace.define("G", "(1"));
+    }
+
+    @Test
+    void test_formula_replaced_by_value_while_dirty() {
+        workspace.set("A", 1);
+        workspace.define("B", "A+1");
+        workspace.define("C", "B*10");
+        workspace.set("B", 7);
+        assertEquals(1, workspace.recalculate());
+        assertEquals(70, workspace.get("C"));
+        workspace.set("A", 2);
+        assertEquals(0, workspace.recalculate());
+    }
+
+    @Test
+    void test_wide_level_runs_in_parallel() {
+        workspace.set("in", 2);
+        for (int i = 0; i < 5000; i++)
+            workspace.define("c" + i, "in*" + i);
+        workspace.define("total", "c4999-c1");
+        assertEquals(5001, workspace.recalculate());
+
+        workspace.set("in", 3);
+        assertEquals(5001, workspace.recalculate());
+        for (int i = 0; i < 5000; i++)
+            assertEquals(3.0 * i, workspace.get("c" + i));
+        assertEquals(3 * 4998, workspace.get("total"));
+    }
+}
@@ -0,0 +1,71 @@
+package calculator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Block operations with the Vector API, a full register of lanes at a time
+ * at the widest shape the CPU prefers, e.g. 4 doubles with AVX2 and 8 with
+ * AVX-512. Rows left over after the last full register are done one at a
+ * time. Loaded reflectively by BlockKernels.best(), as it needs
+ * --add-modules jdk.incubator.vector both to compile and to run
+ */
+final class VectorKernels implements BlockKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] x, double[] y, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, j).add(DoubleVector.fromArray(SPECIES, y, j)).intoArray(x, j);
+        for (; j < length; j++)
+            x[j] = x[j] + y[j];
+    }
+
+    @Override
+    public void subtract(double[] x, double[] y, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, j).sub(DoubleVector.fromArray(SPECIES, y, j)).intoArray(x, j);
+        for (; j < length; j++)
+            x[j] = x[j] - y[j];
+    }
+
+    @Override
+    public void multiply(double[] x, double[] y, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, j).mul(DoubleVector.fromArray(SPECIES, y, j)).intoArray(x, j);
+        for (; j < length; j++)
+            x[j] = x[j] * y[j];
+    }
+
+    @Override
+    public void divide(double[] x, double[] y, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length()) {
+            DoubleVector divisor = DoubleVector.fromArray(SPECIES, y, j);
+            // Matches -0.0 as well, like y == 0 in Program.divide
+            if (divisor.compare(VectorOperators.EQ, 0).anyTrue())
+                throw new ArithmeticException("Division by 0");
+            DoubleVector.fromArray(SPECIES, x, j).div(divisor).intoArray(x, j);
+        }
+        for (; j < length; j++)
+            x[j] = Program.divide(x[j], y[j]);
+    }
+
+    @Override
+    public void negate(double[] x, int length) {
+        int j = 0;
+        for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, j).neg().intoArray(x, j);
+        for (; j < length; j++)
+            x[j] = -x[j];
+    }
+
+    @Override
+    public String name() {
+        return "Vector API, " + SPECIES.vectorBitSize() + "-bit";
+    }
+}